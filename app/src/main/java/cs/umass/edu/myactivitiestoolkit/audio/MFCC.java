@@ -13,6 +13,13 @@ public class MFCC
         public Matrix dctMat = null;
         public double[] lifterWeights;
 
+        // Single-precision tables for cepstrum(float[], float[]). The mel filters are
+        // triangular, so each band only stores the bins where its weight is non-zero.
+        private int[] melStart;
+        private float[][] melWeightsF;
+        private float[][] dctMatF;
+        private float[] lifterWeightsF;
+
         public MFCC(int fftSize, int numCoeffs, int melBands, double sampleRate)
         {
             // Precompute mel-scale auditory perceptual spectrum
@@ -76,6 +83,35 @@ public class MFCC
             {
                 lifterWeights[i] = Math.pow((double)i, lifterExp);
             }
+
+            // Single-precision copies of the tables
+            melStart = new int[melBands];
+            melWeightsF = new float[melBands][];
+            for (int i = 0; i < melBands; i ++)
+            {
+                int start = 0, end = numFreqs;
+                while (start < numFreqs && melWeights.A[i][start] == 0) start++;
+                while (end > start && melWeights.A[i][end - 1] == 0) end--;
+                melStart[i] = start;
+                melWeightsF[i] = new float[end - start];
+                for (int j = start; j < end; j ++)
+                {
+                        melWeightsF[i][j - start] = (float) melWeights.A[i][j];
+                }
+            }
+            dctMatF = new float[numCoeffs][melBands];
+            for (int i = 0; i < numCoeffs; i ++)
+            {
+                for (int j = 0; j < melBands; j ++)
+                {
+                        dctMatF[i][j] = (float) dctMat.A[i][j];
+                }
+            }
+            lifterWeightsF = new float[numCoeffs];
+            for (int i = 0; i < numCoeffs; i ++)
+            {
+                lifterWeightsF[i] = (float) lifterWeights[i];
+            }
         }
         
         public double[] cepstrum(double[] re, double[] im)
@@ -111,7 +147,45 @@ public class MFCC
                 return ceps;
         }
 
-        
+
+        /**
+         * Single-precision version of {@link #cepstrum(double[], double[])}. Only the
+         * non-zero part of each mel filter is visited, and no intermediate matrices are
+         * created.
+         * @param re the real parts of at least fftSize/2 + 1 bins
+         * @param im the imaginary parts of at least fftSize/2 + 1 bins
+         * @return the liftered cepstral coefficients
+         */
+        public float[] cepstrum(float[] re, float[] im)
+        {
+                float[] logMelSpec = new float[melBands];
+                for (int i = 0; i < melBands; i ++)
+                {
+                        float[] w = melWeightsF[i];
+                        int offset = melStart[i];
+                        float energy = 0;
+                        for (int j = 0; j < w.length; j ++)
+                        {
+                                float r = re[offset + j], m = im[offset + j];
+                                energy += w[j]*(r*r + m*m);
+                        }
+                        logMelSpec[i] = (float) Math.log(energy);
+                }
+
+                float[] ceps = new float[numCoeffs];
+                for (int i = 0; i < numCoeffs; i ++)
+                {
+                        float[] d = dctMatF[i];
+                        float sum = 0;
+                        for (int j = 0; j < melBands; j ++)
+                        {
+                                sum += d[j]*logMelSpec[j];
+                        }
+                        ceps[i] = lifterWeightsF[i]*sum;
+                }
+                return ceps;
+        }
+
         public double fmel2hz(double mel)
         {
                 return 700.0*(Math.pow(10.0, mel/2595.0) - 1.0);
@@ -2,7 +2,7 @@ package cs.umass.edu.myactivitiestoolkit.audio;
 
 import java.util.Arrays;
 
-import cs.umass.edu.myactivitiestoolkit.processing.FFT;
+import cs.umass.edu.myactivitiestoolkit.processing.SpectralPlan;
 
 public class MFCCFeatureExtractor {
 
@@ -12,8 +12,8 @@ public class MFCCFeatureExtractor {
     private static final int MFCCS_VALUE = 12;
     private static final int MEL_BANDS = 20;
     
-    private static FFT featureFFT = new FFT(FFT_SIZE);
-    private static HammingWindow featureWin = new HammingWindow(BITRATE);
+    private static final SpectralPlan featurePlan =
+            SpectralPlan.getInstance(FFT_SIZE, BITRATE, SpectralPlan.Window.HAMMING);
     private static MFCC featureMFCC = new MFCC(FFT_SIZE, MFCCS_VALUE, MEL_BANDS, BITRATE);
 
     /**
@@ -25,25 +25,25 @@ public class MFCCFeatureExtractor {
      */
     public static double[] computeFeaturesForFrame(short[] data16bit, int size, int index)
 	{
-		double[] fftBufferR = new double[FFT_SIZE];
-        double[] fftBufferI = new double[FFT_SIZE];
+		// Per-thread buffers, reused across calls
+		SpectralPlan.Scratch scratch = featurePlan.getScratch();
+		double[] frame = scratch.frame;
+		double[] fftBufferR = scratch.re;
+        double[] fftBufferI = scratch.im;
         double[] featureCepstrum;
 
-        // Frequency analysis
-        Arrays.fill(fftBufferR, 0);
-        Arrays.fill(fftBufferI, 0);
-
-        // Convert audio buffer to doubles
+        // Convert audio buffer to doubles, zero-padded to the FFT size
         for (int i = 0; i < size; i++)
         {
-                fftBufferR[i] = data16bit[index+i];
+                frame[i] = data16bit[index+i];
         }
+        Arrays.fill(frame, size, FFT_SIZE, 0);
 
         // In-place windowing
-        featureWin.applyWindow(fftBufferR);
+        featurePlan.applyWindow(frame);
 
-        // In-place FFT
-        featureFFT.fft(fftBufferR, fftBufferI);
+        // Real-input FFT, producing only the non-redundant bins 0 .. FFT_SIZE/2
+        featurePlan.getFFT().realFft(frame, fftBufferR, fftBufferI);
 
         // Get MFCCs
         featureCepstrum = featureMFCC.cepstrum(fftBufferR, fftBufferI);
@@ -0,0 +1,177 @@
+package cs.umass.edu.myactivitiestoolkit.classification;
+
+import java.util.ArrayList;
+
+import cs.umass.edu.myactivitiestoolkit.processing.SlidingWindowFeatures;
+
+/**
+ * Recognizes the user's activity on the device, from the accelerometer stream alone.
+ * The stream is cut into overlapping windows of a fixed number of samples; every few
+ * samples, the features of the latest window are classified by a {@link DecisionForest},
+ * and the predicted label is passed to the registered
+ * {@link OnActivityListener activity listeners}. A label is therefore available one
+ * hop after the activity fills a window, without a round trip to the server.
+ * <br><br>
+ * The features are those of a {@link SlidingWindowFeatures} over four channels: the
+ * x, y and z axes ({@link #CHANNEL_X}, {@link #CHANNEL_Y}, {@link #CHANNEL_Z}) and the
+ * acceleration magnitude ({@link #CHANNEL_MAGNITUDE}), with the energies of the bands
+ * between the {@link #BAND_EDGES}. With the default window, the model sees 35 features,
+ * e.g. the variance of the magnitude at index 22 and its minimum at 23; see
+ * {@link #getFeatureEngine()} to look up the others. The features are maintained
+ * incrementally and the feature vector is reused, so the classifier allocates nothing
+ * once constructed.
+ * <br><br>
+ * The window length, the hop and the bands, and so the model, assume the sample rate
+ * the classifier was created with. The platform only takes the requested rate as a
+ * hint: some phones deliver {@code SENSOR_DELAY_NORMAL} at 15 Hz, and all deliver the
+ * fastest rate any subscription to the sensor asks for. The classifier therefore
+ * measures the period of the stream and takes every k-th sample, k being the ratio of
+ * the two periods rounded to the nearest integer, e.g. every 10th sample of a 50 Hz
+ * stream. A stream at or below the sample rate is taken whole.
+ */
+public class ActivityClassifier {
+
+    public static final int CHANNEL_X = 0;
+    public static final int CHANNEL_Y = 1;
+    public static final int CHANNEL_Z = 2;
+    public static final int CHANNEL_MAGNITUDE = 3;
+
+    /** Edges of the frequency bands, in Hz: slow motion, then steps up to the Nyquist frequency at 5 Hz. */
+    public static final double[] BAND_EDGES = {0.3, 1.2, 2.5};
+
+    /** Default sample rate in Hz, that of {@code SENSOR_DELAY_NORMAL}. */
+    public static final double DEFAULT_SAMPLE_RATE = 5;
+
+    /** Default window length: 2 seconds at the default sample rate. */
+    public static final int DEFAULT_WINDOW_SIZE = 10;
+
+    /** Default number of samples between two classifications: 0.4 seconds at the default sample rate. */
+    public static final int DEFAULT_HOP = 2;
+
+    private final ArrayList<OnActivityListener> mActivityListeners = new ArrayList<>();
+
+    private final DecisionForest forest;
+
+    private final SlidingWindowFeatures features;
+
+    /** The sample period of the model, and the measured period of the stream, in milliseconds. */
+    private final double samplePeriod;
+    private double streamPeriod = 0;
+
+    private long lastTimestamp;
+    private boolean started = false;
+
+    /** Number of samples of the stream since the last one taken. */
+    private int sinceTaken = 0;
+
+    /** The current sample, reused. */
+    private final float[] sample = new float[4];
+
+    /**
+     * Creates a classifier with the {@link #DEFAULT_WINDOW_SIZE default window} and {@link #DEFAULT_HOP hop}.
+     * @param forest the model
+     */
+    public ActivityClassifier(DecisionForest forest) {
+        this(forest, DEFAULT_SAMPLE_RATE, DEFAULT_WINDOW_SIZE, DEFAULT_HOP);
+    }
+
+    /**
+     * Creates a classifier.
+     * @param forest the model; it must expect at most as many features as are computed
+     * @param sampleRate the sample rate in Hz
+     * @param windowSize the number of samples in a window
+     * @param hop the number of samples between two classifications
+     */
+    public ActivityClassifier(DecisionForest forest, double sampleRate, int windowSize, int hop) {
+        this.forest = forest;
+        this.samplePeriod = 1000 / sampleRate;
+        this.features = new SlidingWindowFeatures(sample.length, windowSize, hop, sampleRate, BAND_EDGES);
+        if (forest.getFeatureCount() > features.getFeatureCount()) {
+            throw new IllegalArgumentException("The model expects " + forest.getFeatureCount()
+                    + " features, but only " + features.getFeatureCount() + " are computed");
+        }
+    }
+
+    /**
+     * Registers an activity listener.
+     * @param activityListener defines how the recognized activity is handled.
+     */
+    public void registerOnActivityListener(final OnActivityListener activityListener) {
+        mActivityListeners.add(activityListener);
+    }
+
+    /**
+     * Unregisters the specified activity listener.
+     * @param activityListener the listener to be unregistered. It must already be registered.
+     */
+    public void unregisterOnActivityListener(final OnActivityListener activityListener) {
+        mActivityListeners.remove(activityListener);
+    }
+
+    /**
+     * Unregisters all activity listeners.
+     */
+    public void unregisterOnActivityListeners() {
+        mActivityListeners.clear();
+    }
+
+    /**
+     * Processes a single accelerometer sample, classifying the window once it is full
+     * and every {@code hop} samples after that. Samples that arrive faster than the
+     * sample rate are skipped.
+     * @param timestamp the time of the sample in milliseconds, passed on to the listeners
+     * @param ax the acceleration along the x axis, in m/s^2
+     * @param ay the acceleration along the y axis, in m/s^2
+     * @param az the acceleration along the z axis, in m/s^2
+     */
+    public void process(long timestamp, float ax, float ay, float az) {
+        if (started && timestamp > lastTimestamp) {
+            double dt = timestamp - lastTimestamp;
+            streamPeriod = streamPeriod == 0 ? dt : streamPeriod + 0.05 * (dt - streamPeriod);
+        }
+        lastTimestamp = timestamp;
+        started = true;
+        int stride = streamPeriod > 0 ? Math.max(1, (int) Math.round(samplePeriod / streamPeriod)) : 1;
+        if (++sinceTaken < stride) {
+            return;
+        }
+        sinceTaken = 0;
+        sample[CHANNEL_X] = ax;
+        sample[CHANNEL_Y] = ay;
+        sample[CHANNEL_Z] = az;
+        sample[CHANNEL_MAGNITUDE] = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (features.update(sample)) {
+            int label = forest.classify(features.getFeatures());
+            for (int i = 0; i < mActivityListeners.size(); i++) {
+                mActivityListeners.get(i).onActivityClassified(timestamp, label);
+            }
+        }
+    }
+
+    /**
+     * Forgets the current window, e.g. after a gap in the stream.
+     */
+    public void reset() {
+        features.reset();
+        streamPeriod = 0;
+        started = false;
+        sinceTaken = 0;
+    }
+
+    /**
+     * Returns the features of the last classified window. The array is overwritten by
+     * the next classification.
+     * @return the feature vector
+     */
+    public double[] getFeatures() {
+        return features.getFeatures();
+    }
+
+    /**
+     * Returns the feature engine, e.g. to look up the index of a feature in the model.
+     * @return the feature engine
+     */
+    public SlidingWindowFeatures getFeatureEngine() {
+        return features;
+    }
+}
@@ -0,0 +1,226 @@
+package cs.umass.edu.myactivitiestoolkit.classification;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * A forest of binary decision trees over a feature vector, loaded from a model file.
+ * Every tree votes for a label, and the forest predicts the label with the most votes,
+ * the first one listed on a tie. A single tree is a forest of one.
+ * <br><br>
+ * The model file is plain text. Blank lines and lines starting with {@code #} are
+ * ignored. It starts with {@code features <count>}, the length of the feature vector,
+ * followed by the trees. Each tree starts with a line {@code tree}, followed by its
+ * nodes, the root first, one per line:
+ * <pre>
+ *     split &lt;feature&gt; &lt;threshold&gt; &lt;left&gt; &lt;right&gt;
+ *     leaf &lt;label&gt;
+ * </pre>
+ * A split continues at the node numbered {@code left} if the feature is at most the
+ * threshold, and at {@code right} otherwise; nodes are numbered from 0 within their
+ * tree, and children must come after their parent. A leaf votes for its label.
+ * <br><br>
+ * All trees are stored in flat arrays, so a prediction is a few array lookups per level
+ * and allocates nothing.
+ */
+public class DecisionForest {
+
+    /** Marks a leaf in {@link #features}. */
+    private static final int LEAF = -1;
+
+    private final int featureCount;
+
+    /** Index of the root node of each tree. */
+    private final int[] roots;
+
+    /** Per node: the feature compared, or {@link #LEAF}. */
+    private final int[] features;
+    private final double[] thresholds;
+    /** Per node: the children, as indices into the node arrays. */
+    private final int[] left, right;
+    /** Per leaf: the index of its label in {@link #labels}. */
+    private final int[] leafLabels;
+
+    /** The distinct labels, in order of first appearance. */
+    private final int[] labels;
+
+    /** Vote counts per label, reused by every prediction. */
+    private final int[] votes;
+
+    private DecisionForest(int featureCount, int[] roots, int[] features, double[] thresholds,
+                           int[] left, int[] right, int[] leafLabels, int[] labels) {
+        this.featureCount = featureCount;
+        this.roots = roots;
+        this.features = features;
+        this.thresholds = thresholds;
+        this.left = left;
+        this.right = right;
+        this.leafLabels = leafLabels;
+        this.labels = labels;
+        this.votes = new int[labels.length];
+    }
+
+    /**
+     * Reads a forest from a model file.
+     * @param in the model; it is read to the end and closed
+     * @return the forest
+     * @throws IOException if the model cannot be read or is malformed
+     */
+    public static DecisionForest load(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+        try {
+            return parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static DecisionForest parse(BufferedReader reader) throws IOException {
+        int featureCount = -1;
+        int[] roots = new int[8];
+        int treeCount = 0;
+        int[] features = new int[64], left = new int[64], right = new int[64], leafLabels = new int[64];
+        double[] thresholds = new double[64];
+        int nodeCount = 0;
+        int[] labels = new int[8];
+        int labelCount = 0;
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            try {
+                if (tokens[0].equals("features") && tokens.length == 2 && featureCount < 0) {
+                    featureCount = Integer.parseInt(tokens[1]);
+                    if (featureCount < 1) {
+                        throw error(lineNumber, "the feature count must be positive");
+                    }
+                } else if (featureCount < 0) {
+                    throw error(lineNumber, "the model must start with the feature count");
+                } else if (tokens[0].equals("tree") && tokens.length == 1) {
+                    if (treeCount == roots.length) {
+                        roots = Arrays.copyOf(roots, treeCount * 2);
+                    }
+                    roots[treeCount++] = nodeCount;
+                } else if (treeCount == 0 && (tokens[0].equals("split") || tokens[0].equals("leaf"))) {
+                    throw error(lineNumber, "a node must belong to a tree");
+                } else if ((tokens[0].equals("split") && tokens.length == 5) || (tokens[0].equals("leaf") && tokens.length == 2)) {
+                    if (nodeCount == features.length) {
+                        int capacity = nodeCount * 2;
+                        features = Arrays.copyOf(features, capacity);
+                        thresholds = Arrays.copyOf(thresholds, capacity);
+                        left = Arrays.copyOf(left, capacity);
+                        right = Arrays.copyOf(right, capacity);
+                        leafLabels = Arrays.copyOf(leafLabels, capacity);
+                    }
+                    int root = roots[treeCount - 1];
+                    int index = nodeCount - root;
+                    if (tokens[0].equals("split")) {
+                        int feature = Integer.parseInt(tokens[1]);
+                        int leftChild = Integer.parseInt(tokens[3]);
+                        int rightChild = Integer.parseInt(tokens[4]);
+                        if (feature < 0 || feature >= featureCount) {
+                            throw error(lineNumber, "feature " + feature + " is out of range");
+                        }
+                        if (leftChild <= index || rightChild <= index) {
+                            throw error(lineNumber, "children must come after their parent");
+                        }
+                        features[nodeCount] = feature;
+                        thresholds[nodeCount] = Double.parseDouble(tokens[2]);
+                        left[nodeCount] = root + leftChild;
+                        right[nodeCount] = root + rightChild;
+                    } else {
+                        int label = Integer.parseInt(tokens[1]);
+                        int labelIndex = 0;
+                        while (labelIndex < labelCount && labels[labelIndex] != label) {
+                            labelIndex++;
+                        }
+                        if (labelIndex == labelCount) {
+                            if (labelCount == labels.length) {
+                                labels = Arrays.copyOf(labels, labelCount * 2);
+                            }
+                            labels[labelCount++] = label;
+                        }
+                        features[nodeCount] = LEAF;
+                        leafLabels[nodeCount] = labelIndex;
+                    }
+                    nodeCount++;
+                } else {
+                    throw error(lineNumber, "unknown entry '" + line + "'");
+                }
+            } catch (NumberFormatException e) {
+                throw error(lineNumber, "malformed number in '" + line + "'");
+            }
+        }
+        if (treeCount == 0) {
+            throw new IOException("The model holds no trees");
+        }
+        // every child must lie within its tree
+        for (int t = 0; t < treeCount; t++) {
+            int end = t + 1 < treeCount ? roots[t + 1] : nodeCount;
+            if (end == roots[t]) {
+                throw new IOException("Tree " + t + " is empty");
+            }
+            for (int n = roots[t]; n < end; n++) {
+                if (features[n] != LEAF && (left[n] >= end || right[n] >= end)) {
+                    throw new IOException("Node " + (n - roots[t]) + " of tree " + t + " has a missing child");
+                }
+            }
+        }
+        return new DecisionForest(featureCount, Arrays.copyOf(roots, treeCount),
+                Arrays.copyOf(features, nodeCount), Arrays.copyOf(thresholds, nodeCount),
+                Arrays.copyOf(left, nodeCount), Arrays.copyOf(right, nodeCount),
+                Arrays.copyOf(leafLabels, nodeCount), Arrays.copyOf(labels, labelCount));
+    }
+
+    private static IOException error(int lineNumber, String message) {
+        return new IOException("Line " + lineNumber + " of the model: " + message);
+    }
+
+    /**
+     * Returns the length of the feature vector the forest expects.
+     * @return the feature count
+     */
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Returns the number of trees.
+     * @return the tree count
+     */
+    public int getTreeCount() {
+        return roots.length;
+    }
+
+    /**
+     * Predicts the label of a feature vector.
+     * @param x the features; at least {@link #getFeatureCount()} values
+     * @return the label with the most votes
+     */
+    public int classify(double[] x) {
+        Arrays.fill(votes, 0);
+        for (int t = 0; t < roots.length; t++) {
+            int node = roots[t];
+            while (features[node] != LEAF) {
+                node = x[features[node]] <= thresholds[node] ? left[node] : right[node];
+            }
+            votes[leafLabels[node]]++;
+        }
+        int best = 0;
+        for (int i = 1; i < votes.length; i++) {
+            if (votes[i] > votes[best]) {
+                best = i;
+            }
+        }
+        return labels[best];
+    }
+}
@@ -0,0 +1,13 @@
+package cs.umass.edu.myactivitiestoolkit.classification;
+
+/**
+ * Clients may register an OnActivityListener to be notified of the recognized activity.
+ */
+public interface OnActivityListener {
+    /**
+     * Called once per classified window.
+     * @param timestamp the time of the last sample of the window
+     * @param label the activity label predicted by the model
+     */
+    void onActivityClassified(long timestamp, int label);
+}
@@ -31,12 +31,34 @@ public class DBScan<T extends Clusterable<T>> {
     private final int minPts;
 
     /**
+     * Measures the distance between two points.
+     */
+    private final DistanceMetric<? super T> metric;
+
+    /**
+     * Clusters by the distance of {@link Clusterable#distance(Object)}.
+     *
      * @param eps    radius of the neighborhood for expanding clusters
      * @param minPts minimum number of points in a cluster
      */
     public DBScan(final double eps, final int minPts) {
+        this(eps, minPts, new DistanceMetric<T>() {
+            @Override
+            public double distance(T a, T b) {
+                return a.distance(b);
+            }
+        });
+    }
+
+    /**
+     * @param eps    radius of the neighborhood for expanding clusters
+     * @param minPts minimum number of points in a cluster
+     * @param metric measures the distance between two points
+     */
+    public DBScan(final double eps, final int minPts, final DistanceMetric<? super T> metric) {
         this.eps = eps;
         this.minPts = minPts;
+        this.metric = metric;
     }
 
     /**
@@ -175,14 +197,14 @@ public class DBScan<T extends Clusterable<T>> {
      * @param p      the point of interest
      * @param points all candidate neighboring points
      * @return a list of neighbors
-     * @see Clusterable#distance(Object)
+     * @see DistanceMetric#distance(Object, Object)
      */
 
     private List<T> regionQuery(final T p, final Collection<T> points) {
         //TODO: Query the region around point p to get its neighbors, that is all points within eps of p
         final List<T> neighbors = new ArrayList<T>();
         for (final T pt : points) {
-            if(p.distance(pt) <= eps){
+            if(metric.distance(p, pt) <= eps){
                 neighbors.add(pt);
             }
         }
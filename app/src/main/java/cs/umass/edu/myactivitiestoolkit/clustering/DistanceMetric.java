@@ -0,0 +1,13 @@
+package cs.umass.edu.myactivitiestoolkit.clustering;
+
+/**
+ * Defines how {@link DBScan} measures the distance between two points, when it should
+ * not simply use {@link Clusterable#distance(Object)}, e.g. to trade a little accuracy
+ * for speed.
+ *
+ * @see cs.umass.edu.myactivitiestoolkit.location.GPSLocation#APPROXIMATE_DISTANCE
+ */
+public interface DistanceMetric<T> {
+    /** Computes the distance between two points */
+    double distance(T a, T b);
+}
@@ -25,6 +25,9 @@ public class Constants {
         String BROADCAST_PPG_PEAK = "edu.umass.cs.my-activities-toolkit.action.broadcast-ppg-peak";
         String BROADCAST_ACCELEROMETER_PEAK = "edu.umass.cs.my-activities-toolkit.action.broadcast-accelerometer-peak";
         String BROADCAST_HEART_RATE = "edu.umass.cs.my-activities-toolkit.action.broadcast-heart-rate";
+        String BROADCAST_GAIT_METRICS = "edu.umass.cs.my-activities-toolkit.action.broadcast-gait-metrics";
+        String BROADCAST_FALL_DETECTED = "edu.umass.cs.my-activities-toolkit.action.broadcast-fall-detected";
+        String BROADCAST_STEP_DETECTOR_COMPARISON = "edu.umass.cs.my-activities-toolkit.action.broadcast-step-detector-comparison";
         String START_SERVICE = "edu.umass.cs.my-activities-toolkit.action.start-service";
         String STOP_SERVICE = "edu.umass.cs.my-activities-toolkit.action.stop-service";
         String NAVIGATE_TO_APP = "edu.umass.cs.my-activities-toolkit.action.navigate-to-app";
@@ -49,6 +52,10 @@ public class Constants {
         String STATUS = "edu.umass.cs.my-activities-toolkit.key.status";
         String ACCELEROMETER_DATA = "edu.umass.cs.my-activities-toolkit.key.accelerometer-data";
         String TIMESTAMP = "edu.umass.cs.my-activities-toolkit.key.ppg-timestamp";
+        String TIMESTAMPS = "edu.umass.cs.my-activities-toolkit.key.timestamps";
+        String ACCELEROMETER_X = "edu.umass.cs.my-activities-toolkit.key.accelerometer-x";
+        String ACCELEROMETER_Y = "edu.umass.cs.my-activities-toolkit.key.accelerometer-y";
+        String ACCELEROMETER_Z = "edu.umass.cs.my-activities-toolkit.key.accelerometer-z";
         String PPG_DATA = "edu.umass.cs.my-activities-toolkit.key.ppg-value";
         String HEART_RATE = "edu.umass.cs.my-activities-toolkit.key.heart-rate";
         String STEP_COUNT = "edu.umass.cs.my-activities-toolkit.key.step-count";
@@ -57,6 +64,22 @@ public class Constants {
         String ACCELEROMETER_PEAK_TIMESTAMP = "edu.umass.cs.my-activities-toolkit.key.accelerometer-peak-timestamp";
         String ACCELEROMETER_PEAK_VALUE = "edu.umass.cs.my-activities-toolkit.key.accelerometer-peak-value";
         String NOTIFICATION_ID = "edu.umass.cs.my-activities-toolkit.key.sensor-service-type";
+        String CADENCE = "edu.umass.cs.my-activities-toolkit.key.cadence";
+        String STRIDE_TIME_MEAN = "edu.umass.cs.my-activities-toolkit.key.stride-time-mean";
+        String STRIDE_TIME_SD = "edu.umass.cs.my-activities-toolkit.key.stride-time-sd";
+        String STRIDE_TIME_CV = "edu.umass.cs.my-activities-toolkit.key.stride-time-cv";
+        String GAIT_SYMMETRY = "edu.umass.cs.my-activities-toolkit.key.gait-symmetry";
+        String FALL_TIMESTAMP = "edu.umass.cs.my-activities-toolkit.key.fall-timestamp";
+        String FALL_IMPACT = "edu.umass.cs.my-activities-toolkit.key.fall-impact";
+        String FALL_SNAPSHOT_TIMESTAMPS = "edu.umass.cs.my-activities-toolkit.key.fall-snapshot-timestamps";
+        String FALL_SNAPSHOT_X = "edu.umass.cs.my-activities-toolkit.key.fall-snapshot-x";
+        String FALL_SNAPSHOT_Y = "edu.umass.cs.my-activities-toolkit.key.fall-snapshot-y";
+        String FALL_SNAPSHOT_Z = "edu.umass.cs.my-activities-toolkit.key.fall-snapshot-z";
+        String STEP_DETECTOR_NAMES = "edu.umass.cs.my-activities-toolkit.key.step-detector-names";
+        String STEP_DETECTOR_COUNTS = "edu.umass.cs.my-activities-toolkit.key.step-detector-counts";
+        String STEP_DETECTOR_AGREEMENT = "edu.umass.cs.my-activities-toolkit.key.step-detector-agreement";
+        String STEP_DETECTOR_LAG = "edu.umass.cs.my-activities-toolkit.key.step-detector-lag";
+        String STEP_DETECTOR_PROCESSING_TIME = "edu.umass.cs.my-activities-toolkit.key.step-detector-processing-time";
     }
 
     /**
@@ -85,6 +108,7 @@ public class Constants {
     /** Timestamp-relevant constants */
     public interface TIMESTAMPS {
         long NANOSECONDS_PER_MILLISECOND = 1000000;
+        long NANOSECONDS_PER_SECOND = 1000000000;
     }
 
     /**
@@ -0,0 +1,237 @@
+package cs.umass.edu.myactivitiestoolkit.falls;
+
+import java.util.ArrayList;
+
+import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+
+/**
+ * Detects falls in an accelerometer stream. A fall shows as three phases in the
+ * magnitude of the acceleration:
+ * <ol>
+ *     <li>a free-fall dip well below gravity, as the phone drops with the body;</li>
+ *     <li>an impact spike well above gravity, shortly after the dip starts;</li>
+ *     <li>stillness after the impact has settled, as the person lies on the ground.
+ *     Stillness means the standard deviation of the magnitude stays small.</li>
+ * </ol>
+ * When all three follow each other, the registered {@link OnFallListener fall listeners}
+ * receive a {@link FallEvent} with a snapshot of the last seconds of raw data.
+ * <br><br>
+ * The detector is meant to run all day next to step detection. Each sample costs a few
+ * comparisons of the squared magnitude against precomputed thresholds; the square root
+ * and the running mean and variance are only computed after an impact. The samples are
+ * kept in a ring buffer that is allocated once, in primitive columns, so nothing is
+ * allocated until a fall is reported. The phases are timed by the sample timestamps, but
+ * short dips and spikes may fall between samples at low sampling rates, so detection is
+ * more reliable the faster the accelerometer is sampled.
+ */
+public class FallDetector {
+
+    /** Standard gravity, in m/s^2. */
+    private static final double GRAVITY = 9.80665;
+
+    /** The magnitude during free fall stays below this, in m/s^2. */
+    private static final double FREE_FALL_THRESHOLD = 0.5 * GRAVITY;
+
+    /** The magnitude at impact exceeds this, in m/s^2. */
+    private static final double IMPACT_THRESHOLD = 2.5 * GRAVITY;
+
+    /** Longest time from the start of the free fall to the impact, in nanoseconds. */
+    private static final long IMPACT_WINDOW_NS = Constants.TIMESTAMPS.NANOSECONDS_PER_SECOND;
+
+    /** Time after the impact that is ignored while the body settles, in nanoseconds. */
+    private static final long SETTLE_TIME_NS = Constants.TIMESTAMPS.NANOSECONDS_PER_SECOND / 2;
+
+    /** Time after settling over which stillness is measured, in nanoseconds. */
+    private static final long STILLNESS_TIME_NS = 3 * Constants.TIMESTAMPS.NANOSECONDS_PER_SECOND / 2;
+
+    /** Largest standard deviation of the magnitude while lying still, in m/s^2. */
+    private static final double STILLNESS_THRESHOLD = 0.8;
+
+    /** Default length of the snapshot, in seconds. */
+    public static final double DEFAULT_SNAPSHOT_SECONDS = 10;
+
+    /** Default number of samples the ring buffer holds. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int IDLE = 0, FREE_FALL = 1, IMPACT = 2;
+
+    private static final double FREE_FALL_THRESHOLD_SQUARED = FREE_FALL_THRESHOLD * FREE_FALL_THRESHOLD;
+    private static final double IMPACT_THRESHOLD_SQUARED = IMPACT_THRESHOLD * IMPACT_THRESHOLD;
+
+    private final ArrayList<OnFallListener> mFallListeners = new ArrayList<>();
+
+    private final long snapshotNs;
+
+    /** Ring buffer of the most recent samples. */
+    private final long[] timestamps;
+    private final float[] x, y, z;
+    private int size = 0, next = 0;
+
+    private int state = IDLE;
+
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    private long freeFallStart, impactTime;
+
+    private double peakSquared;
+
+    /** Running statistics of the magnitude while measuring stillness (Welford). */
+    private int stillCount;
+    private double stillMean, stillM2;
+
+    /**
+     * Creates a fall detector that reports the last {@link #DEFAULT_SNAPSHOT_SECONDS}
+     * seconds of data, up to {@link #DEFAULT_CAPACITY} samples.
+     */
+    public FallDetector() {
+        this(DEFAULT_SNAPSHOT_SECONDS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a fall detector.
+     * @param snapshotSeconds the length of the snapshot reported with a fall, in seconds
+     * @param capacity the number of samples kept; if it is smaller than the number of
+     *                 samples in the snapshot length, the snapshot is shorter
+     */
+    public FallDetector(double snapshotSeconds, int capacity) {
+        if (snapshotSeconds <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("The snapshot length and capacity must be positive");
+        }
+        snapshotNs = (long) (snapshotSeconds * Constants.TIMESTAMPS.NANOSECONDS_PER_SECOND);
+        timestamps = new long[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+    }
+
+    /**
+     * Registers a fall listener.
+     * @param fallListener defines how falls are handled.
+     */
+    public void registerOnFallListener(final OnFallListener fallListener) {
+        mFallListeners.add(fallListener);
+    }
+
+    /**
+     * Unregisters the specified fall listener.
+     * @param fallListener the listener to be unregistered. It must already be registered.
+     */
+    public void unregisterOnFallListener(final OnFallListener fallListener) {
+        mFallListeners.remove(fallListener);
+    }
+
+    /**
+     * Unregisters all fall listeners.
+     */
+    public void unregisterOnFallListeners() {
+        mFallListeners.clear();
+    }
+
+    /**
+     * Processes a single accelerometer sample. Samples that do not advance in time are ignored.
+     * @param timestampNs the time of the sample in nanoseconds, e.g. {@code SensorEvent.timestamp}
+     * @param ax the acceleration along the x axis, in m/s^2
+     * @param ay the acceleration along the y axis, in m/s^2
+     * @param az the acceleration along the z axis, in m/s^2
+     */
+    public void process(long timestampNs, float ax, float ay, float az) {
+        if (timestampNs <= lastTimestamp) {
+            return;
+        }
+        lastTimestamp = timestampNs;
+        timestamps[next] = timestampNs;
+        x[next] = ax;
+        y[next] = ay;
+        z[next] = az;
+        next = next + 1 == timestamps.length ? 0 : next + 1;
+        if (size < timestamps.length) {
+            size++;
+        }
+
+        double squared = (double) ax * ax + (double) ay * ay + (double) az * az;
+        switch (state) {
+            case FREE_FALL:
+                if (squared > IMPACT_THRESHOLD_SQUARED) {
+                    state = IMPACT;
+                    impactTime = timestampNs;
+                    peakSquared = squared;
+                    stillCount = 0;
+                    stillMean = stillM2 = 0;
+                } else if (timestampNs - freeFallStart > IMPACT_WINDOW_NS) {
+                    state = IDLE;
+                    startFreeFall(timestampNs, squared);
+                }
+                break;
+            case IMPACT:
+                long sinceImpact = timestampNs - impactTime;
+                if (sinceImpact < SETTLE_TIME_NS) {
+                    // a bounce or a second impact
+                    peakSquared = Math.max(peakSquared, squared);
+                    break;
+                }
+                double magnitude = Math.sqrt(squared);
+                stillCount++;
+                double delta = magnitude - stillMean;
+                stillMean += delta / stillCount;
+                stillM2 += delta * (magnitude - stillMean);
+                if (sinceImpact >= SETTLE_TIME_NS + STILLNESS_TIME_NS) {
+                    state = IDLE;
+                    if (stillCount >= 2 && Math.sqrt(stillM2 / (stillCount - 1)) < STILLNESS_THRESHOLD) {
+                        onFallDetected();
+                    }
+                }
+                break;
+            default:
+                startFreeFall(timestampNs, squared);
+                break;
+        }
+    }
+
+    private void startFreeFall(long timestampNs, double squared) {
+        if (squared < FREE_FALL_THRESHOLD_SQUARED) {
+            state = FREE_FALL;
+            freeFallStart = timestampNs;
+        }
+    }
+
+    /**
+     * Copies the samples of the last snapshot length out of the ring buffer and notifies
+     * all listeners.
+     */
+    private void onFallDetected() {
+        long from = lastTimestamp - snapshotNs;
+        int count = 0;
+        // walk back from the newest sample to the oldest one within the snapshot
+        for (int i = 0; i < size; i++) {
+            int index = next - 1 - i;
+            if (index < 0) {
+                index += timestamps.length;
+            }
+            if (timestamps[index] < from) {
+                break;
+            }
+            count++;
+        }
+        int start = next - count;
+        if (start < 0) {
+            start += timestamps.length;
+        }
+        long[] t = new long[count];
+        float[] sx = new float[count], sy = new float[count], sz = new float[count];
+        int first = Math.min(count, timestamps.length - start);
+        System.arraycopy(timestamps, start, t, 0, first);
+        System.arraycopy(x, start, sx, 0, first);
+        System.arraycopy(y, start, sy, 0, first);
+        System.arraycopy(z, start, sz, 0, first);
+        System.arraycopy(timestamps, 0, t, first, count - first);
+        System.arraycopy(x, 0, sx, first, count - first);
+        System.arraycopy(y, 0, sy, first, count - first);
+        System.arraycopy(z, 0, sz, first, count - first);
+
+        FallEvent event = new FallEvent(impactTime / Constants.TIMESTAMPS.NANOSECONDS_PER_MILLISECOND,
+                (float) Math.sqrt(peakSquared), t, sx, sy, sz);
+        for (int i = 0; i < mFallListeners.size(); i++) {
+            mFallListeners.get(i).onFallDetected(event);
+        }
+    }
+}
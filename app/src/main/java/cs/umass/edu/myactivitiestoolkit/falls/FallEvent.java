@@ -0,0 +1,29 @@
+package cs.umass.edu.myactivitiestoolkit.falls;
+
+/**
+ * A fall detected by the {@link FallDetector}, together with a snapshot of the raw
+ * accelerometer data that led up to it. The snapshot is a set of columns of equal
+ * length, ordered by time, ready to be stored or uploaded.
+ */
+public class FallEvent {
+    /** Time of the impact, in milliseconds. */
+    public final long timestamp;
+
+    /** Magnitude of the acceleration at the impact, in m/s^2. */
+    public final float impactMagnitude;
+
+    /** Timestamps of the snapshot samples, in nanoseconds. */
+    public final long[] timestamps;
+
+    /** Acceleration of the snapshot samples along the x, y and z axes, in m/s^2. */
+    public final float[] x, y, z;
+
+    public FallEvent(long timestamp, float impactMagnitude, long[] timestamps, float[] x, float[] y, float[] z) {
+        this.timestamp = timestamp;
+        this.impactMagnitude = impactMagnitude;
+        this.timestamps = timestamps;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+}
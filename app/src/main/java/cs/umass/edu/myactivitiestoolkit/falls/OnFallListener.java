@@ -0,0 +1,8 @@
+package cs.umass.edu.myactivitiestoolkit.falls;
+
+/**
+ * Clients may register an OnFallListener to be notified of falls.
+ */
+public interface OnFallListener {
+    void onFallDetected(FallEvent event);
+}
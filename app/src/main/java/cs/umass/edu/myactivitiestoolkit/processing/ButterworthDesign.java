@@ -0,0 +1,132 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+/**
+ * Designs digital Butterworth filters of arbitrary order as cascades of second-order
+ * sections (biquads). The analog prototype is mapped to the digital domain using the
+ * bilinear transform with the cutoff pre-warped, so the -3 dB point lands exactly on
+ * the requested frequency for any sample rate.
+ * <br><br>
+ * The coefficients are returned packed five per section as
+ * {@code b0, b1, b2, a1, a2} (with {@code a0} normalized to 1), which is the layout
+ * expected by {@link BiquadCascade}. Odd orders produce a final first-order section
+ * whose {@code b2} and {@code a2} are zero.
+ *
+ * @see BiquadCascade
+ */
+public class ButterworthDesign {
+
+    /** The number of coefficients stored per second-order section. */
+    public static final int COEFFICIENTS_PER_SECTION = 5;
+
+    private ButterworthDesign() {
+        // static factory methods only
+    }
+
+    /**
+     * Designs a low-pass Butterworth filter.
+     * @param order the filter order, at least 1
+     * @param cutoff the -3 dB cutoff frequency in Hz
+     * @param sampleRate the sample rate in Hz
+     * @return the packed second-order section coefficients
+     */
+    public static double[] lowPass(int order, double cutoff, double sampleRate) {
+        checkArguments(order, cutoff, sampleRate);
+        return design(order, prewarp(cutoff, sampleRate), false);
+    }
+
+    /**
+     * Designs a high-pass Butterworth filter.
+     * @param order the filter order, at least 1
+     * @param cutoff the -3 dB cutoff frequency in Hz
+     * @param sampleRate the sample rate in Hz
+     * @return the packed second-order section coefficients
+     */
+    public static double[] highPass(int order, double cutoff, double sampleRate) {
+        checkArguments(order, cutoff, sampleRate);
+        return design(order, prewarp(cutoff, sampleRate), true);
+    }
+
+    /**
+     * Designs a band-pass filter as a high-pass section at the lower edge followed by a
+     * low-pass section at the upper edge, each of the given order. This is well suited
+     * to the wide pass bands used for physiological signals (e.g. 0.7 - 3.5 Hz for PPG).
+     * @param order the order of each edge, at least 1
+     * @param lowCutoff the lower -3 dB frequency in Hz
+     * @param highCutoff the upper -3 dB frequency in Hz
+     * @param sampleRate the sample rate in Hz
+     * @return the packed second-order section coefficients
+     */
+    public static double[] bandPass(int order, double lowCutoff, double highCutoff, double sampleRate) {
+        if (lowCutoff >= highCutoff) {
+            throw new IllegalArgumentException("Lower cutoff must be below upper cutoff");
+        }
+        double[] high = highPass(order, lowCutoff, sampleRate);
+        double[] low = lowPass(order, highCutoff, sampleRate);
+        double[] sections = new double[high.length + low.length];
+        System.arraycopy(high, 0, sections, 0, high.length);
+        System.arraycopy(low, 0, sections, high.length, low.length);
+        return sections;
+    }
+
+    /**
+     * Returns the number of second-order sections needed for a filter of the given order.
+     * @param order the filter order
+     * @return the number of sections
+     */
+    public static int numSections(int order) {
+        return (order + 1) / 2;
+    }
+
+    private static void checkArguments(int order, double cutoff, double sampleRate) {
+        if (order < 1) {
+            throw new IllegalArgumentException("Filter order must be positive");
+        }
+        if (cutoff <= 0 || cutoff >= sampleRate / 2) {
+            throw new IllegalArgumentException("Cutoff " + cutoff + " Hz must lie in (0, " + sampleRate / 2 + ") Hz");
+        }
+    }
+
+    /** Pre-warps the cutoff frequency for the bilinear transform. */
+    private static double prewarp(double cutoff, double sampleRate) {
+        return Math.tan(Math.PI * cutoff / sampleRate);
+    }
+
+    private static double[] design(int order, double k, boolean highPass) {
+        int pairs = order / 2;
+        double[] sections = new double[numSections(order) * COEFFICIENTS_PER_SECTION];
+        double k2 = k * k;
+        int s = 0;
+        for (int i = 0; i < pairs; i++) {
+            // quality factor of the i-th conjugate pole pair of the analog prototype
+            double q = 1.0 / (2.0 * Math.sin(Math.PI * (2 * i + 1) / (2.0 * order)));
+            double norm = 1.0 / (1.0 + k / q + k2);
+            if (highPass) {
+                sections[s] = norm;
+                sections[s + 1] = -2 * norm;
+                sections[s + 2] = norm;
+            } else {
+                sections[s] = k2 * norm;
+                sections[s + 1] = 2 * k2 * norm;
+                sections[s + 2] = k2 * norm;
+            }
+            sections[s + 3] = 2 * (k2 - 1) * norm;
+            sections[s + 4] = (1 - k / q + k2) * norm;
+            s += COEFFICIENTS_PER_SECTION;
+        }
+        if (order % 2 == 1) {
+            // the real pole of an odd-order prototype becomes a first-order section
+            double norm = 1.0 / (k + 1);
+            if (highPass) {
+                sections[s] = norm;
+                sections[s + 1] = -norm;
+            } else {
+                sections[s] = k * norm;
+                sections[s + 1] = k * norm;
+            }
+            sections[s + 2] = 0;
+            sections[s + 3] = (k - 1) * norm;
+            sections[s + 4] = 0;
+        }
+        return sections;
+    }
+}
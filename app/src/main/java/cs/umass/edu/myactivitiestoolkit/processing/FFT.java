@@ -1,12 +1,72 @@
 package cs.umass.edu.myactivitiestoolkit.processing;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-place fast Fourier transform of a fixed power-of-two size. All lookup tables
+ * are built in the constructor and never modified afterwards, so a single instance
+ * may be shared by any number of threads as long as each thread passes its own
+ * data arrays. Use {@link #getInstance(int)} to obtain the shared instance for a
+ * given size instead of building the tables again.
+ *
+ * @see SpectralPlan
+ */
 public class FFT
 {
-        int n, m;
+        /** Shared transforms, keyed by size. */
+        private static final ConcurrentHashMap<Integer, FFT> INSTANCES = new ConcurrentHashMap<>();
+
+        final int n, m;
 
         // Lookup tables.  Only need to recompute when size of FFT changes.
-        double[] cos;
-        double[] sin;
+        final double[] cos;
+        final double[] sin;
+
+        // Pairs of indices (i, j), i < j, swapped by the bit-reversal permutation.
+        final int[] bitReverseSwaps;
+
+        // Per-stage twiddle factors for the radix-4 passes. Stage s holds, for each
+        // butterfly j, the six values re/im of W^j, W^2j and W^3j back to back, so
+        // the inner loop walks the table sequentially.
+        final double[][] stageTwiddles;
+
+        // Single-precision copies of the tables for the float transforms.
+        final float[] cosF;
+        final float[] sinF;
+        final float[][] stageTwiddlesF;
+
+        // Half-length transform used by realFft, looked up on first use.
+        private volatile FFT half;
+
+        /**
+         * Returns the shared transform of the given size, building its tables the
+         * first time the size is requested.
+         * @param n the length of the FFT, must be a power of 2
+         * @return an immutable, thread-safe transform
+         */
+        public static FFT getInstance(int n)
+        {
+                FFT fft = INSTANCES.get(n);
+                if (fft == null)
+                {
+                        FFT created = new FFT(n);
+                        fft = INSTANCES.putIfAbsent(n, created);
+                        if (fft == null)
+                        {
+                                fft = created;
+                        }
+                }
+                return fft;
+        }
+
+        /**
+         * Returns the length of this transform.
+         * @return the number of points
+         */
+        public int getSize()
+        {
+                return n;
+        }
 
         public FFT(int n)
         {
@@ -28,6 +88,72 @@ public class FFT
                         cos[i] = Math.cos(-2*Math.PI*i/n);
                         sin[i] = Math.sin(-2*Math.PI*i/n);
                 }
+
+                bitReverseSwaps = computeBitReverseSwaps(n, m);
+                stageTwiddles = computeStageTwiddles(n, m);
+
+                cosF = toFloat(cos);
+                sinF = toFloat(sin);
+                stageTwiddlesF = new float[stageTwiddles.length][];
+                for (int s = 0; s < stageTwiddles.length; s++)
+                {
+                        stageTwiddlesF[s] = toFloat(stageTwiddles[s]);
+                }
+        }
+
+        private static float[] toFloat(double[] values)
+        {
+                float[] result = new float[values.length];
+                for (int i = 0; i < values.length; i++)
+                {
+                        result[i] = (float) values[i];
+                }
+                return result;
+        }
+
+        private static int[] computeBitReverseSwaps(int n, int m)
+        {
+                int count = 0;
+                int[] rev = new int[n];
+                for (int i = 0; i < n; i++)
+                {
+                        rev[i] = m == 0 ? 0 : Integer.reverse(i) >>> (32 - m);
+                        if (i < rev[i]) count++;
+                }
+                int[] swaps = new int[2*count];
+                int k = 0;
+                for (int i = 0; i < n; i++)
+                {
+                        if (i < rev[i])
+                        {
+                                swaps[k++] = i;
+                                swaps[k++] = rev[i];
+                        }
+                }
+                return swaps;
+        }
+
+        private static double[][] computeStageTwiddles(int n, int m)
+        {
+                // An odd number of radix-2 stages leaves one trivial radix-2 pass up front
+                int h = (m % 2 == 1) ? 2 : 1;
+                double[][] tables = new double[m/2][];
+                for (int s = 0; s < tables.length; s++, h *= 4)
+                {
+                        double[] t = new double[6*h];
+                        for (int j = 0; j < h; j++)
+                        {
+                                double theta = -2*Math.PI*j/(4*h);
+                                t[6*j]   = Math.cos(theta);
+                                t[6*j+1] = Math.sin(theta);
+                                t[6*j+2] = Math.cos(2*theta);
+                                t[6*j+3] = Math.sin(2*theta);
+                                t[6*j+4] = Math.cos(3*theta);
+                                t[6*j+5] = Math.sin(3*theta);
+                        }
+                        tables[s] = t;
+                }
+                return tables;
         }
 
 
@@ -50,62 +176,286 @@ public class FFT
          * 
          *   Permission to copy and use this program is granted 
          *   as long as this header is included. 
+         ****************************************************************
+         * The original radix-2 kernel has been restructured: the bit-reversal
+         * permutation comes from a precomputed swap table, and pairs of radix-2
+         * stages are fused into radix-4 butterflies (3 complex multiplies per
+         * 4 points instead of 4) that read contiguous per-stage twiddle tables.
+         * When log2(n) is odd a single twiddle-free radix-2 pass runs first.
          ****************************************************************/
         public void fft(double[] re, double[] im)
         {
-                int i,j,k,n1,n2,a;
-                double c,s,t1,t2;
+                int i, j, k;
+                double t;
 
                 // Bit-reverse
-                j = 0;
-                n2 = n/2;
-                for (i=1; i < n - 1; i++)
+                int[] swaps = bitReverseSwaps;
+                for (k = 0; k < swaps.length; k += 2)
+                {
+                        i = swaps[k];
+                        j = swaps[k+1];
+                        t = re[i]; re[i] = re[j]; re[j] = t;
+                        t = im[i]; im[i] = im[j]; im[j] = t;
+                }
+
+                int h = 1;
+                if (m % 2 == 1)
+                {
+                        // Leading radix-2 pass, all twiddles are 1
+                        for (k = 0; k < n; k += 2)
+                        {
+                                double r0 = re[k], i0 = im[k];
+                                double r1 = re[k+1], i1 = im[k+1];
+                                re[k] = r0 + r1; im[k] = i0 + i1;
+                                re[k+1] = r0 - r1; im[k+1] = i0 - i1;
+                        }
+                        h = 2;
+                }
+
+                // Radix-4 passes. Within each block of 4h points the bit-reversed
+                // order places the sub-DFTs of x[4r], x[4r+2], x[4r+1], x[4r+3]
+                // at offsets 0, h, 2h and 3h respectively.
+                for (int s = 0; s < stageTwiddles.length; s++, h *= 4)
                 {
-                        n1 = n2;
-                        while ( j >= n1 )
+                        double[] tw = stageTwiddles[s];
+                        int step = 4*h;
+                        for (int b = 0; b < n; b += step)
                         {
-                                j = j - n1;
-                                n1 = n1/2;
+                                for (j = 0, k = 0; j < h; j++, k += 6)
+                                {
+                                        int i0 = b + j, i1 = i0 + h, i2 = i1 + h, i3 = i2 + h;
+                                        double w1r = tw[k], w1i = tw[k+1];
+                                        double w2r = tw[k+2], w2i = tw[k+3];
+                                        double w3r = tw[k+4], w3i = tw[k+5];
+
+                                        double ar = re[i0], ai = im[i0];
+                                        double cr = re[i1], ci = im[i1];
+                                        double br = re[i2], bi = im[i2];
+                                        double dr = re[i3], di = im[i3];
+
+                                        // b *= W^j, c *= W^2j, d *= W^3j
+                                        t  = w1r*br - w1i*bi; bi = w1r*bi + w1i*br; br = t;
+                                        t  = w2r*cr - w2i*ci; ci = w2r*ci + w2i*cr; cr = t;
+                                        t  = w3r*dr - w3i*di; di = w3r*di + w3i*dr; dr = t;
+
+                                        double s0r = ar + cr, s0i = ai + ci;
+                                        double s1r = ar - cr, s1i = ai - ci;
+                                        double s2r = br + dr, s2i = bi + di;
+                                        double s3r = br - dr, s3i = bi - di;
+
+                                        re[i0] = s0r + s2r; im[i0] = s0i + s2i;
+                                        re[i2] = s0r - s2r; im[i2] = s0i - s2i;
+                                        // -i * (b - d) = (s3i, -s3r)
+                                        re[i1] = s1r + s3i; im[i1] = s1i - s3r;
+                                        re[i3] = s1r - s3i; im[i3] = s1i + s3r;
+                                }
                         }
-                        j = j + n1;
+                }
+        }
+
+        /**
+         * Computes the FFT of n real samples using a single n/2-point complex FFT.
+         * The even and odd samples are packed into the real and imaginary parts of
+         * a half-length signal, transformed, and then separated again using the
+         * conjugate symmetry of real-input spectra.
+         * <br><br>
+         * Only the non-redundant bins 0 .. n/2 are produced, which is exactly what
+         * {@link cs.umass.edu.myactivitiestoolkit.audio.MFCC#cepstrum(double[], double[])}
+         * reads. The output arrays double as the work area, so no memory is allocated
+         * and the input is left untouched.
+         *
+         * @param x the n real input samples
+         * @param re receives the real parts of bins 0 .. n/2, length at least n/2 + 1
+         * @param im receives the imaginary parts of bins 0 .. n/2, length at least n/2 + 1
+         */
+        public void realFft(double[] x, double[] re, double[] im)
+        {
+                int h = n/2;
+                if (h == 0)
+                {
+                        re[0] = x[0];
+                        im[0] = 0;
+                        return;
+                }
+
+                // Pack even samples into the real part and odd samples into the imaginary part
+                for (int i = 0; i < h; i++)
+                {
+                        re[i] = x[2*i];
+                        im[i] = x[2*i+1];
+                }
+                halfSize().fft(re, im);
 
-                        if (i < j)
+                // Split the half-length spectrum into the spectrum of the real signal.
+                // Bins k and h-k depend on each other, so they are updated as a pair.
+                double z0r = re[0], z0i = im[0];
+                re[0] = z0r + z0i;
+                im[0] = 0;
+                re[h] = z0r - z0i;
+                im[h] = 0;
+
+                for (int k = 1; k <= h/2; k++)
+                {
+                        int j = h - k;
+                        double ar = re[k], ai = im[k];
+                        double br = re[j], bi = im[j];
+
+                        // bin k from Z[k] and conj(Z[h-k])
+                        double er = 0.5*(ar + br), ei = 0.5*(ai - bi);
+                        double or = 0.5*(ai + bi), oi = -0.5*(ar - br);
+                        double c = cos[k], s = sin[k];
+                        re[k] = er + c*or - s*oi;
+                        im[k] = ei + s*or + c*oi;
+
+                        if (j != k)
                         {
-                                t1 = re[i];
-                                re[i] = re[j];
-                                re[j] = t1;
-                                t1 = im[i];
-                                im[i] = im[j];
-                                im[j] = t1;
+                                // bin h-k from Z[h-k] and conj(Z[k])
+                                er = 0.5*(br + ar);
+                                ei = 0.5*(bi - ai);
+                                or = 0.5*(bi + ai);
+                                oi = -0.5*(br - ar);
+                                c = cos[j];
+                                s = sin[j];
+                                re[j] = er + c*or - s*oi;
+                                im[j] = ei + s*or + c*oi;
                         }
                 }
+        }
 
-                // FFT
-                n2 = 1;
+        /**
+         * Single-precision version of {@link #fft(double[], double[])}. Working in
+         * floats halves the memory traffic of the transform, which is worthwhile for
+         * 16-bit audio and sensor data whose precision is far below that of a float.
+         * @param re the real parts, transformed in place
+         * @param im the imaginary parts, transformed in place
+         */
+        public void fft(float[] re, float[] im)
+        {
+                int i, j, k;
+                float t;
 
-                for (i=0; i < m; i++)
+                int[] swaps = bitReverseSwaps;
+                for (k = 0; k < swaps.length; k += 2)
                 {
-                        n1 = n2;
-                        n2 = n2 + n2;
-                        a = 0;
+                        i = swaps[k];
+                        j = swaps[k+1];
+                        t = re[i]; re[i] = re[j]; re[j] = t;
+                        t = im[i]; im[i] = im[j]; im[j] = t;
+                }
 
-                        for (j=0; j < n1; j++)
+                int h = 1;
+                if (m % 2 == 1)
+                {
+                        for (k = 0; k < n; k += 2)
                         {
-                                c = cos[a];
-                                s = sin[a];
-                                a +=  1 << (m-i-1);
+                                float r0 = re[k], i0 = im[k];
+                                float r1 = re[k+1], i1 = im[k+1];
+                                re[k] = r0 + r1; im[k] = i0 + i1;
+                                re[k+1] = r0 - r1; im[k+1] = i0 - i1;
+                        }
+                        h = 2;
+                }
 
-                                for (k=j; k < n; k=k+n2)
+                for (int s = 0; s < stageTwiddlesF.length; s++, h *= 4)
+                {
+                        float[] tw = stageTwiddlesF[s];
+                        int step = 4*h;
+                        for (int b = 0; b < n; b += step)
+                        {
+                                for (j = 0, k = 0; j < h; j++, k += 6)
                                 {
-                                        t1 = c*re[k+n1] - s*im[k+n1];
-                                        t2 = s*re[k+n1] + c*im[k+n1];
-                                        re[k+n1] = re[k] - t1;
-                                        im[k+n1] = im[k] - t2;
-                                        re[k] = re[k] + t1;
-                                        im[k] = im[k] + t2;
+                                        int i0 = b + j, i1 = i0 + h, i2 = i1 + h, i3 = i2 + h;
+                                        float w1r = tw[k], w1i = tw[k+1];
+                                        float w2r = tw[k+2], w2i = tw[k+3];
+                                        float w3r = tw[k+4], w3i = tw[k+5];
+
+                                        float ar = re[i0], ai = im[i0];
+                                        float cr = re[i1], ci = im[i1];
+                                        float br = re[i2], bi = im[i2];
+                                        float dr = re[i3], di = im[i3];
+
+                                        t  = w1r*br - w1i*bi; bi = w1r*bi + w1i*br; br = t;
+                                        t  = w2r*cr - w2i*ci; ci = w2r*ci + w2i*cr; cr = t;
+                                        t  = w3r*dr - w3i*di; di = w3r*di + w3i*dr; dr = t;
+
+                                        float s0r = ar + cr, s0i = ai + ci;
+                                        float s1r = ar - cr, s1i = ai - ci;
+                                        float s2r = br + dr, s2i = bi + di;
+                                        float s3r = br - dr, s3i = bi - di;
+
+                                        re[i0] = s0r + s2r; im[i0] = s0i + s2i;
+                                        re[i2] = s0r - s2r; im[i2] = s0i - s2i;
+                                        re[i1] = s1r + s3i; im[i1] = s1i - s3r;
+                                        re[i3] = s1r - s3i; im[i3] = s1i + s3r;
                                 }
                         }
                 }
-        }                          
+        }
+
+        /**
+         * Single-precision version of {@link #realFft(double[], double[], double[])}.
+         * @param x the n real input samples
+         * @param re receives the real parts of bins 0 .. n/2, length at least n/2 + 1
+         * @param im receives the imaginary parts of bins 0 .. n/2, length at least n/2 + 1
+         */
+        public void realFft(float[] x, float[] re, float[] im)
+        {
+                int h = n/2;
+                if (h == 0)
+                {
+                        re[0] = x[0];
+                        im[0] = 0;
+                        return;
+                }
+
+                for (int i = 0; i < h; i++)
+                {
+                        re[i] = x[2*i];
+                        im[i] = x[2*i+1];
+                }
+                halfSize().fft(re, im);
+
+                float z0r = re[0], z0i = im[0];
+                re[0] = z0r + z0i;
+                im[0] = 0;
+                re[h] = z0r - z0i;
+                im[h] = 0;
+
+                for (int k = 1; k <= h/2; k++)
+                {
+                        int j = h - k;
+                        float ar = re[k], ai = im[k];
+                        float br = re[j], bi = im[j];
+
+                        float er = 0.5f*(ar + br), ei = 0.5f*(ai - bi);
+                        float or = 0.5f*(ai + bi), oi = -0.5f*(ar - br);
+                        float c = cosF[k], s = sinF[k];
+                        re[k] = er + c*or - s*oi;
+                        im[k] = ei + s*or + c*oi;
+
+                        if (j != k)
+                        {
+                                er = 0.5f*(br + ar);
+                                ei = 0.5f*(bi - ai);
+                                or = 0.5f*(bi + ai);
+                                oi = -0.5f*(br - ar);
+                                c = cosF[j];
+                                s = sinF[j];
+                                re[j] = er + c*or - s*oi;
+                                im[j] = ei + s*or + c*oi;
+                        }
+                }
+        }
+
+        private FFT halfSize()
+        {
+                FFT h = half;
+                if (h == null)
+                {
+                        h = getInstance(n/2);
+                        half = h;
+                }
+                return h;
+        }
 
 }
\ No newline at end of file
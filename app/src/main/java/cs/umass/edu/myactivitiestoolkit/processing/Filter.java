@@ -16,7 +16,9 @@ public class Filter {
 		SMOOTHING
 	};
 	
-	private int SAMPLE_RATE = 30;
+	private static final double DEFAULT_SAMPLE_RATE = 30;
+
+	private double SAMPLE_RATE = DEFAULT_SAMPLE_RATE;
 	
 	private FilterType FILTER_TYPE = FilterType.SMOOTHING;
 	
@@ -29,20 +31,37 @@ public class Filter {
 	
 	private double xv[][] = null;
 	private double yv[][] = null;
+
+	/** The filter designed for a runtime sample rate, null for the legacy 30 Hz filter. */
+	private BiquadCascade cascade = null;
 	
 	private double expectedValue[] =null;
 	private static final double INVALID = Double.NEGATIVE_INFINITY;
 	
 	private static final int NUM_ACCEL_FIELDS = 3;
 
+	/** The number of independent channels this filter keeps state for. */
+	private final int numChannels;
+
 	/**
 	 * Use this constructor to use an exponential smoothing filter
 	 * @param smoothFactor the factor by which to smooth the data, in the range [0, 1]
 	 */
 	public Filter(int smoothFactor) {
+		this(smoothFactor, NUM_ACCEL_FIELDS);
+	}
+
+	/**
+	 * Use this constructor to use an exponential smoothing filter over an arbitrary
+	 * number of channels.
+	 * @param smoothFactor the factor by which to smooth the data, in the range [0, 1]
+	 * @param numChannels the number of channels filtered per sample
+	 */
+	public Filter(int smoothFactor, int numChannels) {
 		FILTER_TYPE = FilterType.SMOOTHING;
 		SMOOTH_FACTOR = (smoothFactor>=1?smoothFactor:1);
-		expectedValue = new double[NUM_ACCEL_FIELDS];
+		this.numChannels = numChannels;
+		expectedValue = new double[numChannels];
 	}
 	
 	/**
@@ -50,38 +69,129 @@ public class Filter {
 	 * @param cutoffFrequency the frequency threshold for smoothing.
 	 */
 	public Filter(double cutoffFrequency) {
+		this(cutoffFrequency, NUM_ACCEL_FIELDS);
+	}
+
+	/**
+	 * Use this constructor to use a Butterworth filter over an arbitrary number of channels.
+	 * @param cutoffFrequency the frequency threshold for smoothing.
+	 * @param numChannels the number of channels filtered per sample
+	 */
+	public Filter(double cutoffFrequency, int numChannels) {
 		FILTER_TYPE = FilterType.BUTTERWORTH;
 		CUTOFF_FREQUENCY = cutoffFrequency;
-		xv = new double[NUM_ACCEL_FIELDS][3];
-		yv = new double[NUM_ACCEL_FIELDS][3];
+		this.numChannels = numChannels;
+		xv = new double[numChannels][3];
+		yv = new double[numChannels][3];
 		getLPCoefficientsButterworth2Pole(SAMPLE_RATE, CUTOFF_FREQUENCY);
 	}
+
+	/**
+	 * Use this constructor to use a 2-pole Butterworth low-pass filter on data sampled at
+	 * a known rate, e.g. the 5 Hz of {@code SENSOR_DELAY_NORMAL}. Unlike the constructors
+	 * above, which keep the response of the original 30 Hz filter, the cutoff is the exact
+	 * -3 dB point at the given rate, see {@link ButterworthDesign#lowPass(int, double, double)}.
+	 * For higher orders or high-/band-pass responses use {@link BiquadCascade}.
+	 * @param cutoffFrequency the frequency threshold for smoothing, below half the sample rate.
+	 * @param sampleRate the rate, in Hz, at which samples are delivered
+	 * @param numChannels the number of channels filtered per sample
+	 * @throws IllegalArgumentException if the cutoff is not in (0, sampleRate / 2)
+	 */
+	public Filter(double cutoffFrequency, double sampleRate, int numChannels) {
+		FILTER_TYPE = FilterType.BUTTERWORTH;
+		SAMPLE_RATE = sampleRate;
+		CUTOFF_FREQUENCY = cutoffFrequency;
+		this.numChannels = numChannels;
+		cascade = BiquadCascade.lowPass(2, cutoffFrequency, sampleRate, numChannels);
+	}
+
+	/**
+	 * Returns the number of channels this filter keeps state for.
+	 * @return the channel count
+	 */
+	public int getNumChannels() {
+		return numChannels;
+	}
 	
 	
 	/**
-	 * Filters the current accelerometer reading.
+	 * Filters the current accelerometer reading. This allocates a new result array on
+	 * every call; prefer {@link #filter(float[], double[])} on hot paths.
 	 * @param values the accelerometer values along the x, y and z axes
 	 * @return the filtered accelerometer values.
 	 */
 	public double[] getFilteredValues(float... values) {
-		double result[] = new double[NUM_ACCEL_FIELDS];
+		double result[] = new double[numChannels];
+		filter(values, result);
+		return result;
+	}
+
+	/**
+	 * Filters a single multi-channel sample into a caller-supplied buffer. No memory
+	 * is allocated, so the same output buffer may be reused for every sample.
+	 * @param values one value per channel, at most {@link #getNumChannels()} values
+	 * @param out receives the filtered values, must be at least as long as values
+	 */
+	public void filter(float[] values, double[] out) {
+		checkChannels(values.length);
 		if(FILTER_TYPE == FilterType.BUTTERWORTH) {
 			for (int i = 0; i < values.length; i++){
-				result[i] = getButterworthFilteredValue(values[i], i);
+				out[i] = getButterworthFilteredValue(values[i], i);
 			}
-//			result[X_INDEX] = getButterworthFilteredValue(values[0], X_INDEX);
-//			result[Y_INDEX] = getButterworthFilteredValue(values[1], Y_INDEX);
-//			result[Z_INDEX] = getButterworthFilteredValue(values[2], Z_INDEX);
 		}
 		else if(FILTER_TYPE == FilterType.SMOOTHING) {
 			for (int i = 0; i < values.length; i++){
-				result[i] = getSmoothedValue(values[i], i);
+				out[i] = getSmoothedValue(values[i], i);
 			}
-//			result[X_INDEX] = getSmoothedValue(values[0], X_INDEX);
-//			result[Y_INDEX] = getSmoothedValue(values[1], Y_INDEX);
-//			result[Z_INDEX] = getSmoothedValue(values[2], Z_INDEX);
 		}
-		return result;
+	}
+
+	/**
+	 * Single-precision version of {@link #filter(float[], double[])}. The filter state
+	 * is still kept in double precision, only the output is narrowed.
+	 * @param values one value per channel, at most {@link #getNumChannels()} values
+	 * @param out receives the filtered values, must be at least as long as values
+	 */
+	public void filter(float[] values, float[] out) {
+		filterBlock(values, 1, values.length, out);
+	}
+
+	/**
+	 * Filters a block of interleaved multi-channel samples, e.g. x0 y0 z0 x1 y1 z1 ...
+	 * Channel c of every frame is filtered with the state of channel c, exactly as if
+	 * each frame had been passed to {@link #filter(float[], double[])} in turn. No memory
+	 * is allocated. The input and output buffers may be the same array.
+	 * @param interleaved the input samples, at least frames * channels long
+	 * @param frames the number of frames in the block
+	 * @param channels the number of channels per frame, at most {@link #getNumChannels()}
+	 * @param out receives the filtered samples in the same interleaved layout
+	 */
+	public void filterBlock(float[] interleaved, int frames, int channels, float[] out) {
+		checkChannels(channels);
+		int length = frames * channels;
+		if (interleaved.length < length || out.length < length) {
+			throw new IllegalArgumentException("Buffers must hold " + frames + " frames of " + channels + " channels");
+		}
+		if(FILTER_TYPE == FilterType.BUTTERWORTH) {
+			for (int c = 0; c < channels; c++){
+				for (int i = c; i < length; i += channels){
+					out[i] = (float) getButterworthFilteredValue(interleaved[i], c);
+				}
+			}
+		}
+		else if(FILTER_TYPE == FilterType.SMOOTHING) {
+			for (int c = 0; c < channels; c++){
+				for (int i = c; i < length; i += channels){
+					out[i] = (float) getSmoothedValue(interleaved[i], c);
+				}
+			}
+		}
+	}
+
+	private void checkChannels(int channels) {
+		if (channels > numChannels) {
+			throw new IllegalArgumentException("Filter has state for " + numChannels + " channels, got " + channels);
+		}
 	}
 	
 	/**
@@ -91,6 +201,9 @@ public class Filter {
 	 * @return
 	 */
 	private double getButterworthFilteredValue(double sample, int filterIndex) {
+		if (cascade != null) {
+			return cascade.process(sample, filterIndex);
+		}
 		xv[filterIndex][2] = xv[filterIndex][1]; xv[filterIndex][1] = xv[filterIndex][0];
 		xv[filterIndex][0] = sample;
 		yv[filterIndex][2] = yv[filterIndex][1]; yv[filterIndex][1] = yv[filterIndex][0];
@@ -120,11 +233,13 @@ public class Filter {
 	}
 	
 	/**
-	 * Get Butterworth 2 Pole LPC Coefficients
+	 * Get Butterworth 2 Pole LPC Coefficients. This is the response of the original
+	 * filter, kept as is for the 30 Hz constructors; its cutoff is not pre-warped for
+	 * the bilinear transform.
 	 * @param SAMPLE_RATE
 	 * @param cutoff
 	 */
-	private void getLPCoefficientsButterworth2Pole(int SAMPLE_RATE, double cutoff)
+	private void getLPCoefficientsButterworth2Pole(double SAMPLE_RATE, double cutoff)
 	{
 		double PI = 3.1415926535897932385;
 		double sqrt2 = 1.4142135623730950488;
@@ -0,0 +1,247 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the dominant period of a quasi-periodic signal, such as walking cadence
+ * from accelerometer data or the pulse in a PPG signal, from the autocorrelation of a
+ * sliding window.
+ * <br><br>
+ * The autocorrelation is computed through the Wiener-Khinchin theorem: the mean-removed
+ * window is zero-padded to at least twice its length, so the circular correlation
+ * equals the linear one, transformed with {@link FFT#realFft(double[], double[], double[])},
+ * and the transform of its power spectrum yields the autocorrelation at every lag. Because
+ * the power spectrum is real and even, that second transform is again a real FFT.
+ * Both take O(n log n) instead of the O(n^2) of a direct evaluation.
+ * <br><br>
+ * Samples are pushed one at a time into a ring buffer, and a new estimate is made every
+ * {@code hopSize} samples once the window is full. The period is the lag of the highest
+ * autocorrelation peak within the configured range, refined by parabolic interpolation.
+ * Peaks are ranked on the biased autocorrelation, which tapers towards long lags.
+ * To avoid locking onto a multiple of the true period, the shortest lag whose peak
+ * reaches {@value #OCTAVE_TOLERANCE} of the highest one is preferred. The confidence is
+ * the normalized autocorrelation at that lag: close to 1 for a clean periodic signal and
+ * close to 0 for noise. All buffers are allocated up front.
+ */
+public class PeriodicityEstimator {
+
+    /** Fraction of the highest peak a shorter-lag peak needs to be preferred. */
+    private static final double OCTAVE_TOLERANCE = 0.9;
+
+    private final int windowSize, hopSize, minLag, maxLag;
+
+    private final double sampleRate;
+
+    private final FFT fft;
+
+    /** The last windowSize samples. */
+    private final double[] history;
+
+    /** Padded frame, reused for the power spectrum. */
+    private final double[] frame;
+
+    /** Spectrum of the frame, then the autocorrelation at lags 0 .. fftSize/2. */
+    private final double[] re, im;
+
+    private int position = 0;
+
+    private long count = 0;
+
+    private int sinceUpdate = 0;
+
+    private double period = Double.NaN;
+
+    private double confidence = 0;
+
+    /**
+     * Creates an estimator.
+     * @param windowSize the number of samples the autocorrelation spans
+     * @param hopSize the number of samples between estimates
+     * @param sampleRate the sample rate in Hz
+     * @param minPeriod the shortest period of interest, in seconds
+     * @param maxPeriod the longest period of interest, in seconds, at most the window duration
+     */
+    public PeriodicityEstimator(int windowSize, int hopSize, double sampleRate, double minPeriod, double maxPeriod) {
+        if (windowSize < 4 || hopSize < 1) {
+            throw new IllegalArgumentException("Window must hold at least 4 samples and hop must be positive");
+        }
+        this.windowSize = windowSize;
+        this.hopSize = hopSize;
+        this.sampleRate = sampleRate;
+        this.minLag = Math.max(1, (int) Math.floor(minPeriod * sampleRate));
+        this.maxLag = Math.min(windowSize - 2, (int) Math.ceil(maxPeriod * sampleRate));
+        if (minLag >= maxLag) {
+            throw new IllegalArgumentException("Period range [" + minPeriod + ", " + maxPeriod
+                    + "] does not fit a window of " + windowSize + " samples");
+        }
+        int fftSize = 1;
+        while (fftSize < 2 * windowSize) {
+            fftSize <<= 1;
+        }
+        this.fft = FFT.getInstance(fftSize);
+        this.history = new double[windowSize];
+        this.frame = new double[fftSize];
+        this.re = new double[fftSize / 2 + 1];
+        this.im = new double[fftSize / 2 + 1];
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * Adds a sample, and updates the estimate if a hop has been completed.
+     * @param value the new sample
+     * @return true if a new estimate is available
+     */
+    public boolean push(double value) {
+        history[position] = value;
+        position = (position + 1) % windowSize;
+        count++;
+        if (count < windowSize) {
+            return false;
+        }
+        if (count > windowSize && ++sinceUpdate < hopSize) {
+            return false;
+        }
+        sinceUpdate = 0;
+        estimate();
+        return true;
+    }
+
+    /**
+     * Adds a block of samples.
+     * @param values the samples
+     * @param offset index of the first sample
+     * @param length number of samples
+     * @return true if at least one new estimate was made; the getters reflect the last one
+     */
+    public boolean push(double[] values, int offset, int length) {
+        boolean updated = false;
+        for (int i = offset; i < offset + length; i++) {
+            updated |= push(values[i]);
+        }
+        return updated;
+    }
+
+    /**
+     * Returns whether the window has been filled and an estimate made.
+     * @return true once the first estimate is available
+     */
+    public boolean isPrimed() {
+        return count >= windowSize;
+    }
+
+    /**
+     * Returns the dominant period in samples, with sub-sample resolution.
+     * @return the period, or NaN if the signal has no energy
+     */
+    public double getPeriodInSamples() {
+        return period;
+    }
+
+    /**
+     * Returns the dominant period in seconds.
+     * @return the period, or NaN if the signal has no energy
+     */
+    public double getPeriod() {
+        return period / sampleRate;
+    }
+
+    /**
+     * Returns the rate corresponding to the dominant period, e.g. steps or beats per minute.
+     * @return the rate per minute, or NaN if the signal has no energy
+     */
+    public double getRatePerMinute() {
+        return 60 * sampleRate / period;
+    }
+
+    /**
+     * Returns how periodic the window is at the estimated period.
+     * @return the normalized autocorrelation at the period, in [0, 1]
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Clears the window and the last estimate.
+     */
+    public void reset() {
+        Arrays.fill(history, 0);
+        position = 0;
+        count = 0;
+        sinceUpdate = 0;
+        period = Double.NaN;
+        confidence = 0;
+    }
+
+    private void estimate() {
+        // unroll the ring buffer oldest first, removing the mean
+        double mean = 0;
+        for (double v : history) {
+            mean += v;
+        }
+        mean /= windowSize;
+        int tail = windowSize - position;
+        for (int i = 0; i < tail; i++) {
+            frame[i] = history[position + i] - mean;
+        }
+        for (int i = 0; i < position; i++) {
+            frame[tail + i] = history[i] - mean;
+        }
+        Arrays.fill(frame, windowSize, frame.length, 0);
+
+        // power spectrum, mirrored into a full real, even sequence
+        fft.realFft(frame, re, im);
+        int n = frame.length, h = n / 2;
+        for (int k = 0; k <= h; k++) {
+            frame[k] = re[k] * re[k] + im[k] * im[k];
+        }
+        for (int k = 1; k < h; k++) {
+            frame[n - k] = frame[k];
+        }
+        // its transform is the (unnormalized) autocorrelation, real and even
+        fft.realFft(frame, re, im);
+
+        double energy = re[0];
+        if (!(energy > 0)) {
+            period = Double.NaN;
+            confidence = 0;
+            return;
+        }
+
+        // Peaks are compared on the biased autocorrelation, whose taper towards long
+        // lags favours the fundamental over its multiples
+        double best = 0;
+        for (int m = minLag; m <= maxLag; m++) {
+            if (re[m] > best && isPeak(m)) {
+                best = re[m];
+            }
+        }
+        if (best <= 0) {
+            period = Double.NaN;
+            confidence = 0;
+            return;
+        }
+        for (int m = minLag; m <= maxLag; m++) {
+            if (re[m] >= OCTAVE_TOLERANCE * best && isPeak(m)) {
+                double left = re[m - 1], centre = re[m], right = re[m + 1];
+                double curvature = left - 2 * centre + right;
+                double shift = curvature < 0 ? 0.5 * (left - right) / curvature : 0;
+                period = m + shift;
+                // the confidence corrects for the shrinking overlap at larger lags
+                confidence = Math.max(0, Math.min(1, centre / energy * windowSize / (windowSize - m)));
+                return;
+            }
+        }
+    }
+
+    private boolean isPeak(int lag) {
+        return re[lag] >= re[lag - 1] && re[lag] > re[lag + 1];
+    }
+}
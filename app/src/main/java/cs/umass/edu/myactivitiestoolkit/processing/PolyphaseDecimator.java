@@ -0,0 +1,238 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import java.util.Arrays;
+
+/**
+ * Converts a multi-channel stream from one sample rate to another by a rational
+ * factor L/M using an anti-aliased polyphase FIR filter.
+ * <br><br>
+ * Conceptually the input is upsampled by L, low-pass filtered below the smaller of the
+ * two Nyquist frequencies, at 0.9 of it, and downsampled by M. The polyphase form never computes the
+ * discarded samples: the windowed-sinc prototype is split into L phases of
+ * {@code tapsPerPhase} coefficients, and each output sample is a single dot product of
+ * one phase with the most recent inputs. The work per output is therefore
+ * {@code tapsPerPhase} multiply-adds per channel, independent of L and M.
+ * <br><br>
+ * Input history is kept in a primitive array per channel, written twice so every dot
+ * product reads a contiguous slice. Output is delivered through an
+ * {@link OnOutputListener} with a reused value array; nothing is allocated per sample.
+ */
+public class PolyphaseDecimator {
+
+    /**
+     * Receives the resampled stream.
+     */
+    public interface OnOutputListener {
+        /**
+         * Called for each output sample.
+         * @param timestamp the estimated time of the output sample, in the unit of the
+         *                  input timestamps, corrected for the filter delay
+         * @param values one value per channel. The array is reused, so copy it if it
+         *               must outlive the call.
+         */
+        void onOutput(long timestamp, float[] values);
+    }
+
+    /** Largest denominator considered when approximating a rate ratio. */
+    private static final int MAX_FACTOR = 64;
+
+    /**
+     * Default number of filter taps per polyphase branch. The transition band of the
+     * Blackman-windowed filter is about 5.5 / {@code tapsPerPhase} of the input rate
+     * wide, e.g. 7 Hz at the Band's 62.5 Hz.
+     */
+    public static final int DEFAULT_TAPS_PER_PHASE = 48;
+
+    /**
+     * Cutoff as a fraction of the smaller of the two Nyquist frequencies. Placing it below
+     * Nyquist puts most of the transition band in the output band rather than across it,
+     * so little of what lies above the output Nyquist frequency aliases back.
+     */
+    private static final double CUTOFF = 0.9;
+
+    private final int up, down, tapsPerPhase, numChannels;
+
+    /** Polyphase coefficients, phase p at [p * tapsPerPhase, (p + 1) * tapsPerPhase), newest input first. */
+    private final float[] phases;
+
+    /** Input history per channel, each of length 2 * tapsPerPhase, stored twice. */
+    private final float[][] history;
+
+    private final float[] output;
+
+    private final OnOutputListener listener;
+
+    /** Write position into the history. */
+    private int position = 0;
+
+    /** Position of the next output relative to the current input, in upsampled samples. */
+    private int offset = 0;
+
+    private long lastTimestamp;
+
+    private double inputPeriod = 0;
+
+    private boolean started = false;
+
+    /** Filter delay, in input samples. */
+    private final double delay;
+
+    /**
+     * Creates a resampler by the factor up / down.
+     * @param up the interpolation factor L
+     * @param down the decimation factor M
+     * @param tapsPerPhase the number of taps per polyphase branch
+     * @param numChannels the number of channels per sample
+     * @param listener receives the output
+     */
+    public PolyphaseDecimator(int up, int down, int tapsPerPhase, int numChannels, OnOutputListener listener) {
+        if (up < 1 || down < 1 || tapsPerPhase < 1) {
+            throw new IllegalArgumentException("Factors and taps must be positive");
+        }
+        this.up = up;
+        this.down = down;
+        this.tapsPerPhase = tapsPerPhase;
+        this.numChannels = numChannels;
+        this.listener = listener;
+        this.phases = designPhases(up, down, tapsPerPhase);
+        this.history = new float[numChannels][2 * tapsPerPhase];
+        this.output = new float[numChannels];
+        this.delay = (up * tapsPerPhase - 1) / (2.0 * up);
+    }
+
+    /**
+     * Creates a resampler between two sample rates, approximating their ratio by a
+     * fraction whose terms do not exceed {@value #MAX_FACTOR}.
+     * @param inputRate the input sample rate in Hz
+     * @param outputRate the desired output sample rate in Hz
+     * @param numChannels the number of channels per sample
+     * @param listener receives the output
+     * @return the resampler
+     */
+    public static PolyphaseDecimator forRates(double inputRate, double outputRate, int numChannels, OnOutputListener listener) {
+        int[] ratio = approximateRatio(outputRate / inputRate);
+        return new PolyphaseDecimator(ratio[0], ratio[1], DEFAULT_TAPS_PER_PHASE, numChannels, listener);
+    }
+
+    /**
+     * Finds the best fraction p/q with p, q at most {@value #MAX_FACTOR} using
+     * continued fractions.
+     */
+    private static int[] approximateRatio(double ratio) {
+        long p0 = 0, q0 = 1, p1 = 1, q1 = 0;
+        double x = ratio;
+        int[] best = {1, 1};
+        for (int i = 0; i < 32; i++) {
+            long a = (long) Math.floor(x);
+            long p2 = a * p1 + p0, q2 = a * q1 + q0;
+            if (p2 > MAX_FACTOR || q2 > MAX_FACTOR) {
+                break;
+            }
+            best[0] = (int) p2;
+            best[1] = (int) q2;
+            double fraction = x - a;
+            if (fraction < 1e-9) {
+                break;
+            }
+            x = 1 / fraction;
+            p0 = p1; q0 = q1; p1 = p2; q1 = q2;
+        }
+        if (best[0] == 0) {
+            best[0] = 1;
+            best[1] = MAX_FACTOR;
+        }
+        return best;
+    }
+
+    /**
+     * Designs a Blackman-windowed sinc low-pass at the upsampled rate and splits it
+     * into polyphase branches.
+     */
+    private static float[] designPhases(int up, int down, int tapsPerPhase) {
+        int length = up * tapsPerPhase;
+        // cutoff as a fraction of the upsampled sample rate
+        double cutoff = CUTOFF * 0.5 / Math.max(up, down);
+        double centre = (length - 1) / 2.0;
+        double[] prototype = new double[length];
+        for (int i = 0; i < length; i++) {
+            double t = i - centre;
+            double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+            double window = length == 1 ? 1 : 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (length - 1));
+            prototype[i] = sinc * window;
+        }
+        // normalize each branch to unit DC gain so the output level matches the input
+        float[] phases = new float[length];
+        for (int p = 0; p < up; p++) {
+            double sum = 0;
+            for (int k = 0; k < tapsPerPhase; k++) {
+                sum += prototype[k * up + p];
+            }
+            for (int k = 0; k < tapsPerPhase; k++) {
+                phases[p * tapsPerPhase + k] = (float) (prototype[k * up + p] / sum);
+            }
+        }
+        return phases;
+    }
+
+    public int getUpFactor() {
+        return up;
+    }
+
+    public int getDownFactor() {
+        return down;
+    }
+
+    /**
+     * Pushes one input sample and emits any output samples that fall on it.
+     * @param timestamp the input sample time
+     * @param values one value per channel
+     */
+    public void push(long timestamp, float[] values) {
+        if (started) {
+            double dt = timestamp - lastTimestamp;
+            inputPeriod = inputPeriod == 0 ? dt : inputPeriod + 0.05 * (dt - inputPeriod);
+        }
+        lastTimestamp = timestamp;
+        started = true;
+
+        for (int c = 0; c < numChannels; c++) {
+            float[] h = history[c];
+            h[position] = values[c];
+            h[position + tapsPerPhase] = values[c];
+        }
+        // newest sample is at position; the slice [position + 1, position + tapsPerPhase]
+        // runs from oldest to newest
+        int newest = position + tapsPerPhase;
+        position = (position + 1) % tapsPerPhase;
+
+        while (offset < up) {
+            int base = offset * tapsPerPhase;
+            for (int c = 0; c < numChannels; c++) {
+                float[] h = history[c];
+                float sum = 0;
+                for (int k = 0; k < tapsPerPhase; k++) {
+                    sum += phases[base + k] * h[newest - k];
+                }
+                output[c] = sum;
+            }
+            long t = timestamp + Math.round(((double) offset / up - delay) * inputPeriod);
+            listener.onOutput(t, output);
+            offset += down;
+        }
+        offset -= up;
+    }
+
+    /**
+     * Clears the input history.
+     */
+    public void reset() {
+        for (float[] h : history) {
+            Arrays.fill(h, 0);
+        }
+        position = 0;
+        offset = 0;
+        inputPeriod = 0;
+        started = false;
+    }
+}
@@ -0,0 +1,140 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import java.util.Arrays;
+
+/**
+ * Streaming short-time Fourier transform. Audio arrives in fixed-size blocks (e.g. the
+ * one-second buffers delivered by the microphone) and is cut into overlapping frames of
+ * {@code frameSize} samples every {@code hopSize} samples. The last
+ * {@code frameSize - hopSize} samples of each block are carried over, so frames that
+ * straddle two blocks are analysed exactly as if the audio had arrived in one piece.
+ * <br><br>
+ * Every block yields {@code blockSize / hopSize} frames. Each frame is windowed,
+ * zero-padded to the next power of two and transformed with
+ * {@link FFT#realFft(double[], double[], double[])}; the magnitudes of the
+ * non-redundant bins are written to a row of the output matrix. Two output matrices
+ * are preallocated and used in turn, so the matrix returned by one call stays intact
+ * while the next block is being processed. Nothing is allocated after construction.
+ *
+ * @see SpectralPlan
+ */
+public class STFT {
+
+    private final int frameSize;
+
+    private final int hopSize;
+
+    private final int blockSize;
+
+    /** Number of samples carried over from one block to the next. */
+    private final int overlap;
+
+    private final SpectralPlan plan;
+
+    /** Carried-over samples followed by the current block. */
+    private final double[] signal;
+
+    private final double[] frame;
+
+    private final double[] re;
+
+    private final double[] im;
+
+    /** Output matrices of shape [frames][bins], used alternately. */
+    private final double[][][] outputs = new double[2][][];
+
+    private int nextOutput = 0;
+
+    /**
+     * Creates a streaming STFT.
+     * @param frameSize the number of samples per analysis frame
+     * @param hopSize the number of samples between consecutive frames, at most frameSize
+     * @param window the window applied to each frame
+     * @param blockSize the number of samples passed to each {@link #process(short[], int)} call,
+     *                  a multiple of hopSize
+     */
+    public STFT(int frameSize, int hopSize, SpectralPlan.Window window, int blockSize) {
+        if (hopSize <= 0 || hopSize > frameSize) {
+            throw new IllegalArgumentException("Hop size must be in [1, frameSize]");
+        }
+        if (blockSize % hopSize != 0) {
+            throw new IllegalArgumentException("Block size must be a multiple of the hop size");
+        }
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.blockSize = blockSize;
+        this.overlap = frameSize - hopSize;
+
+        int fftSize = Integer.highestOneBit(frameSize);
+        if (fftSize < frameSize) {
+            fftSize <<= 1;
+        }
+        this.plan = SpectralPlan.getInstance(fftSize, frameSize, window);
+
+        signal = new double[overlap + blockSize];
+        frame = new double[fftSize];
+        re = new double[fftSize / 2 + 1];
+        im = new double[fftSize / 2 + 1];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = new double[blockSize / hopSize][fftSize / 2 + 1];
+        }
+    }
+
+    /**
+     * Returns the number of frames produced per block.
+     * @return the number of rows of each output matrix
+     */
+    public int getFramesPerBlock() {
+        return blockSize / hopSize;
+    }
+
+    /**
+     * Returns the number of frequency bins per frame.
+     * @return the number of columns of each output matrix
+     */
+    public int getNumBins() {
+        return re.length;
+    }
+
+    /**
+     * Analyses the next block of 16-bit audio.
+     * @param samples the audio samples
+     * @param length the number of valid samples, must equal the configured block size
+     * @return the magnitude spectrogram of the block as [frame][bin]. The matrix is
+     * owned by this object and will be overwritten by the call after next.
+     */
+    public double[][] process(short[] samples, int length) {
+        if (length != blockSize) {
+            throw new IllegalArgumentException("Expected " + blockSize + " samples, got " + length);
+        }
+        for (int i = 0; i < length; i++) {
+            signal[overlap + i] = samples[i];
+        }
+
+        double[][] out = outputs[nextOutput];
+        nextOutput = 1 - nextOutput;
+
+        FFT fft = plan.getFFT();
+        for (int f = 0, start = 0; f < out.length; f++, start += hopSize) {
+            System.arraycopy(signal, start, frame, 0, frameSize);
+            Arrays.fill(frame, frameSize, frame.length, 0);
+            plan.applyWindow(frame);
+            fft.realFft(frame, re, im);
+            double[] row = out[f];
+            for (int k = 0; k < row.length; k++) {
+                row[k] = Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+            }
+        }
+
+        // carry the tail of this block into the next one
+        System.arraycopy(signal, blockSize, signal, 0, overlap);
+        return out;
+    }
+
+    /**
+     * Discards the carried-over samples, e.g. when recording restarts.
+     */
+    public void reset() {
+        Arrays.fill(signal, 0);
+    }
+}
@@ -0,0 +1,224 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+/**
+ * Tracks a handful of DFT bins over a sliding window, updating each of them in O(1)
+ * per incoming sample. This is much cheaper than recomputing an FFT per window when
+ * only a narrow band is of interest, e.g. 0.7 - 3.5 Hz for heart rate or 0.5 - 3 Hz
+ * for walking cadence.
+ * <br><br>
+ * Each bin k of an N-point window follows the sliding DFT recurrence
+ * <pre>
+ *     X_k(n) = r e^(j 2 pi k / N) (X_k(n-1) + x(n) - r^N x(n-N))
+ * </pre>
+ * where the damping factor r slightly below 1 keeps rounding errors from accumulating
+ * over hours of continuous operation. The last N samples are kept in a primitive ring
+ * buffer, and no memory is allocated after construction.
+ */
+public class SlidingDFT {
+
+    /** Default damping factor, see the class documentation. */
+    public static final double DEFAULT_DAMPING = 0.99999;
+
+    private final int windowLength;
+
+    private final double sampleRate;
+
+    private final int[] bins;
+
+    /** Rotation r e^(j 2 pi k / N) for each tracked bin. */
+    private final double[] rotRe, rotIm;
+
+    /** Current value of each tracked bin. */
+    private final double[] binRe, binIm;
+
+    /** The last N samples. */
+    private final double[] history;
+
+    /** r^N, applied to the sample leaving the window. */
+    private final double dampingN;
+
+    private int position = 0;
+
+    private long count = 0;
+
+    /**
+     * Tracks every bin whose centre frequency lies in [minFrequency, maxFrequency].
+     * @param windowLength the window length N in samples
+     * @param sampleRate the sample rate in Hz
+     * @param minFrequency the lowest frequency of interest in Hz
+     * @param maxFrequency the highest frequency of interest in Hz
+     */
+    public SlidingDFT(int windowLength, double sampleRate, double minFrequency, double maxFrequency) {
+        this(windowLength, sampleRate, binsInRange(windowLength, sampleRate, minFrequency, maxFrequency), DEFAULT_DAMPING);
+    }
+
+    /**
+     * Tracks the given bins.
+     * @param windowLength the window length N in samples
+     * @param sampleRate the sample rate in Hz
+     * @param bins the bin indices to track, in increasing order, each in [0, N/2]
+     * @param damping the damping factor r, in (0, 1]
+     */
+    public SlidingDFT(int windowLength, double sampleRate, int[] bins, double damping) {
+        if (bins.length == 0) {
+            throw new IllegalArgumentException("No bins to track");
+        }
+        this.windowLength = windowLength;
+        this.sampleRate = sampleRate;
+        this.bins = bins.clone();
+        this.history = new double[windowLength];
+        this.dampingN = Math.pow(damping, windowLength);
+        rotRe = new double[bins.length];
+        rotIm = new double[bins.length];
+        binRe = new double[bins.length];
+        binIm = new double[bins.length];
+        for (int i = 0; i < bins.length; i++) {
+            double theta = 2 * Math.PI * bins[i] / windowLength;
+            rotRe[i] = damping * Math.cos(theta);
+            rotIm[i] = damping * Math.sin(theta);
+        }
+    }
+
+    private static int[] binsInRange(int windowLength, double sampleRate, double minFrequency, double maxFrequency) {
+        int lo = (int) Math.ceil(minFrequency * windowLength / sampleRate);
+        int hi = (int) Math.floor(maxFrequency * windowLength / sampleRate);
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, windowLength / 2);
+        if (hi < lo) {
+            throw new IllegalArgumentException("No bin of a " + windowLength + "-point window at "
+                    + sampleRate + " Hz lies in [" + minFrequency + ", " + maxFrequency + "] Hz");
+        }
+        int[] bins = new int[hi - lo + 1];
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = lo + i;
+        }
+        return bins;
+    }
+
+    /**
+     * Slides the window forward by one sample and updates every tracked bin.
+     * @param sample the new sample
+     */
+    public void update(double sample) {
+        double delta = sample - dampingN * history[position];
+        history[position] = sample;
+        if (++position == windowLength) {
+            position = 0;
+        }
+        count++;
+        for (int i = 0; i < bins.length; i++) {
+            double re = binRe[i] + delta;
+            double im = binIm[i];
+            binRe[i] = rotRe[i] * re - rotIm[i] * im;
+            binIm[i] = rotRe[i] * im + rotIm[i] * re;
+        }
+    }
+
+    /**
+     * Feeds a block of samples.
+     * @param samples the samples
+     * @param offset index of the first sample
+     * @param length number of samples
+     */
+    public void update(double[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            update(samples[i]);
+        }
+    }
+
+    /**
+     * Indicates whether a full window of samples has been seen, i.e. whether the bins
+     * describe a complete window rather than a partially filled one.
+     * @return true once at least N samples have been received
+     */
+    public boolean isPrimed() {
+        return count >= windowLength;
+    }
+
+    public int getNumBins() {
+        return bins.length;
+    }
+
+    /**
+     * Returns the centre frequency of a tracked bin.
+     * @param i the index into the tracked bins
+     * @return the frequency in Hz
+     */
+    public double getFrequency(int i) {
+        return bins[i] * sampleRate / windowLength;
+    }
+
+    /**
+     * Returns the power |X_k|^2 of a tracked bin.
+     * @param i the index into the tracked bins
+     * @return the bin power
+     */
+    public double getPower(int i) {
+        return binRe[i] * binRe[i] + binIm[i] * binIm[i];
+    }
+
+    /**
+     * Copies the power of every tracked bin into the given array.
+     * @param out receives {@link #getNumBins()} values
+     */
+    public void getPowers(double[] out) {
+        for (int i = 0; i < bins.length; i++) {
+            out[i] = getPower(i);
+        }
+    }
+
+    /**
+     * Returns the total power over all tracked bins.
+     * @return the band power
+     */
+    public double getBandPower() {
+        double total = 0;
+        for (int i = 0; i < bins.length; i++) {
+            total += getPower(i);
+        }
+        return total;
+    }
+
+    /**
+     * Estimates the dominant frequency within the tracked band. The strongest bin is
+     * refined by fitting a parabola through it and its neighbours when they are
+     * adjacent bins.
+     * @return the dominant frequency in Hz
+     */
+    public double getDominantFrequency() {
+        int best = 0;
+        double bestPower = getPower(0);
+        for (int i = 1; i < bins.length; i++) {
+            double p = getPower(i);
+            if (p > bestPower) {
+                bestPower = p;
+                best = i;
+            }
+        }
+        double bin = bins[best];
+        if (best > 0 && best < bins.length - 1
+                && bins[best - 1] == bins[best] - 1 && bins[best + 1] == bins[best] + 1) {
+            double left = getPower(best - 1), right = getPower(best + 1);
+            double denominator = left - 2 * bestPower + right;
+            if (denominator < 0) {
+                bin += 0.5 * (left - right) / denominator;
+            }
+        }
+        return bin * sampleRate / windowLength;
+    }
+
+    /**
+     * Clears the window and all tracked bins.
+     */
+    public void reset() {
+        for (int i = 0; i < bins.length; i++) {
+            binRe[i] = 0;
+            binIm[i] = 0;
+        }
+        for (int i = 0; i < windowLength; i++) {
+            history[i] = 0;
+        }
+        position = 0;
+        count = 0;
+    }
+}
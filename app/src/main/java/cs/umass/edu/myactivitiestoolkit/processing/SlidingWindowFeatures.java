@@ -0,0 +1,438 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+/**
+ * Computes the usual activity recognition features over a sliding window of a
+ * multi-channel signal, e.g. the x, y and z axes of the accelerometer. The window
+ * holds a fixed number of samples and advances by a fixed hop; whenever a hop is
+ * complete, {@link #update(float[])} returns true and {@link #getFeatures()} holds
+ * the features of the latest window.
+ * <br><br>
+ * Rather than recomputing every statistic from scratch for each overlapping window,
+ * the time-domain features are maintained as the samples enter and leave the window,
+ * at a constant cost per sample regardless of the window length:
+ * <ul>
+ *     <li>the mean and variance from running sums, recomputed from the window now
+ *     and then so that rounding errors cannot accumulate;</li>
+ *     <li>the minimum and maximum from monotonic queues of the sample numbers;</li>
+ *     <li>the zero-crossing rate from a count of sign changes between consecutive
+ *     samples;</li>
+ *     <li>the signal magnitude area from a running sum of absolute values;</li>
+ *     <li>the correlation between each pair of channels from running sums of products.</li>
+ * </ul>
+ * The zero-crossing rate and the signal magnitude area are taken of the dynamic part
+ * of the signal, that is, the signal minus a slowly varying baseline, an exponential
+ * average over about one window. This removes gravity from accelerometer axes, which
+ * would otherwise keep them from crossing zero at all.
+ * <br><br>
+ * Only the band energies need the spectrum; it is computed once per hop with
+ * {@link FFT#realFft(double[], double[], double[])}, from the window minus its mean,
+ * zero-padded to a power of two. The energy of a band is the part of the variance
+ * carried by its frequencies, so bands that cover the whole spectrum add up to the
+ * variance. Pass no band edges to skip the FFT altogether.
+ * <br><br>
+ * The features of all channels are laid out in one vector: first a block of
+ * {@link #MEAN}, {@link #VARIANCE}, {@link #MIN}, {@link #MAX},
+ * {@link #ZERO_CROSSING_RATE} and the band energies for each channel, then the signal
+ * magnitude area over all channels, then the correlation of each pair of channels.
+ * Use {@link #getIndex(int, int)}, {@link #getBandIndex(int, int)},
+ * {@link #getSmaIndex()} and {@link #getCorrelationIndex(int, int)} to look them up.
+ * All buffers, including the feature vector, are allocated in the constructor.
+ */
+public class SlidingWindowFeatures {
+
+    /** Offset of the mean within a channel's block of features. */
+    public static final int MEAN = 0;
+    /** Offset of the variance within a channel's block of features. */
+    public static final int VARIANCE = 1;
+    /** Offset of the minimum within a channel's block of features. */
+    public static final int MIN = 2;
+    /** Offset of the maximum within a channel's block of features. */
+    public static final int MAX = 3;
+    /**
+     * Offset of the zero-crossing rate within a channel's block of features: the
+     * fraction of consecutive samples between which the dynamic part changes sign.
+     */
+    public static final int ZERO_CROSSING_RATE = 4;
+    /** Offset of the first band energy within a channel's block of features. */
+    public static final int BAND_ENERGY = 5;
+
+    /** Number of passes over the buffer after which the running sums are recomputed. */
+    private static final int RESYNC_PERIOD = 64;
+
+    private final int channels;
+
+    private final int windowLength;
+
+    private final int hop;
+
+    /** Number of features per channel. */
+    private final int blockSize;
+
+    private final int smaIndex, correlationIndex;
+
+    /** The last windowLength samples of each channel, and their dynamic parts. */
+    private final float[][] samples, dynamic;
+
+    /** Index in the buffers of the next sample, which is the oldest once the window is full. */
+    private int position = 0;
+
+    /** Number of samples seen, which is also the sample number of the next sample. */
+    private long count = 0;
+
+    private int passes = 0;
+
+    /** The slowly varying baseline of each channel, and its smoothing factor. */
+    private final double[] baseline;
+    private final double baselineAlpha;
+
+    private final double[] sum, sumSquares;
+
+    /** Sum of products of each pair of channels, in the order of the correlation features. */
+    private final double[] sumProducts;
+
+    /** Sum over the window of the absolute dynamic parts of all channels. */
+    private double sumAbsolute;
+
+    /** Sign changes between consecutive samples of each channel within the window. */
+    private final int[] crossings;
+
+    /**
+     * The candidates for the window minimum and maximum of each channel, as sample
+     * numbers in ring buffers of windowLength. Values increase (for the minimum) or
+     * decrease (for the maximum) from the head, which is the current extremum.
+     */
+    private final long[][] minQueue, maxQueue;
+    private final int[] minHead, minSize, maxHead, maxSize;
+
+    /** Null when there are no bands. */
+    private final FFT fft;
+
+    /** The range of FFT bins [start, end) of each band. */
+    private final int[] bandStart, bandEnd;
+
+    /** FFT input and output; the padding of the input stays zero. */
+    private final double[] frame, re, im;
+
+    private final double[] features;
+
+    /**
+     * Creates a feature engine.
+     * @param channels the number of channels of each sample
+     * @param windowLength the number of samples in a window, at least 2
+     * @param hop the number of samples the window advances between two feature vectors
+     * @param sampleRate the sample rate in Hz, used to place the bands
+     * @param bandEdges the edges of the frequency bands in Hz, in increasing order; n + 1
+     *                  edges define n adjacent bands [edge i, edge i + 1). A last edge at or
+     *                  above the Nyquist frequency includes it. May be empty for no bands.
+     */
+    public SlidingWindowFeatures(int channels, int windowLength, int hop, double sampleRate, double[] bandEdges) {
+        if (channels < 1 || windowLength < 2 || hop < 1) {
+            throw new IllegalArgumentException("A window needs a channel and at least two samples, and the hop at least one");
+        }
+        this.channels = channels;
+        this.windowLength = windowLength;
+        this.hop = hop;
+
+        int bands = Math.max(bandEdges.length - 1, 0);
+        if (bands > 0) {
+            int fftSize = Integer.highestOneBit(windowLength);
+            if (fftSize < windowLength) {
+                fftSize *= 2;
+            }
+            int lastBin = fftSize / 2;
+            bandStart = new int[bands];
+            bandEnd = new int[bands];
+            for (int b = 0; b < bands; b++) {
+                double lo = bandEdges[b], hi = bandEdges[b + 1];
+                if (lo < 0 || hi <= lo) {
+                    throw new IllegalArgumentException("Band edges must be non-negative and increasing");
+                }
+                bandStart[b] = (int) Math.min(Math.ceil(lo * fftSize / sampleRate), lastBin + 1);
+                bandEnd[b] = hi >= sampleRate / 2 ? lastBin + 1 : (int) Math.ceil(hi * fftSize / sampleRate);
+                if (bandEnd[b] <= bandStart[b]) {
+                    throw new IllegalArgumentException("No bin of a " + fftSize + "-point FFT at "
+                            + sampleRate + " Hz lies in [" + lo + ", " + hi + ") Hz");
+                }
+            }
+            fft = FFT.getInstance(fftSize);
+            frame = new double[fftSize];
+            re = new double[lastBin + 1];
+            im = new double[lastBin + 1];
+        } else {
+            fft = null;
+            bandStart = bandEnd = new int[0];
+            frame = re = im = null;
+        }
+
+        blockSize = BAND_ENERGY + bands;
+        smaIndex = channels * blockSize;
+        correlationIndex = smaIndex + 1;
+        features = new double[correlationIndex + channels * (channels - 1) / 2];
+
+        samples = new float[channels][windowLength];
+        dynamic = new float[channels][windowLength];
+        baseline = new double[channels];
+        baselineAlpha = 2.0 / (windowLength + 1);
+        sum = new double[channels];
+        sumSquares = new double[channels];
+        sumProducts = new double[channels * (channels - 1) / 2];
+        crossings = new int[channels];
+        minQueue = new long[channels][windowLength];
+        maxQueue = new long[channels][windowLength];
+        minHead = new int[channels];
+        minSize = new int[channels];
+        maxHead = new int[channels];
+        maxSize = new int[channels];
+    }
+
+    /**
+     * Adds a sample, sliding the window forward, and computes the features if a hop is
+     * complete.
+     * @param values one value per channel
+     * @return true if {@link #getFeatures()} now holds the features of the latest window
+     */
+    public boolean update(float[] values) {
+        int n = windowLength;
+        int p = position;
+        long oldest = count - n;
+
+        if (oldest >= 0) {
+            // the sample at p leaves the window
+            int k = 0;
+            for (int c = 0; c < channels; c++) {
+                float old = samples[c][p];
+                sum[c] -= old;
+                sumSquares[c] -= (double) old * old;
+                sumAbsolute -= Math.abs(dynamic[c][p]);
+                if (crosses(dynamic[c][p], dynamic[c][(p + 1) % n])) {
+                    crossings[c]--;
+                }
+                for (int j = c + 1; j < channels; j++) {
+                    sumProducts[k++] -= (double) old * samples[j][p];
+                }
+                if (minQueue[c][minHead[c]] == oldest) {
+                    minHead[c] = (minHead[c] + 1) % n;
+                    minSize[c]--;
+                }
+                if (maxQueue[c][maxHead[c]] == oldest) {
+                    maxHead[c] = (maxHead[c] + 1) % n;
+                    maxSize[c]--;
+                }
+            }
+        }
+
+        int previous = (p + n - 1) % n;
+        int k = 0;
+        for (int c = 0; c < channels; c++) {
+            float value = values[c];
+            baseline[c] = count == 0 ? value : baseline[c] + baselineAlpha * (value - baseline[c]);
+            float d = (float) (value - baseline[c]);
+            if (count > 0 && crosses(dynamic[c][previous], d)) {
+                crossings[c]++;
+            }
+            samples[c][p] = value;
+            dynamic[c][p] = d;
+            sum[c] += value;
+            sumSquares[c] += (double) value * value;
+            sumAbsolute += Math.abs(d);
+            for (int j = c + 1; j < channels; j++) {
+                sumProducts[k++] += (double) value * values[j];
+            }
+
+            // drop the candidates that can no longer be the extremum
+            float[] s = samples[c];
+            while (minSize[c] > 0 && s[(int) (minQueue[c][(minHead[c] + minSize[c] - 1) % n] % n)] >= value) {
+                minSize[c]--;
+            }
+            minQueue[c][(minHead[c] + minSize[c]++) % n] = count;
+            while (maxSize[c] > 0 && s[(int) (maxQueue[c][(maxHead[c] + maxSize[c] - 1) % n] % n)] <= value) {
+                maxSize[c]--;
+            }
+            maxQueue[c][(maxHead[c] + maxSize[c]++) % n] = count;
+        }
+
+        count++;
+        if (++position == n) {
+            position = 0;
+            if (++passes == RESYNC_PERIOD) {
+                passes = 0;
+                resync();
+            }
+        }
+
+        if (count < n || (count - n) % hop != 0) {
+            return false;
+        }
+        computeFeatures();
+        return true;
+    }
+
+    private static boolean crosses(float a, float b) {
+        return (a < 0) != (b < 0);
+    }
+
+    /**
+     * Recomputes the running sums from the full window, discarding the rounding errors
+     * of the additions and subtractions so far.
+     */
+    private void resync() {
+        sumAbsolute = 0;
+        int k = 0;
+        for (int c = 0; c < channels; c++) {
+            double s = 0, squares = 0;
+            for (int i = 0; i < windowLength; i++) {
+                float value = samples[c][i];
+                s += value;
+                squares += (double) value * value;
+                sumAbsolute += Math.abs(dynamic[c][i]);
+            }
+            sum[c] = s;
+            sumSquares[c] = squares;
+            for (int j = c + 1; j < channels; j++) {
+                double products = 0;
+                for (int i = 0; i < windowLength; i++) {
+                    products += (double) samples[c][i] * samples[j][i];
+                }
+                sumProducts[k++] = products;
+            }
+        }
+    }
+
+    private void computeFeatures() {
+        int n = windowLength;
+        for (int c = 0; c < channels; c++) {
+            int base = c * blockSize;
+            double mean = sum[c] / n;
+            features[base + MEAN] = mean;
+            features[base + VARIANCE] = Math.max(0, sumSquares[c] / n - mean * mean);
+            features[base + MIN] = samples[c][(int) (minQueue[c][minHead[c]] % n)];
+            features[base + MAX] = samples[c][(int) (maxQueue[c][maxHead[c]] % n)];
+            features[base + ZERO_CROSSING_RATE] = (double) crossings[c] / (n - 1);
+            if (fft != null) {
+                computeBandEnergies(c, mean, base + BAND_ENERGY);
+            }
+        }
+        features[smaIndex] = sumAbsolute / n;
+        int k = 0;
+        for (int i = 0; i < channels; i++) {
+            for (int j = i + 1; j < channels; j++) {
+                double meanI = features[i * blockSize + MEAN], meanJ = features[j * blockSize + MEAN];
+                double varI = features[i * blockSize + VARIANCE], varJ = features[j * blockSize + VARIANCE];
+                double covariance = sumProducts[k] / n - meanI * meanJ;
+                double r = varI > 0 && varJ > 0 ? covariance / Math.sqrt(varI * varJ) : 0;
+                features[correlationIndex + k++] = Math.max(-1, Math.min(1, r));
+            }
+        }
+    }
+
+    private void computeBandEnergies(int c, double mean, int offset) {
+        int n = windowLength;
+        float[] s = samples[c];
+        // oldest sample first; once the window is full, position points at it
+        for (int i = 0; i < n; i++) {
+            frame[i] = s[(position + i) % n] - mean;
+        }
+        fft.realFft(frame, re, im);
+        int fftSize = frame.length;
+        int lastBin = fftSize / 2;
+        // by Parseval, the variance is the sum of |X_k|^2 / (fftSize n) over all bins,
+        // each bin but 0 and fftSize/2 standing for itself and its mirror image
+        double scale = 1.0 / ((double) fftSize * n);
+        for (int b = 0; b < bandStart.length; b++) {
+            double energy = 0;
+            for (int k = bandStart[b]; k < bandEnd[b]; k++) {
+                double power = re[k] * re[k] + im[k] * im[k];
+                energy += k == 0 || k == lastBin ? power : 2 * power;
+            }
+            features[offset + b] = energy * scale;
+        }
+    }
+
+    /**
+     * Forgets all samples, e.g. after a gap in the stream.
+     */
+    public void reset() {
+        position = 0;
+        count = 0;
+        passes = 0;
+        sumAbsolute = 0;
+        for (int c = 0; c < channels; c++) {
+            sum[c] = 0;
+            sumSquares[c] = 0;
+            crossings[c] = 0;
+            minHead[c] = minSize[c] = 0;
+            maxHead[c] = maxSize[c] = 0;
+        }
+        for (int k = 0; k < sumProducts.length; k++) {
+            sumProducts[k] = 0;
+        }
+    }
+
+    /**
+     * Returns the features of the latest window. The array is overwritten whenever
+     * {@link #update(float[])} returns true.
+     * @return the feature vector, {@link #getFeatureCount()} values long
+     */
+    public double[] getFeatures() {
+        return features;
+    }
+
+    /**
+     * Returns the length of the feature vector.
+     * @return the feature count
+     */
+    public int getFeatureCount() {
+        return features.length;
+    }
+
+    /**
+     * Returns the number of frequency bands per channel.
+     * @return the band count
+     */
+    public int getBandCount() {
+        return bandStart.length;
+    }
+
+    /**
+     * Returns the index of a per-channel feature.
+     * @param channel the channel
+     * @param feature one of {@link #MEAN}, {@link #VARIANCE}, {@link #MIN}, {@link #MAX} and {@link #ZERO_CROSSING_RATE}
+     * @return the index in the feature vector
+     */
+    public int getIndex(int channel, int feature) {
+        return channel * blockSize + feature;
+    }
+
+    /**
+     * Returns the index of the energy of a frequency band of a channel.
+     * @param channel the channel
+     * @param band the band, from 0
+     * @return the index in the feature vector
+     */
+    public int getBandIndex(int channel, int band) {
+        return channel * blockSize + BAND_ENERGY + band;
+    }
+
+    /**
+     * Returns the index of the signal magnitude area, the mean over the window of the
+     * sum of the absolute dynamic parts of all channels.
+     * @return the index in the feature vector
+     */
+    public int getSmaIndex() {
+        return smaIndex;
+    }
+
+    /**
+     * Returns the index of the correlation coefficient of two channels.
+     * @param i a channel
+     * @param j another channel
+     * @return the index in the feature vector
+     */
+    public int getCorrelationIndex(int i, int j) {
+        if (i == j) {
+            throw new IllegalArgumentException("A correlation needs two different channels");
+        }
+        int a = Math.min(i, j), b = Math.max(i, j);
+        return correlationIndex + a * (2 * channels - a - 1) / 2 + (b - a - 1);
+    }
+}
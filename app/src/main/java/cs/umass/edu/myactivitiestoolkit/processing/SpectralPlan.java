@@ -0,0 +1,183 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A spectral analysis plan bundles a shared {@link FFT} with a precomputed window
+ * table. Plans are looked up by FFT size, window length and window type through
+ * {@link #getInstance(int, int, Window)}: the tables are built the first time a
+ * combination is requested and then shared by every pipeline that asks for it.
+ * <br><br>
+ * The tables of a plan are never modified, so a plan may be used from any thread.
+ * Working memory is kept per thread: {@link #getScratch()} hands each thread its
+ * own buffers, which are reused on every call from that thread.
+ *
+ * @see FFT#getInstance(int)
+ */
+public final class SpectralPlan {
+
+    /** The supported window functions. */
+    public enum Window {
+        RECTANGULAR,
+        HAMMING,
+        HANN
+    }
+
+    /**
+     * Per-thread working buffers of a plan. {@link #frame} holds fftSize real
+     * samples, {@link #re} and {@link #im} hold the fftSize/2 + 1 bins produced by
+     * {@link FFT#realFft(double[], double[], double[])}.
+     */
+    public static final class Scratch {
+        public final double[] frame;
+        public final double[] re;
+        public final double[] im;
+
+        private Scratch(int fftSize) {
+            frame = new double[fftSize];
+            re = new double[fftSize / 2 + 1];
+            im = new double[fftSize / 2 + 1];
+        }
+    }
+
+    /** Shared plans, keyed by fftSize:windowLength:window. */
+    private static final ConcurrentHashMap<String, SpectralPlan> PLANS = new ConcurrentHashMap<>();
+
+    private final FFT fft;
+
+    private final Window windowType;
+
+    private final double[] window;
+
+    private final float[] windowF;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    private SpectralPlan(int fftSize, int windowLength, Window windowType) {
+        if (windowLength > fftSize) {
+            throw new IllegalArgumentException("Window length " + windowLength + " exceeds FFT size " + fftSize);
+        }
+        this.fft = FFT.getInstance(fftSize);
+        this.windowType = windowType;
+        this.window = computeWindow(windowLength, windowType);
+        this.windowF = new float[windowLength];
+        for (int i = 0; i < windowLength; i++) {
+            windowF[i] = (float) window[i];
+        }
+        this.scratch = new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue() {
+                return new Scratch(fft.getSize());
+            }
+        };
+    }
+
+    /**
+     * Returns the shared plan whose window spans the full FFT.
+     * @param fftSize the FFT size, a power of 2
+     * @param windowType the window function
+     * @return the shared plan
+     */
+    public static SpectralPlan getInstance(int fftSize, Window windowType) {
+        return getInstance(fftSize, fftSize, windowType);
+    }
+
+    /**
+     * Returns the shared plan for the given configuration. A window shorter than the
+     * FFT is used when frames are zero-padded before the transform.
+     * @param fftSize the FFT size, a power of 2
+     * @param windowLength the number of samples the window spans, at most fftSize
+     * @param windowType the window function
+     * @return the shared plan
+     */
+    public static SpectralPlan getInstance(int fftSize, int windowLength, Window windowType) {
+        String key = fftSize + ":" + windowLength + ":" + windowType;
+        SpectralPlan plan = PLANS.get(key);
+        if (plan == null) {
+            SpectralPlan created = new SpectralPlan(fftSize, windowLength, windowType);
+            plan = PLANS.putIfAbsent(key, created);
+            if (plan == null) {
+                plan = created;
+            }
+        }
+        return plan;
+    }
+
+    private static double[] computeWindow(int length, Window windowType) {
+        double[] w = new double[length];
+        double denominator = length > 1 ? length - 1 : 1;
+        for (int i = 0; i < length; i++) {
+            switch (windowType) {
+                case HAMMING:
+                    w[i] = 0.54 - 0.46 * Math.cos(2 * Math.PI * i / denominator);
+                    break;
+                case HANN:
+                    w[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / denominator);
+                    break;
+                default:
+                    w[i] = 1.0;
+                    break;
+            }
+        }
+        return w;
+    }
+
+    public FFT getFFT() {
+        return fft;
+    }
+
+    public int getFFTSize() {
+        return fft.getSize();
+    }
+
+    public int getWindowLength() {
+        return window.length;
+    }
+
+    public Window getWindowType() {
+        return windowType;
+    }
+
+    /**
+     * Returns a single window coefficient.
+     * @param i the index, in [0, {@link #getWindowLength()})
+     * @return the window value at i
+     */
+    public double getWindowValue(int i) {
+        return window[i];
+    }
+
+    /**
+     * Returns the working buffers owned by the calling thread.
+     * @return the calling thread's scratch buffers
+     */
+    public Scratch getScratch() {
+        return scratch.get();
+    }
+
+    /**
+     * Multiplies the first {@link #getWindowLength()} samples of the buffer by the window, in place.
+     * @param buffer the samples to window
+     */
+    public void applyWindow(double[] buffer) {
+        if (windowType == Window.RECTANGULAR) {
+            return;
+        }
+        for (int i = 0; i < window.length; i++) {
+            buffer[i] *= window[i];
+        }
+    }
+
+    /**
+     * Single-precision version of {@link #applyWindow(double[])}.
+     * @param buffer the samples to window
+     */
+    public void applyWindow(float[] buffer) {
+        if (windowType == Window.RECTANGULAR) {
+            return;
+        }
+        for (int i = 0; i < windowF.length; i++) {
+            buffer[i] *= windowF[i];
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package cs.umass.edu.myactivitiestoolkit.services;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates accelerometer samples into primitive columns and hands them on in batches,
+ * so that they can be sent to the server as one message rather than one per sample.
+ * <br><br>
+ * The flush policy is given by two limits: a batch is flushed as soon as it holds a
+ * maximum number of samples, or as soon as a sample arrives a maximum time after the
+ * first sample of the batch, whichever comes first. {@link #flush()} may also be called
+ * at any time, e.g. when the sensors are unregistered, so no samples are lost.
+ * <br><br>
+ * The columns are allocated once; only the exact-size copies handed to the
+ * {@link OnFlushListener} are allocated per batch, so the listener may keep them.
+ */
+public class AccelerometerBatch {
+
+    /**
+     * Receives the flushed batches.
+     */
+    public interface OnFlushListener {
+        /**
+         * Called with a batch of samples, all columns of equal, non-zero length.
+         * @param timestamps the timestamps of the samples, in milliseconds
+         * @param x the acceleration along the x axis
+         * @param y the acceleration along the y axis
+         * @param z the acceleration along the z axis
+         */
+        void onFlush(long[] timestamps, float[] x, float[] y, float[] z);
+    }
+
+    private final long maxDurationMs;
+
+    private final OnFlushListener listener;
+
+    private final long[] timestamps;
+    private final float[] x, y, z;
+    private int size = 0;
+
+    /**
+     * Creates an empty batch.
+     * @param maxSamples the number of samples at which the batch is flushed
+     * @param maxDurationMs the time after the first sample, in milliseconds, at which the batch is flushed
+     * @param listener receives the flushed batches
+     */
+    public AccelerometerBatch(int maxSamples, long maxDurationMs, OnFlushListener listener) {
+        if (maxSamples < 1 || maxDurationMs < 0) {
+            throw new IllegalArgumentException("A batch must hold at least one sample, for a non-negative time");
+        }
+        this.maxDurationMs = maxDurationMs;
+        this.listener = listener;
+        timestamps = new long[maxSamples];
+        x = new float[maxSamples];
+        y = new float[maxSamples];
+        z = new float[maxSamples];
+    }
+
+    /**
+     * Adds a sample, flushing the batch if it is full or old enough.
+     * @param timestamp the time of the sample, in milliseconds
+     * @param values the x, y and z acceleration
+     */
+    public void add(long timestamp, float[] values) {
+        timestamps[size] = timestamp;
+        x[size] = values[0];
+        y[size] = values[1];
+        z[size] = values[2];
+        size++;
+        if (size == timestamps.length || timestamp - timestamps[0] >= maxDurationMs) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands the samples collected so far to the listener and starts a new batch. Does
+     * nothing if the batch is empty.
+     */
+    public void flush() {
+        if (size == 0) {
+            return;
+        }
+        int count = size;
+        size = 0;
+        listener.onFlush(Arrays.copyOf(timestamps, count), Arrays.copyOf(x, count),
+                Arrays.copyOf(y, count), Arrays.copyOf(z, count));
+    }
+
+    /**
+     * Returns the number of samples waiting to be flushed.
+     * @return the batch size
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,74 @@
+package cs.umass.edu.myactivitiestoolkit.services;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Wraps a batch of accelerometer readings into a single sensor reading to send to the
+ * server. Where an {@link edu.umass.cs.MHLClient.sensors.AccelerometerReading} carries
+ * one sample, this carries columns of timestamps and x, y and z values, so a whole batch
+ * costs one message.
+ *
+ * @see SensorReading
+ * @see AccelerometerBatch
+ */
+public class AccelerometerBatchReading extends SensorReading {
+
+    /** The timestamps of the samples, in milliseconds. **/
+    private final long[] timestamps;
+
+    /** The acceleration along each axis. **/
+    private final float[] x, y, z;
+
+    /**
+     * Instantiates a batched accelerometer reading. The columns are not copied.
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param timestamps the timestamps of the samples; the first one is the timestamp of the reading
+     * @param x the acceleration along the x axis
+     * @param y the acceleration along the y axis
+     * @param z the acceleration along the z axis
+     */
+    public AccelerometerBatchReading(String userID, String deviceType, String deviceID,
+                                     long[] timestamps, float[] x, float[] y, float[] z) {
+        super(userID, deviceType, deviceID, "SENSOR_ACCEL_BATCH", timestamps[0]);
+        this.timestamps = timestamps;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    @Override
+    protected JSONObject toJSONObject() {
+        JSONObject obj = getBaseJSONObject();
+        JSONObject data = new JSONObject();
+
+        try {
+            JSONArray t = new JSONArray();
+            JSONArray xArray = new JSONArray();
+            JSONArray yArray = new JSONArray();
+            JSONArray zArray = new JSONArray();
+            for (int i = 0; i < timestamps.length; i++) {
+                t.put(timestamps[i]);
+                xArray.put(x[i]);
+                yArray.put(y[i]);
+                zArray.put(z[i]);
+            }
+            data.put("t", timestamp);
+            data.put("timestamps", t);
+            data.put("x", xArray);
+            data.put("y", yArray);
+            data.put("z", zArray);
+
+            obj.put("data", data);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return obj;
+    }
+}
@@ -1,10 +1,14 @@
 package cs.umass.edu.myactivitiestoolkit.services;
 
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
@@ -13,9 +17,20 @@ import org.json.JSONObject;
 
 
 import cs.umass.edu.myactivitiestoolkit.R;
+import cs.umass.edu.myactivitiestoolkit.classification.ActivityClassifier;
+import cs.umass.edu.myactivitiestoolkit.classification.DecisionForest;
+import cs.umass.edu.myactivitiestoolkit.classification.OnActivityListener;
 import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+import cs.umass.edu.myactivitiestoolkit.falls.FallDetector;
+import cs.umass.edu.myactivitiestoolkit.falls.FallEvent;
+import cs.umass.edu.myactivitiestoolkit.falls.OnFallListener;
+import cs.umass.edu.myactivitiestoolkit.steps.AxisStepDetector;
+import cs.umass.edu.myactivitiestoolkit.steps.GaitMetrics;
+import cs.umass.edu.myactivitiestoolkit.steps.MagnitudeStepDetector;
 import cs.umass.edu.myactivitiestoolkit.steps.OnStepListener;
 import cs.umass.edu.myactivitiestoolkit.steps.StepDetector;
+import cs.umass.edu.myactivitiestoolkit.steps.StepDetectorComparison;
+import cs.umass.edu.myactivitiestoolkit.steps.StepDetectorCore;
 import cs.umass.edu.myactivitiestoolkit.processing.Filter;
 import edu.umass.cs.MHLClient.client.MessageReceiver;
 import edu.umass.cs.MHLClient.client.MobileIOClient;
@@ -23,6 +38,7 @@ import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
 import edu.umass.cs.MHLClient.sensors.SensorReading;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -105,9 +121,78 @@ public class AccelerometerService extends SensorService implements SensorEventLi
     private Sensor mStepSensor;
 
     /**
-     * Defines your step detection algorithm.
+     * Defines your step detection algorithm. It is created when the sensors are registered,
+     * running the algorithm selected in the settings.
      **/
-    private final StepDetector mStepDetector;
+    private StepDetector mStepDetector;
+
+    /**
+     * Derives cadence, stride time variability and symmetry from the detected steps.
+     */
+    private GaitMetrics mGaitMetrics;
+
+    /**
+     * Shortest time between two gait metrics broadcasts, in milliseconds.
+     */
+    private static final long GAIT_BROADCAST_INTERVAL_MS = 5000;
+
+    /**
+     * Time of the last gait metrics broadcast, see {@link SystemClock#elapsedRealtime()}.
+     */
+    private long mLastGaitBroadcast = 0;
+
+    /**
+     * Runs all local step detection algorithms side by side in evaluation mode, null otherwise.
+     */
+    private StepDetectorComparison mDetectorComparison;
+
+    /**
+     * Shortest time between two step detector comparison broadcasts, in milliseconds.
+     */
+    private static final long COMPARISON_BROADCAST_INTERVAL_MS = 2000;
+
+    /**
+     * Time of the last step detector comparison broadcast, see {@link SystemClock#elapsedRealtime()}.
+     */
+    private long mLastComparisonBroadcast = 0;
+
+    /**
+     * Collects accelerometer readings for upload in batched mode, null otherwise.
+     */
+    private AccelerometerBatch mUploadBatch;
+
+    /**
+     * Number of readings at which a batch is uploaded.
+     */
+    private static final int UPLOAD_BATCH_SIZE = 250;
+
+    /**
+     * Time after its first reading, in milliseconds, at which a batch is uploaded.
+     */
+    private static final long UPLOAD_BATCH_DURATION_MS = 10000;
+
+    /**
+     * Batches the accelerometer readings sent to the UI.
+     */
+    private BroadcastCoalescer mReadingCoalescer;
+
+    /**
+     * Watches the accelerometer stream for falls, null if disabled in the settings.
+     */
+    private FallDetector mFallDetector;
+
+    /**
+     * Timestamp, in nanoseconds, from which the next accelerometer event is passed on to
+     * the consumers at the normal rate while fall detection is on, see
+     * {@link #FALL_SAMPLING_PERIOD_US}.
+     */
+    private long mNextNormalTimestamp = 0;
+
+    /**
+     * Recognizes the activity on the phone, null if disabled in the settings or if the
+     * model could not be loaded, in which case the activity is taken from the server.
+     */
+    private ActivityClassifier mActivityClassifier;
 
     /**
      * The step count as predicted by the Android built-in step detection algorithm.
@@ -116,10 +201,31 @@ public class AccelerometerService extends SensorService implements SensorEventLi
 
     private int mServerStepCount = 0;
 
+    /**
+     * Nominal sampling period of {@link SensorManager#SENSOR_DELAY_NORMAL}, in microseconds.
+     */
+    private static final int NORMAL_SAMPLING_PERIOD_US = 200000;
 
-    public AccelerometerService() {
-        mStepDetector = new StepDetector();
-    }
+    /**
+     * Sampling period of the accelerometer while fall detection is on, in microseconds
+     * (50 Hz, that of {@link SensorManager#SENSOR_DELAY_GAME}), since the short free-fall
+     * dip and impact spike fall between the samples of {@link SensorManager#SENSOR_DELAY_NORMAL}.
+     * The service then holds this one subscription and passes every event to the fall
+     * detector, but only one every {@link #NORMAL_SAMPLING_PERIOD_US} to the upload, the
+     * UI, the step detector and the activity classifier, which are tuned for that rate.
+     */
+    private static final int FALL_SAMPLING_PERIOD_US = 20000;
+
+    /**
+     * Longest time, in microseconds, that events may wait in the sensor hub's FIFO in
+     * batched mode before they are delivered.
+     */
+    private static final int MAX_REPORT_LATENCY_US = 10000000;
+
+    /**
+     * Whether sensor events are batched in hardware, see {@link #registerSensor(SensorEventListener, Sensor)}.
+     */
+    private boolean mBatchedSensing = false;
 
     @Override
     protected void onServiceStarted() {
@@ -155,7 +261,10 @@ public class AccelerometerService extends SensorService implements SensorEventLi
                 try {
                     JSONObject data = json.getJSONObject("data");
                     activity = data.getString("activity");
-                    broadcastActivity(Integer.parseInt(activity));
+                    // the server is the fallback for the on-device classifier
+                    if (mActivityClassifier == null) {
+                        broadcastActivity(Integer.parseInt(activity));
+                    }
                 } catch (JSONException e) {
                     e.printStackTrace();
                     return;
@@ -175,10 +284,53 @@ public class AccelerometerService extends SensorService implements SensorEventLi
 
         //TODO : (Assignment 0) Register the accelerometer sensor from the sensor manager.
         mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        mSensorManager.registerListener(this, mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER), mSensorManager.SENSOR_DELAY_NORMAL);
+        mReadingCoalescer = new BroadcastCoalescer(this, Constants.ACTION.BROADCAST_ACCELEROMETER_DATA,
+                Constants.KEY.ACCELEROMETER_X, Constants.KEY.ACCELEROMETER_Y, Constants.KEY.ACCELEROMETER_Z);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        mBatchedSensing = preferences.getBoolean(getString(R.string.pref_batched_sensing_key),
+                getResources().getBoolean(R.bool.pref_batched_sensing_default));
+        boolean orientationInvariant = preferences.getBoolean(getString(R.string.pref_magnitude_steps_key),
+                getResources().getBoolean(R.bool.pref_magnitude_steps_default));
+        boolean compareDetectors = preferences.getBoolean(getString(R.string.pref_compare_step_detectors_key),
+                getResources().getBoolean(R.bool.pref_compare_step_detectors_default));
+        boolean batchedUpload = preferences.getBoolean(getString(R.string.pref_batched_upload_key),
+                getResources().getBoolean(R.bool.pref_batched_upload_default));
+        boolean localActivity = preferences.getBoolean(getString(R.string.pref_local_activity_key),
+                getResources().getBoolean(R.bool.pref_local_activity_default));
+        boolean fallDetection = preferences.getBoolean(getString(R.string.pref_fall_detection_key),
+                getResources().getBoolean(R.bool.pref_fall_detection_default));
+        if (batchedUpload) {
+            mUploadBatch = new AccelerometerBatch(UPLOAD_BATCH_SIZE, UPLOAD_BATCH_DURATION_MS,
+                    new AccelerometerBatch.OnFlushListener() {
+                        @Override
+                        public void onFlush(long[] timestamps, float[] x, float[] y, float[] z) {
+                            mClient.sendSensorReading(new AccelerometerBatchReading(mUserID, "MOBILE", "", timestamps, x, y, z));
+                        }
+                    });
+        } else {
+            mUploadBatch = null;
+        }
+        mAccelerometerSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        mStepSensor = mSensorManager.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR);
 
         //TODO : (Assignment 1) Register your step detector. Register an OnStepListener to receive step events.
-        mSensorManager.registerListener(this, mSensorManager.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR), mSensorManager.SENSOR_DELAY_NORMAL);
+        registerSensor(this, mStepSensor);
+        StepDetectorCore axis = new AxisStepDetector();
+        StepDetectorCore magnitude = new MagnitudeStepDetector();
+        String axisName = getString(R.string.step_detector_axis);
+        String magnitudeName = getString(R.string.step_detector_magnitude);
+        if (compareDetectors) {
+            // the selected algorithm is the reference, and its steps are the ones reported
+            mDetectorComparison = orientationInvariant
+                    ? new StepDetectorComparison(new String[]{magnitudeName, axisName}, new StepDetectorCore[]{magnitude, axis})
+                    : new StepDetectorComparison(new String[]{axisName, magnitudeName}, new StepDetectorCore[]{axis, magnitude});
+            mStepDetector = new StepDetector(mDetectorComparison);
+        } else {
+            mDetectorComparison = null;
+            mStepDetector = new StepDetector(orientationInvariant ? magnitude : axis);
+        }
+        mGaitMetrics = new GaitMetrics();
+        mStepDetector.registerOnStepListener(mGaitMetrics);
         mStepDetector.registerOnStepListener(new OnStepListener() {
             @Override
             public void onStepCountUpdated(int stepCount) {
@@ -187,11 +339,88 @@ public class AccelerometerService extends SensorService implements SensorEventLi
 
             @Override
             public void onStepDetected(long timestamp, float[] values) {
-                broadcastStepDetected(timestamp, values);
+                // the detector reuses the values array, and the broadcast is delivered later
+                broadcastStepDetected(timestamp, values.clone());
+                // the metrics change with every step, but the UI only needs an occasional update
+                long now = SystemClock.elapsedRealtime();
+                if (now - mLastGaitBroadcast >= GAIT_BROADCAST_INTERVAL_MS && mGaitMetrics.getWalkSteps() > 0) {
+                    mLastGaitBroadcast = now;
+                    broadcastGaitMetrics(mGaitMetrics);
+                }
             }
         });
-        mSensorManager.registerListener(mStepDetector, mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER), mSensorManager.SENSOR_DELAY_NORMAL);
 
+        if (fallDetection) {
+            mFallDetector = new FallDetector();
+            mFallDetector.registerOnFallListener(new OnFallListener() {
+                @Override
+                public void onFallDetected(FallEvent event) {
+                    Log.w(TAG, "Fall detected at " + event.timestamp + ".");
+                    mClient.sendSensorReading(new FallReading(mUserID, "MOBILE", "", event));
+                    broadcastFallDetected(event);
+                }
+            });
+        } else {
+            mFallDetector = null;
+        }
+
+        mActivityClassifier = localActivity ? loadActivityClassifier() : null;
+        if (mActivityClassifier != null) {
+            mActivityClassifier.registerOnActivityListener(new OnActivityListener() {
+                @Override
+                public void onActivityClassified(long timestamp, int label) {
+                    broadcastActivity(label);
+                }
+            });
+        }
+
+        // one subscription for all consumers, registered once they are in place, see onSensorChanged
+        mNextNormalTimestamp = 0;
+        registerSensor(this, mAccelerometerSensor, fallDetection ? FALL_SAMPLING_PERIOD_US : NORMAL_SAMPLING_PERIOD_US);
+
+    }
+
+    /**
+     * Creates the on-device activity classifier from the model in {@code res/raw}.
+     * @return the classifier, or null if the model cannot be loaded
+     */
+    private ActivityClassifier loadActivityClassifier() {
+        try {
+            return new ActivityClassifier(DecisionForest.load(getResources().openRawResource(R.raw.activity_forest)));
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Could not load the activity model, falling back to the server.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Registers a listener at {@link SensorManager#SENSOR_DELAY_NORMAL}, see
+     * {@link #registerSensor(SensorEventListener, Sensor, int)}.
+     */
+    private void registerSensor(SensorEventListener listener, Sensor sensor) {
+        registerSensor(listener, sensor, NORMAL_SAMPLING_PERIOD_US);
+    }
+
+    /**
+     * Registers a listener at the given sampling period. In batched mode, and if the
+     * sensor has a hardware FIFO, events are additionally allowed to queue up in the
+     * sensor hub for up to {@link #MAX_REPORT_LATENCY_US}, or as long as the FIFO can
+     * hold, so the application processor can sleep in between. They are then delivered
+     * as a burst in timestamp order, each with its original timestamp.
+     * @param samplingPeriodUs the sampling period in microseconds
+     */
+    private void registerSensor(SensorEventListener listener, Sensor sensor, int samplingPeriodUs) {
+        if (sensor == null) {
+            return;
+        }
+        if (mBatchedSensing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // leave room in the (shared) FIFO so that no events are dropped
+            long fifoLatency = (long) sensor.getFifoMaxEventCount() * samplingPeriodUs / 2;
+            int maxReportLatency = (int) Math.min(MAX_REPORT_LATENCY_US, fifoLatency);
+            mSensorManager.registerListener(listener, sensor, samplingPeriodUs, maxReportLatency);
+        } else {
+            mSensorManager.registerListener(listener, sensor, samplingPeriodUs);
+        }
     }
 
     /**
@@ -201,8 +430,23 @@ public class AccelerometerService extends SensorService implements SensorEventLi
     protected void unregisterSensors() {
         //TODO : Unregister your sensors. Make sure mSensorManager is not null before calling its unregisterListener method.
         if (mSensorManager != null) {
-            mSensorManager.unregisterListener(this, mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
-            mStepDetector.unregisterOnStepListeners();
+            mSensorManager.unregisterListener(this);
+            if (mUploadBatch != null) {
+                // send what was collected since the last upload
+                mUploadBatch.flush();
+            }
+            if (mReadingCoalescer != null) {
+                mReadingCoalescer.flush();
+            }
+            if (mStepDetector != null) {
+                mStepDetector.unregisterOnStepListeners();
+            }
+            if (mFallDetector != null) {
+                mFallDetector.unregisterOnFallListeners();
+            }
+            if (mActivityClassifier != null) {
+                mActivityClassifier.unregisterOnActivityListeners();
+            }
         }
     }
 
@@ -252,19 +496,49 @@ public class AccelerometerService extends SensorService implements SensorEventLi
     public void onSensorChanged(SensorEvent event) {
         if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
 
+            if (mFallDetector != null) {
+                mFallDetector.process(event.timestamp, event.values[0], event.values[1], event.values[2]);
+                // the rest takes one event every normal period from the faster stream,
+                // with half a fast period to spare for jitter
+                if (event.timestamp < mNextNormalTimestamp) {
+                    return;
+                }
+                mNextNormalTimestamp = event.timestamp + (NORMAL_SAMPLING_PERIOD_US - FALL_SAMPLING_PERIOD_US / 2) * 1000L;
+            }
+
+            if (mStepDetector != null) {
+                mStepDetector.onSensorChanged(event);
+            }
+
             // convert the timestamp to milliseconds (note this is not in Unix time)
             long timestamp_in_milliseconds = (long) ((double) event.timestamp / Constants.TIMESTAMPS.NANOSECONDS_PER_MILLISECOND);
 
             //TODO: Send the accelerometer reading to the server
             Log.d(TAG, "X : " + event.values[0] + ", Y : " + event.values[1] + ", Z : " + event.values[2]);
-            AccelerometerReading ar = new AccelerometerReading(mUserID, "MOBILE", "", timestamp_in_milliseconds, event.values);
-            mClient.sendSensorReading(ar);
+            if (mUploadBatch != null) {
+                mUploadBatch.add(timestamp_in_milliseconds, event.values);
+            } else {
+                AccelerometerReading ar = new AccelerometerReading(mUserID, "MOBILE", "", timestamp_in_milliseconds, event.values);
+                mClient.sendSensorReading(ar);
+            }
 
 
 
             //TODO: broadcast the accelerometer reading to the UI
             broadcastAccelerometerReading(timestamp_in_milliseconds, event.values);
 
+            if (mActivityClassifier != null) {
+                mActivityClassifier.process(timestamp_in_milliseconds, event.values[0], event.values[1], event.values[2]);
+            }
+
+            if (mDetectorComparison != null) {
+                long now = SystemClock.elapsedRealtime();
+                if (now - mLastComparisonBroadcast >= COMPARISON_BROADCAST_INTERVAL_MS) {
+                    mLastComparisonBroadcast = now;
+                    broadcastStepDetectorComparison(mDetectorComparison);
+                }
+            }
+
         } else if (event.sensor.getType() == Sensor.TYPE_STEP_DETECTOR) {
 
             // we received a step event detected by the built-in Android step detector (assignment 1)
@@ -285,16 +559,15 @@ public class AccelerometerService extends SensorService implements SensorEventLi
 
     /**
      * Broadcasts the accelerometer reading to other application components, e.g. the main UI.
+     * Readings are coalesced, see {@link BroadcastCoalescer}: each broadcast carries the
+     * readings since the previous one, as columns of timestamps and x, y and z values.
      *
      * @param accelerometerReadings the x, y, and z accelerometer readings
      */
     public void broadcastAccelerometerReading(final long timestamp, final float[] accelerometerReadings) {
-        Intent intent = new Intent();
-        intent.putExtra(Constants.KEY.TIMESTAMP, timestamp);
-        intent.putExtra(Constants.KEY.ACCELEROMETER_DATA, accelerometerReadings);
-        intent.setAction(Constants.ACTION.BROADCAST_ACCELEROMETER_DATA);
-        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
-        manager.sendBroadcast(intent);
+        if (mReadingCoalescer != null) {
+            mReadingCoalescer.add(timestamp, accelerometerReadings);
+        }
     }
 
     // ***************** Methods for broadcasting step counts (assignment 1) *****************
@@ -362,4 +635,66 @@ public class AccelerometerService extends SensorService implements SensorEventLi
         LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
         manager.sendBroadcast(intent);
     }
+
+    /**
+     * Broadcasts the current gait metrics to other application components, e.g. the main UI.
+     * Metrics that are not yet known are sent as {@link Double#NaN}.
+     */
+    public void broadcastGaitMetrics(GaitMetrics metrics) {
+        Intent intent = new Intent();
+        intent.putExtra(Constants.KEY.CADENCE, metrics.getCadence());
+        intent.putExtra(Constants.KEY.STRIDE_TIME_MEAN, metrics.getStrideTimeMean());
+        intent.putExtra(Constants.KEY.STRIDE_TIME_SD, metrics.getStrideTimeStandardDeviation());
+        intent.putExtra(Constants.KEY.STRIDE_TIME_CV, metrics.getStrideTimeVariation());
+        intent.putExtra(Constants.KEY.GAIT_SYMMETRY, metrics.getSymmetry());
+        intent.setAction(Constants.ACTION.BROADCAST_GAIT_METRICS);
+        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+        manager.sendBroadcast(intent);
+    }
+
+    /**
+     * Broadcasts a detected fall to other application components; it is uploaded as a
+     * {@link FallReading} as well. The raw accelerometer data leading up to the fall is sent along as columns
+     * of timestamps (in nanoseconds) and x, y and z values.
+     */
+    public void broadcastFallDetected(FallEvent event) {
+        Intent intent = new Intent();
+        intent.putExtra(Constants.KEY.FALL_TIMESTAMP, event.timestamp);
+        intent.putExtra(Constants.KEY.FALL_IMPACT, event.impactMagnitude);
+        intent.putExtra(Constants.KEY.FALL_SNAPSHOT_TIMESTAMPS, event.timestamps);
+        intent.putExtra(Constants.KEY.FALL_SNAPSHOT_X, event.x);
+        intent.putExtra(Constants.KEY.FALL_SNAPSHOT_Y, event.y);
+        intent.putExtra(Constants.KEY.FALL_SNAPSHOT_Z, event.z);
+        intent.setAction(Constants.ACTION.BROADCAST_FALL_DETECTED);
+        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+        manager.sendBroadcast(intent);
+    }
+
+    /**
+     * Broadcasts how the local step detection algorithms compare in evaluation mode to
+     * other application components, e.g. the main UI. All values are arrays indexed by
+     * detector, the reference detector first.
+     */
+    public void broadcastStepDetectorComparison(StepDetectorComparison comparison) {
+        int count = comparison.getDetectorCount();
+        int[] stepCounts = new int[count];
+        double[] agreement = new double[count];
+        double[] lag = new double[count];
+        double[] processingTime = new double[count];
+        for (int i = 0; i < count; i++) {
+            stepCounts[i] = comparison.getStepCount(i);
+            agreement[i] = comparison.getAgreement(i);
+            lag[i] = comparison.getMeanLagMs(i);
+            processingTime[i] = comparison.getNanosPerSample(i);
+        }
+        Intent intent = new Intent();
+        intent.putExtra(Constants.KEY.STEP_DETECTOR_NAMES, comparison.getNames());
+        intent.putExtra(Constants.KEY.STEP_DETECTOR_COUNTS, stepCounts);
+        intent.putExtra(Constants.KEY.STEP_DETECTOR_AGREEMENT, agreement);
+        intent.putExtra(Constants.KEY.STEP_DETECTOR_LAG, lag);
+        intent.putExtra(Constants.KEY.STEP_DETECTOR_PROCESSING_TIME, processingTime);
+        intent.setAction(Constants.ACTION.BROADCAST_STEP_DETECTOR_COMPARISON);
+        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
+        manager.sendBroadcast(intent);
+    }
 }
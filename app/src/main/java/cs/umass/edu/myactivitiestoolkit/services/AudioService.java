@@ -4,15 +4,15 @@ import android.content.Intent;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
-import org.imirsel.m2k.util.Window;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import at.tuwien.ifs.feature.extraction.audio.spectrum.Spectrogram;
 import cs.umass.edu.myactivitiestoolkit.R;
 import cs.umass.edu.myactivitiestoolkit.audio.AudioBufferReading;
 import cs.umass.edu.myactivitiestoolkit.audio.MicrophoneRecorder;
 import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+import cs.umass.edu.myactivitiestoolkit.processing.STFT;
+import cs.umass.edu.myactivitiestoolkit.processing.SpectralPlan;
 import cs.umass.edu.myactivitiestoolkit.view.fragments.AudioFragment;
 import edu.umass.cs.MHLClient.client.MessageReceiver;
 
@@ -49,6 +49,9 @@ public class AudioService extends SensorService implements MicrophoneRecorder.Mi
     /** The sensor responsible for collecting audio data from the phone. */
     private MicrophoneRecorder mMicrophoneRecorder;
 
+    /** Computes the spectrogram of consecutive microphone buffers without reallocating. */
+    private final STFT mSpectrogram = new STFT(100, 50, SpectralPlan.Window.RECTANGULAR, MicrophoneRecorder.frequency);
+
     @Override
     protected void onServiceStarted() {
         broadcastMessage(Constants.MESSAGE.AUDIO_SERVICE_STARTED);
@@ -63,6 +66,7 @@ public class AudioService extends SensorService implements MicrophoneRecorder.Mi
         mMicrophoneRecorder = MicrophoneRecorder.getInstance(this);
 
         Log.d(TAG, "Starting microphone.");
+        mSpectrogram.reset();
         mMicrophoneRecorder.registerListener(this);
         mMicrophoneRecorder.startRecording();
 
@@ -155,14 +159,8 @@ public class AudioService extends SensorService implements MicrophoneRecorder.Mi
         //TODO: Send the audio buffer to the server
         AudioBufferReading pr = new AudioBufferReading(mUserID, "MOBILE", "", 12345, buffer);
         mClient.sendSensorReading(pr);
-        //convert short[] to double[] for computing spectrogram
-        double[] dBuffer = new double[buffer.length];
-        for (int j=0;j<buffer.length;j++) {
-            dBuffer[j] = buffer[j];
-        }
-
-        //compute spectrogram
-        double[][] spectrogram = Spectrogram.computeSpectrogram(dBuffer, 100, 50, Window.RECTANGULAR);
+        //compute spectrogram, overlapping frames carry over from the previous buffer
+        double[][] spectrogram = mSpectrogram.process(buffer, window_size);
 
         //broadcast to UI
         broadcastSpectrogram(spectrogram);
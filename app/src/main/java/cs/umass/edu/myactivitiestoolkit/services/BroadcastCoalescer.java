@@ -0,0 +1,156 @@
+package cs.umass.edu.myactivitiestoolkit.services;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.LocalBroadcastManager;
+
+import java.util.Arrays;
+
+import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+
+/**
+ * Coalesces high-rate sensor samples meant for the UI into batched broadcasts. Rather
+ * than one {@link Intent} per sample, samples are collected into columns and delivered
+ * at most once per interval, as a single broadcast holding a {@code long[]} of timestamps
+ * under {@link Constants.KEY#TIMESTAMPS} and a {@code float[]} per channel under the
+ * channel keys. Receivers therefore redraw once per batch instead of once per sample,
+ * and no sample is dropped.
+ * <br><br>
+ * Samples may be added from any thread. The batch is sent from the main thread once the
+ * interval since the previous broadcast has passed, or straight away if the columns fill
+ * up first. Call {@link #flush()} when the stream stops to deliver the last samples.
+ */
+public class BroadcastCoalescer {
+
+    /** The duration of a display frame at 60 Hz, in milliseconds. */
+    public static final long FRAME_INTERVAL_MS = 16;
+
+    /**
+     * Default shortest time between broadcasts, in milliseconds. The plots show several
+     * seconds of signal, so a few frames per update are indistinguishable from one.
+     */
+    public static final long DEFAULT_INTERVAL_MS = 3 * FRAME_INTERVAL_MS;
+
+    /** Default number of samples a batch holds. */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final LocalBroadcastManager manager;
+
+    private final String action;
+
+    private final String[] channelKeys;
+
+    private final long intervalMs;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final long[] timestamps;
+    private final float[][] columns;
+    private int size = 0;
+
+    /** Whether a broadcast is scheduled. */
+    private boolean scheduled = false;
+
+    /** Time of the last broadcast, see {@link SystemClock#uptimeMillis()}. */
+    private long lastBroadcast = 0;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Creates a coalescer with the {@link #DEFAULT_INTERVAL_MS default interval}.
+     * @param context the context used to obtain the {@link LocalBroadcastManager}
+     * @param action the action of the batched broadcasts
+     * @param channelKeys the extra key of each channel of a sample
+     */
+    public BroadcastCoalescer(Context context, String action, String... channelKeys) {
+        this(context, action, channelKeys, DEFAULT_INTERVAL_MS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a coalescer.
+     * @param context the context used to obtain the {@link LocalBroadcastManager}
+     * @param action the action of the batched broadcasts
+     * @param channelKeys the extra key of each channel of a sample
+     * @param intervalMs the shortest time between broadcasts, in milliseconds, e.g.
+     *                   {@link #FRAME_INTERVAL_MS} for one broadcast per display frame
+     * @param capacity the number of samples at which a batch is sent regardless of the interval
+     */
+    public BroadcastCoalescer(Context context, String action, String[] channelKeys, long intervalMs, int capacity) {
+        if (channelKeys.length == 0 || intervalMs < 0 || capacity < 1) {
+            throw new IllegalArgumentException("A coalescer needs a channel, a non-negative interval and a capacity");
+        }
+        this.manager = LocalBroadcastManager.getInstance(context);
+        this.action = action;
+        this.channelKeys = channelKeys.clone();
+        this.intervalMs = intervalMs;
+        timestamps = new long[capacity];
+        columns = new float[channelKeys.length][capacity];
+    }
+
+    /**
+     * Adds a single-channel sample.
+     * @param timestamp the time of the sample
+     * @param value the value of the sample
+     */
+    public synchronized void add(long timestamp, float value) {
+        int index = reserve(timestamp);
+        columns[0][index] = value;
+    }
+
+    /**
+     * Adds a sample.
+     * @param timestamp the time of the sample
+     * @param values one value per channel; the array is copied
+     */
+    public synchronized void add(long timestamp, float[] values) {
+        int index = reserve(timestamp);
+        for (int c = 0; c < columns.length; c++) {
+            columns[c][index] = values[c];
+        }
+    }
+
+    /**
+     * Makes room for a sample, stores its timestamp and schedules the broadcast.
+     * @return the index at which to store the values
+     */
+    private int reserve(long timestamp) {
+        if (size == timestamps.length) {
+            flush();
+        }
+        if (!scheduled) {
+            scheduled = true;
+            long delay = Math.max(0, lastBroadcast + intervalMs - SystemClock.uptimeMillis());
+            handler.postDelayed(flushTask, delay);
+        }
+        timestamps[size] = timestamp;
+        return size++;
+    }
+
+    /**
+     * Sends the samples collected so far as one broadcast. Does nothing if there are none.
+     */
+    public synchronized void flush() {
+        handler.removeCallbacks(flushTask);
+        scheduled = false;
+        if (size == 0) {
+            return;
+        }
+        Intent intent = new Intent();
+        intent.putExtra(Constants.KEY.TIMESTAMPS, Arrays.copyOf(timestamps, size));
+        for (int c = 0; c < columns.length; c++) {
+            intent.putExtra(channelKeys[c], Arrays.copyOf(columns[c], size));
+        }
+        intent.setAction(action);
+        size = 0;
+        lastBroadcast = SystemClock.uptimeMillis();
+        manager.sendBroadcast(intent);
+    }
+}
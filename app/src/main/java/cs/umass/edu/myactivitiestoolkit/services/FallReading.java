@@ -0,0 +1,68 @@
+package cs.umass.edu.myactivitiestoolkit.services;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+import cs.umass.edu.myactivitiestoolkit.falls.FallEvent;
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Wraps a {@link FallEvent} into a sensor reading to send to the server: the time and
+ * magnitude of the impact, and the snapshot of raw accelerometer data that led up to
+ * it, as columns of timestamps and x, y and z values like an
+ * {@link AccelerometerBatchReading}.
+ *
+ * @see SensorReading
+ * @see cs.umass.edu.myactivitiestoolkit.falls.FallDetector
+ */
+public class FallReading extends SensorReading {
+
+    /** The detected fall. **/
+    private final FallEvent event;
+
+    /**
+     * Instantiates a fall reading. The snapshot is not copied.
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param event the detected fall
+     */
+    public FallReading(String userID, String deviceType, String deviceID, FallEvent event) {
+        super(userID, deviceType, deviceID, "SENSOR_FALL", event.timestamp);
+        this.event = event;
+    }
+
+    @Override
+    protected JSONObject toJSONObject() {
+        JSONObject obj = getBaseJSONObject();
+        JSONObject data = new JSONObject();
+
+        try {
+            JSONArray t = new JSONArray();
+            JSONArray xArray = new JSONArray();
+            JSONArray yArray = new JSONArray();
+            JSONArray zArray = new JSONArray();
+            for (int i = 0; i < event.timestamps.length; i++) {
+                // in milliseconds, like the timestamps of the other accelerometer readings
+                t.put(event.timestamps[i] / Constants.TIMESTAMPS.NANOSECONDS_PER_MILLISECOND);
+                xArray.put(event.x[i]);
+                yArray.put(event.y[i]);
+                zArray.put(event.z[i]);
+            }
+            data.put("t", timestamp);
+            data.put("impact", event.impactMagnitude);
+            data.put("timestamps", t);
+            data.put("x", xArray);
+            data.put("y", yArray);
+            data.put("z", zArray);
+
+            obj.put("data", data);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return obj;
+    }
+}
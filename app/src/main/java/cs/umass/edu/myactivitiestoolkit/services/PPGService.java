@@ -24,7 +24,6 @@ import cs.umass.edu.myactivitiestoolkit.ppg.PPGEvent;
 import cs.umass.edu.myactivitiestoolkit.ppg.PPGListener;
 import cs.umass.edu.myactivitiestoolkit.processing.FFT;
 import cs.umass.edu.myactivitiestoolkit.processing.Filter;
-import cs.umass.edu.myactivitiestoolkit.util.Interpolator;
 import edu.umass.cs.MHLClient.client.MobileIOClient;
 
 /**
@@ -61,8 +60,13 @@ public class PPGService extends SensorService implements PPGListener {
     /* Surface view responsible for collecting PPG data and displaying the camera preview. */
     private HeartRateCameraView mPPGSensor;
 
+    /* Batches the PPG readings sent to the UI. */
+    private BroadcastCoalescer mReadingCoalescer;
+
     // Exponential Smoothing Filtering
     private Filter ESFiltering = new Filter(2.0);//1.5
+    private final float[] rawValue = new float[1];
+    private final double[] filteredValue = new double[1];
 
     //Used for algorithm
     private long startTime = -1;
@@ -129,6 +133,7 @@ public class PPGService extends SensorService implements PPGListener {
     @Override
     protected void registerSensors() {
         // TODO: Register a PPG listener with the PPG sensor (mPPGSensor)
+        mReadingCoalescer = new BroadcastCoalescer(this, Constants.ACTION.BROADCAST_PPG, Constants.KEY.PPG_DATA);
         mPPGSensor.registerListener(this);
     }
 
@@ -136,6 +141,9 @@ public class PPGService extends SensorService implements PPGListener {
     protected void unregisterSensors() {
         // TODO: Unregister the PPG listener
         mPPGSensor.unregisterListener(this);
+        if (mReadingCoalescer != null) {
+            mReadingCoalescer.flush();
+        }
     }
 
     @Override
@@ -180,7 +188,8 @@ public class PPGService extends SensorService implements PPGListener {
     public void onSensorChanged(PPGEvent event) {
 
         // TODO: Smooth the signal using a Butterworth / exponential smoothing filter
-        double[] filteredValue = ESFiltering.getFilteredValues((float) event.value);// filter the value
+        rawValue[0] = (float) event.value;
+        ESFiltering.filter(rawValue, filteredValue);// filter the value
         if(filteredValue[0] < 180 ){
             System.out.println("Are you sure you putting your finger on the camera....? Try to move around the figure or press harder for us to collect more red pixel!!");
             return;
@@ -245,16 +254,15 @@ public class PPGService extends SensorService implements PPGListener {
 
     /**
      * Broadcasts the PPG reading to other application components, e.g. the main UI.
+     * Readings are coalesced, see {@link BroadcastCoalescer}: each broadcast carries the
+     * readings since the previous one, as columns of timestamps and values.
      *
      * @param ppgReading the mean red value.
      */
     public void broadcastPPGReading(final long timestamp, final double ppgReading) {
-        Intent intent = new Intent();
-        intent.putExtra(Constants.KEY.PPG_DATA, ppgReading);
-        intent.putExtra(Constants.KEY.TIMESTAMP, timestamp);
-        intent.setAction(Constants.ACTION.BROADCAST_PPG);
-        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
-        manager.sendBroadcast(intent);
+        if (mReadingCoalescer != null) {
+            mReadingCoalescer.add(timestamp, (float) ppgReading);
+        }
     }
 
     /**
@@ -2,9 +2,7 @@ package cs.umass.edu.myactivitiestoolkit.services.msband;
 
 import android.app.Notification;
 import android.app.Service;
-import android.content.Intent;
 import android.os.AsyncTask;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -21,6 +19,8 @@ import com.microsoft.band.sensors.SampleRate;
 
 import cs.umass.edu.myactivitiestoolkit.R;
 import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+import cs.umass.edu.myactivitiestoolkit.processing.PolyphaseDecimator;
+import cs.umass.edu.myactivitiestoolkit.services.BroadcastCoalescer;
 import cs.umass.edu.myactivitiestoolkit.services.SensorService;
 import edu.umass.cs.MHLClient.sensors.AccelerometerReading;
 import edu.umass.cs.MHLClient.sensors.GyroscopeReading;
@@ -47,6 +47,30 @@ public class BandService extends SensorService implements BandGyroscopeEventList
     /** The object which receives sensor data from the Microsoft Band */
     private BandClient bandClient = null;
 
+    /** The rate, in Hz, at which the Band streams the gyroscope (and accelerometer) at {@link SampleRate#MS16}. */
+    private static final double BAND_SAMPLE_RATE = 62.5;
+
+    /** The rate, in Hz, at which Band data is uploaded and displayed. Matches the rate assumed by the filters. */
+    private static final double TARGET_SAMPLE_RATE = 30;
+
+    /** Batches the accelerometer readings sent to the UI. */
+    private BroadcastCoalescer readingCoalescer;
+
+    /** Reused input frame: acceleration x, y, z followed by angular velocity x, y, z. */
+    private final float[] bandSample = new float[6];
+
+    /**
+     * Brings the Band stream down to {@link #TARGET_SAMPLE_RATE} before it is sent to the
+     * server or the UI, so bandwidth and CPU scale with the rate actually needed.
+     */
+    private final PolyphaseDecimator decimator = PolyphaseDecimator.forRates(BAND_SAMPLE_RATE, TARGET_SAMPLE_RATE, 6,
+            new PolyphaseDecimator.OnOutputListener() {
+                @Override
+                public void onOutput(long timestamp, float[] values) {
+                    onDecimatedSample(timestamp, values);
+                }
+            });
+
     @Override
     protected void onServiceStarted() {
         broadcastMessage(Constants.MESSAGE.BAND_SERVICE_STARTED);
@@ -124,6 +148,9 @@ public class BandService extends SensorService implements BandGyroscopeEventList
 
     @Override
     protected void registerSensors() {
+        decimator.reset();
+        readingCoalescer = new BroadcastCoalescer(this, Constants.ACTION.BROADCAST_ACCELEROMETER_DATA,
+                Constants.KEY.ACCELEROMETER_X, Constants.KEY.ACCELEROMETER_Y, Constants.KEY.ACCELEROMETER_Z);
         new SensorSubscriptionTask().execute();
     }
 
@@ -140,6 +167,9 @@ public class BandService extends SensorService implements BandGyroscopeEventList
                 broadcastStatus(getString(R.string.err_default) + e.getMessage());
             }
         }
+        if (readingCoalescer != null) {
+            readingCoalescer.flush();
+        }
     }
 
     @Override
@@ -172,16 +202,32 @@ public class BandService extends SensorService implements BandGyroscopeEventList
 
     @Override
     public void onBandGyroscopeChanged(BandGyroscopeEvent event) {
+        bandSample[0] = event.getAccelerationX();
+        bandSample[1] = event.getAccelerationY();
+        bandSample[2] = event.getAccelerationZ();
+        bandSample[3] = event.getAngularVelocityX();
+        bandSample[4] = event.getAngularVelocityY();
+        bandSample[5] = event.getAngularVelocityZ();
+        decimator.push(event.getTimestamp(), bandSample);
+    }
+
+    /**
+     * Called for every sample of the decimated Band stream. Sends the accelerometer and
+     * gyroscope readings to the server and the accelerometer reading to the UI.
+     * @param timestamp the time of the decimated sample
+     * @param values acceleration x, y, z followed by angular velocity x, y, z
+     */
+    private void onDecimatedSample(long timestamp, float[] values) {
         //TODO: Remove code from starter code
-        Object[] data = new Object[]{event.getTimestamp(),
-                event.getAccelerationX(), event.getAccelerationY(), event.getAccelerationZ(),
-                event.getAngularVelocityX(), event.getAngularVelocityY(), event.getAngularVelocityZ()};
-        mClient.sendSensorReading(new AccelerometerReading(mUserID, "", "", event.getTimestamp(),
-                event.getAccelerationX(), event.getAccelerationY(), event.getAccelerationZ()));
-        broadcastAccelerometerReading(event.getTimestamp(),
-                event.getAccelerationX(), event.getAccelerationY(), event.getAccelerationZ());
-        mClient.sendSensorReading(new GyroscopeReading(mUserID, "", "", event.getTimestamp(),
-                event.getAngularVelocityX(), event.getAngularVelocityY(), event.getAngularVelocityZ()));
+        Object[] data = new Object[]{timestamp,
+                values[0], values[1], values[2],
+                values[3], values[4], values[5]};
+        mClient.sendSensorReading(new AccelerometerReading(mUserID, "", "", timestamp,
+                values[0], values[1], values[2]));
+        // the first three values are the acceleration
+        broadcastAccelerometerReading(timestamp, values);
+        mClient.sendSensorReading(new GyroscopeReading(mUserID, "", "", timestamp,
+                values[3], values[4], values[5]));
         String sample = TextUtils.join(",", data);
         Log.d(TAG, sample);
     }
@@ -189,14 +235,13 @@ public class BandService extends SensorService implements BandGyroscopeEventList
     //TODO: Remove method from starter code
     /**
      * Broadcasts the accelerometer reading to other application components, e.g. the main UI.
+     * Readings are coalesced, see {@link BroadcastCoalescer}: each broadcast carries the
+     * readings since the previous one, as columns of timestamps and x, y and z values.
      * @param accelerometerReadings the x, y, and z accelerometer readings
      */
     public void broadcastAccelerometerReading(final long timestamp, final float... accelerometerReadings) {
-        Intent intent = new Intent();
-        intent.putExtra(Constants.KEY.TIMESTAMP, timestamp);
-        intent.putExtra(Constants.KEY.ACCELEROMETER_DATA, accelerometerReadings);
-        intent.setAction(Constants.ACTION.BROADCAST_ACCELEROMETER_DATA);
-        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
-        manager.sendBroadcast(intent);
+        if (readingCoalescer != null) {
+            readingCoalescer.add(timestamp, accelerometerReadings);
+        }
     }
 }
\ No newline at end of file
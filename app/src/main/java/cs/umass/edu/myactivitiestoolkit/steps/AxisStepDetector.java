@@ -0,0 +1,227 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+import cs.umass.edu.myactivitiestoolkit.processing.Filter;
+
+/**
+ * The original step detection algorithm. It smooths the accelerometer signal, picks the
+ * axis with the largest swing and counts a step whenever that axis falls through the
+ * midpoint of its recent range with a sufficiently steep slope. While the phone settles
+ * into the pocket the axis is re-evaluated periodically.
+ */
+public class AxisStepDetector extends StepDetectorCore {
+
+    /**
+     * CTL: Total Data count, used to filtered out the first few data that were counted when we put the phone into the pocket
+     */
+    private int dataCount = 0;
+    /**
+     * Exponential Smoothing filtering
+     */
+    private int ESFilterValue = 1;
+    private Filter ESFiltering = new Filter(ESFilterValue);
+    /**
+     * Store data points to do the operation, in fixed-capacity primitive ring buffers
+     * (one array per axis plus the timestamps) so that buffering allocates nothing
+     **/
+    private static final int BUFFER_CAPACITY = 16;
+    private final float[] xBuffer = new float[BUFFER_CAPACITY];
+    private final float[] yBuffer = new float[BUFFER_CAPACITY];
+    private final float[] zBuffer = new float[BUFFER_CAPACITY];
+    private final long[] timeBuffer = new long[BUFFER_CAPACITY];
+    private int bufferHead = 0, bufferSize = 0;
+    /**
+     * Reused arrays for the raw and filtered sample and for the values handed to the step listeners
+     **/
+    private final float[] raw_values = new float[3];
+    private final float[] filtered_values = new float[3];
+    private final float[] stepValues = new float[3];
+    /**
+     * XYZ Max and Min
+     **/
+    private float x_max = -999,y_max= -999, z_max= -999;
+    private float x_min = 999, y_min = 999, z_min = 999;
+    /**
+     * Threashold
+     **/
+    private float global_max = -1, global_min = -1,threshold = -1;
+    private int axisToUse = -1,axisChangeRate = 5,axisChangeCD = 0;
+    private float x_diff, y_diff,z_diff;
+    private float lastData,currentData,slope;
+    private int queuedSteps = 0;
+
+
+    private void updateXYZMaxMin(float[] values) {
+        if (values[0] >= x_max)
+            x_max = values[0];
+        else if (values[0] < x_min)
+            x_min = values[0];
+        if (values[1] >= y_max)
+            y_max = values[1];
+        else if (values[1] < y_min)
+            y_min = values[1];
+        if (values[2] >= z_max)
+            z_max = values[2];
+        else if (values[2] < z_min)
+            z_min = values[2];
+    }
+
+    private void xyzMaxMinReset() {
+        x_max = y_max = z_max = -999;
+        x_min =  y_min = z_min = 999;
+    }
+
+    private void calculateThreshold() {
+        if (axisToUse == 0) {
+            global_max = x_max;
+            global_min = x_min;
+        } else if (axisToUse == 1) {
+            global_max = y_max;
+            global_min = y_min;
+        } else if (axisToUse == 2) {
+            global_max = z_max;
+            global_min = z_min;
+        }
+
+        threshold = (global_max + global_min) / 2;
+    }
+
+    // Calculate the difference of the max and min in each axis, then decide which axis to use
+    private void chooseAxis() {
+
+        x_diff = Math.abs(x_max - x_min);
+        y_diff = Math.abs(y_max - y_min);
+        z_diff = Math.abs(z_max - z_min);
+
+
+        if (x_diff > y_diff && x_diff > z_diff) {
+            axisToUse = 0;
+        } else if (y_diff > x_diff && y_diff > z_diff) {
+            axisToUse = 1;
+        } else if (z_diff > x_diff && z_diff > y_diff) {
+            axisToUse = 2;
+        }
+    }
+
+    private void chooseAxisAdvance(){
+        boolean firstCheck = !(x_max == -999 || y_max ==-999 || z_max == -999);
+        boolean secondCheck = !(x_min == 999 || y_min ==999 || z_min == 999);
+        if(axisChangeCD == 0 && firstCheck && secondCheck) {
+
+            x_diff = Math.abs(x_max - x_min);
+            y_diff = Math.abs(y_max - y_min);
+            z_diff = Math.abs(z_max - z_min);
+
+            if (x_diff > y_diff && x_diff > z_diff && x_diff >= 8) {
+                axisChangeCD = 20;
+                if(axisToUse != 0)
+                    onStepDetected(bufferSize - 1);
+                axisToUse = 0;
+            } else if (y_diff > x_diff && y_diff > z_diff && y_diff >= 8) {
+                axisChangeCD = 20;
+                if(axisToUse != 1)
+                    onStepDetected(bufferSize - 1);
+                axisToUse = 1;
+            } else if (z_diff > x_diff && z_diff > y_diff && z_diff >= 8) {
+                axisChangeCD = 20;
+                if(axisToUse != 2)
+                    onStepDetected(bufferSize - 1);
+                axisToUse = 2;
+            }
+        }
+        else if(axisChangeCD>0){
+            axisChangeCD--;
+        }
+    }
+
+    private void stepDetecting() {
+
+        if (threshold == -1)
+            calculateThreshold();
+        float[] axisBuffer = axisToUse == 0 ? xBuffer : axisToUse == 1 ? yBuffer : zBuffer;
+        for (int i = 0; i < bufferSize; i++) {
+            int index = (bufferHead + i) % BUFFER_CAPACITY;
+            if (i == 0) {
+                lastData = axisBuffer[index];
+            } else {
+                currentData = axisBuffer[index];
+                slope = lastData - currentData;
+                if (lastData > threshold && currentData <= threshold && slope > 1) {
+                    onStepDetected(i);
+                }
+                lastData = axisBuffer[index];
+            }
+        }
+        // clear the buffer
+        bufferHead = (bufferHead + bufferSize) % BUFFER_CAPACITY;
+        bufferSize = 0;
+    }
+
+    /**
+     * Appends a filtered sample to the ring buffers, overwriting the oldest one when full.
+     */
+    private void bufferSample(long timestamp, float[] values) {
+        if (bufferSize == BUFFER_CAPACITY) {
+            bufferHead = (bufferHead + 1) % BUFFER_CAPACITY;
+            bufferSize--;
+        }
+        int index = (bufferHead + bufferSize) % BUFFER_CAPACITY;
+        xBuffer[index] = values[0];
+        yBuffer[index] = values[1];
+        zBuffer[index] = values[2];
+        timeBuffer[index] = timestamp;
+        bufferSize++;
+    }
+
+    /**
+     * Notifies the listeners of a step at the i-th buffered sample.
+     */
+    private void onStepDetected(int i) {
+        int index = (bufferHead + i) % BUFFER_CAPACITY;
+        stepValues[0] = xBuffer[index];
+        stepValues[1] = yBuffer[index];
+        stepValues[2] = zBuffer[index];
+        onStepDetected(timeBuffer[index], stepValues);
+    }
+
+    /**
+     * Runs the algorithm on one sample.
+     */
+    @Override
+    public void process(long timestampNs, float x, float y, float z) {
+        // convert the timestamp to milliseconds (note this is not in Unix time)
+        long timestamp_in_milliseconds = (long) ((double) timestampNs / Constants.TIMESTAMPS.NANOSECONDS_PER_MILLISECOND);
+
+        // The total number of data.
+        dataCount++;
+
+        // Filter the data into the reused sample array
+        raw_values[0] = x;
+        raw_values[1] = y;
+        raw_values[2] = z;
+        ESFiltering.filterBlock(raw_values, 1, 3, filtered_values);
+
+
+        //*************Algorithm starts*************//
+        updateXYZMaxMin(filtered_values);
+        //Wait for the user to put the phone into the pocket
+        if (dataCount > 15) {
+            // Start to add the data into the buffer
+            bufferSample(timestamp_in_milliseconds, filtered_values);
+            // Keep changing the axis to use while the phone is still trying to get to  fixed position
+            if (dataCount < 30 && dataCount % axisChangeRate == 0) {
+                chooseAxis();
+            } else{
+                chooseAxisAdvance();
+            }
+
+            if (bufferSize > 3) {
+                if (axisToUse == -1)
+                    chooseAxis();
+                calculateThreshold();
+                xyzMaxMinReset();
+                stepDetecting();
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+/**
+ * Derives gait metrics from step events. Register it as an {@link OnStepListener} with a
+ * step detector; it maintains, over rolling windows of the most recent steps,
+ * <ul>
+ *     <li>the cadence, in steps per minute;</li>
+ *     <li>the mean, standard deviation and coefficient of variation of the stride time,
+ *     i.e. the time between two consecutive steps of the same foot;</li>
+ *     <li>the left-right symmetry, the ratio of the shorter to the longer of the mean
+ *     step times of the two feet. Steps alternate between the feet, so without knowing
+ *     which foot is which the two feet are told apart by the parity of the step.</li>
+ * </ul>
+ * A pause longer than the maximum step period ends the walk and clears the windows,
+ * since the foot parity is lost. Times are kept as whole milliseconds, so the running
+ * sums are exact and every step is handled in O(1) without allocation.
+ */
+public class GaitMetrics implements OnStepListener {
+
+    /** Default number of step times in the cadence window. */
+    public static final int DEFAULT_CADENCE_WINDOW = 10;
+
+    /** Default number of stride times in the stride window. */
+    public static final int DEFAULT_STRIDE_WINDOW = 20;
+
+    /** Default longest step period in milliseconds; a longer pause ends the walk. */
+    public static final long DEFAULT_MAX_STEP_PERIOD_MS = 2000;
+
+    private static final double MILLISECONDS_PER_MINUTE = 60000;
+
+    /**
+     * The most recent values of a series, with running sums.
+     */
+    private static class Window {
+        private final long[] values;
+        private int size = 0, next = 0;
+        private long sum = 0, sumOfSquares = 0;
+
+        Window(int capacity) {
+            values = new long[capacity];
+        }
+
+        void add(long value) {
+            if (size == values.length) {
+                long oldest = values[next];
+                sum -= oldest;
+                sumOfSquares -= oldest * oldest;
+            } else {
+                size++;
+            }
+            values[next] = value;
+            next = next + 1 == values.length ? 0 : next + 1;
+            sum += value;
+            sumOfSquares += value * value;
+        }
+
+        void clear() {
+            size = next = 0;
+            sum = sumOfSquares = 0;
+        }
+
+        double mean() {
+            return size == 0 ? Double.NaN : sum / (double) size;
+        }
+
+        double standardDeviation() {
+            if (size < 2) {
+                return Double.NaN;
+            }
+            // exact in integers: n * sum(x^2) - sum(x)^2 = n^2 * population variance
+            long scaled = size * sumOfSquares - sum * sum;
+            return Math.sqrt(scaled / ((double) size * (size - 1)));
+        }
+    }
+
+    private final long maxStepPeriodMs;
+
+    private final Window stepTimes;
+    private final Window strideTimes;
+    private final Window[] footStepTimes;
+
+    private long lastStep = Long.MIN_VALUE;
+
+    /** The previous step time of the current walk, or -1 at its start. */
+    private long lastStepTime = -1;
+
+    /** Number of step times in the current walk. */
+    private long walkSteps = 0;
+
+    /**
+     * Creates a metrics engine with the default windows.
+     */
+    public GaitMetrics() {
+        this(DEFAULT_CADENCE_WINDOW, DEFAULT_STRIDE_WINDOW, DEFAULT_MAX_STEP_PERIOD_MS);
+    }
+
+    /**
+     * Creates a metrics engine.
+     * @param cadenceWindow the number of most recent step times the cadence is computed over
+     * @param strideWindow the number of most recent stride times the stride statistics are
+     *                     computed over. The symmetry is computed over the same steps.
+     * @param maxStepPeriodMs the longest step period, in milliseconds
+     */
+    public GaitMetrics(int cadenceWindow, int strideWindow, long maxStepPeriodMs) {
+        if (cadenceWindow < 1 || strideWindow < 2) {
+            throw new IllegalArgumentException("The cadence window must hold at least one step "
+                    + "and the stride window at least two strides");
+        }
+        if (maxStepPeriodMs <= 0) {
+            throw new IllegalArgumentException("The maximum step period must be positive");
+        }
+        this.maxStepPeriodMs = maxStepPeriodMs;
+        stepTimes = new Window(cadenceWindow);
+        strideTimes = new Window(strideWindow);
+        // the strides in the window span strideWindow + 1 step times, alternating between the feet
+        footStepTimes = new Window[]{new Window(strideWindow / 2 + 1), new Window(strideWindow / 2 + 1)};
+    }
+
+    @Override
+    public void onStepCountUpdated(int stepCount) {
+        // the metrics only depend on the step times
+    }
+
+    @Override
+    public void onStepDetected(long timestamp, float[] values) {
+        if (lastStep != Long.MIN_VALUE) {
+            long stepTime = timestamp - lastStep;
+            if (stepTime > maxStepPeriodMs) {
+                clearWindows();
+            } else if (stepTime > 0) {
+                stepTimes.add(stepTime);
+                footStepTimes[(int) (walkSteps & 1)].add(stepTime);
+                if (lastStepTime >= 0) {
+                    strideTimes.add(lastStepTime + stepTime);
+                }
+                lastStepTime = stepTime;
+                walkSteps++;
+            } else {
+                // a repeated step; keep the earlier timestamp
+                return;
+            }
+        }
+        lastStep = timestamp;
+    }
+
+    /**
+     * Forgets all steps.
+     */
+    public void reset() {
+        clearWindows();
+        lastStep = Long.MIN_VALUE;
+    }
+
+    private void clearWindows() {
+        stepTimes.clear();
+        strideTimes.clear();
+        footStepTimes[0].clear();
+        footStepTimes[1].clear();
+        lastStepTime = -1;
+        walkSteps = 0;
+    }
+
+    /**
+     * Returns the cadence over the cadence window.
+     * @return the cadence in steps per minute, or NaN before the second step of a walk
+     */
+    public double getCadence() {
+        return MILLISECONDS_PER_MINUTE / stepTimes.mean();
+    }
+
+    /**
+     * Returns the mean stride time over the stride window.
+     * @return the mean in milliseconds, or NaN before the third step of a walk
+     */
+    public double getStrideTimeMean() {
+        return strideTimes.mean();
+    }
+
+    /**
+     * Returns the standard deviation of the stride time over the stride window.
+     * @return the sample standard deviation in milliseconds, or NaN with fewer than two strides
+     */
+    public double getStrideTimeStandardDeviation() {
+        return strideTimes.standardDeviation();
+    }
+
+    /**
+     * Returns the coefficient of variation of the stride time, a common measure of gait
+     * variability.
+     * @return the standard deviation divided by the mean, or NaN with fewer than two strides
+     */
+    public double getStrideTimeVariation() {
+        return strideTimes.standardDeviation() / strideTimes.mean();
+    }
+
+    /**
+     * Returns the left-right symmetry of the step times.
+     * @return the ratio of the shorter to the longer mean step time of the two feet, 1 for
+     * a perfectly symmetric gait, or NaN before the third step of a walk
+     */
+    public double getSymmetry() {
+        double a = footStepTimes[0].mean(), b = footStepTimes[1].mean();
+        return Math.min(a, b) / Math.max(a, b);
+    }
+
+    /**
+     * Returns the number of step times in the current walk.
+     * @return the number of steps since the walk started, not counting its first step
+     */
+    public long getWalkSteps() {
+        return walkSteps;
+    }
+}
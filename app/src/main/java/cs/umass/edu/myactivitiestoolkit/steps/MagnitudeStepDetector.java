@@ -0,0 +1,149 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+
+/**
+ * Orientation-invariant step detection algorithm. Instead of choosing an axis, it works
+ * on the magnitude of the acceleration vector, which does not depend on how the phone
+ * sits in the pocket:
+ * <ol>
+ *     <li>Gravity is removed by subtracting a slow moving average of the magnitude.</li>
+ *     <li>The remainder is smoothed to suppress jitter above walking frequencies.</li>
+ *     <li>Every local maximum of the smoothed signal above an adaptive threshold is a
+ *     step candidate. The threshold is a fraction of the average recent step peak, so it
+ *     follows the user's gait and phone placement, with a fixed floor that rejects
+ *     small movements.</li>
+ *     <li>A candidate that follows the previous step too closely falls in the refractory
+ *     period and is ignored. The refractory period is a fraction of the average step
+ *     period, which is itself kept within the human range of the minimum to maximum step
+ *     period (0.5 - 2 s by default); it therefore shortens for brisk walking and
+ *     lengthens for a slow gait, where flat peaks are prone to double counts. After a
+ *     pause longer than the maximum step period the averages are forgotten, so a new
+ *     walk starts afresh.</li>
+ * </ol>
+ * The filters are exponential moving averages whose weights are derived from the sample
+ * timestamps, so irregular or batched sampling is handled. All state is a handful of
+ * scalars, updated in O(1) per sample.
+ */
+public class MagnitudeStepDetector extends StepDetectorCore {
+
+    /** Default shortest step period, in seconds. */
+    public static final double DEFAULT_MIN_STEP_PERIOD = 0.5;
+
+    /** Default longest step period, in seconds; a longer pause ends the walk. */
+    public static final double DEFAULT_MAX_STEP_PERIOD = 2.0;
+
+    /** Time constant of the gravity estimate, in seconds. */
+    private static final double GRAVITY_TIME_CONSTANT = 1.0;
+
+    /** Time constant of the smoothing filter, in seconds (about 4 Hz). */
+    private static final double SMOOTHING_TIME_CONSTANT = 0.04;
+
+    /** Lowest threshold, in m/s^2. */
+    private static final double MIN_THRESHOLD = 1.0;
+
+    /** Fraction of the average step peak a candidate has to reach. */
+    private static final double THRESHOLD_FRACTION = 0.5;
+
+    /** Weight of a new step peak or step period in its average. */
+    private static final double AVERAGE_WEIGHT = 0.25;
+
+    /** Fraction of the average step period during which no new step is accepted. */
+    private static final double REFRACTORY_FRACTION = 0.6;
+
+    private final long minStepPeriodNs, maxStepPeriodNs;
+
+    private boolean started = false;
+
+    private long lastTimestampNs;
+
+    private double gravity, smoothed, previousSmoothed;
+
+    /** Whether the smoothed signal rose into the previous sample. */
+    private boolean rising = false;
+
+    /** The previous sample, reported if it turns out to be a step peak. */
+    private long previousTimestampNs;
+    private final float[] previousValues = new float[3];
+
+    private long lastStepNs = Long.MIN_VALUE;
+
+    private double peakAverage = 0;
+
+    /** Average period of the current walk, in nanoseconds. */
+    private double periodAverage;
+
+    /**
+     * Creates a detector with the default step periods.
+     */
+    public MagnitudeStepDetector() {
+        this(DEFAULT_MIN_STEP_PERIOD, DEFAULT_MAX_STEP_PERIOD);
+    }
+
+    /**
+     * Creates a detector.
+     * @param minStepPeriod the shortest step period of human gait, in seconds
+     * @param maxStepPeriod the longest step period of human gait, in seconds
+     */
+    public MagnitudeStepDetector(double minStepPeriod, double maxStepPeriod) {
+        if (minStepPeriod <= 0 || maxStepPeriod <= minStepPeriod) {
+            throw new IllegalArgumentException("Step periods must satisfy 0 < min < max");
+        }
+        this.minStepPeriodNs = (long) (minStepPeriod * Constants.TIMESTAMPS.NANOSECONDS_PER_SECOND);
+        this.maxStepPeriodNs = (long) (maxStepPeriod * Constants.TIMESTAMPS.NANOSECONDS_PER_SECOND);
+        this.periodAverage = minStepPeriodNs;
+    }
+
+    @Override
+    public void process(long timestampNs, float x, float y, float z) {
+        double magnitude = Math.sqrt(x * x + y * y + z * z);
+        if (!started) {
+            started = true;
+            gravity = magnitude;
+            smoothed = previousSmoothed = 0;
+            lastTimestampNs = timestampNs;
+            remember(timestampNs, x, y, z);
+            return;
+        }
+        double dt = (timestampNs - lastTimestampNs) / (double) Constants.TIMESTAMPS.NANOSECONDS_PER_SECOND;
+        lastTimestampNs = timestampNs;
+        if (dt <= 0) {
+            return;
+        }
+        gravity += (magnitude - gravity) * dt / (GRAVITY_TIME_CONSTANT + dt);
+        smoothed += (magnitude - gravity - smoothed) * dt / (SMOOTHING_TIME_CONSTANT + dt);
+
+        if (lastStepNs != Long.MIN_VALUE && timestampNs - lastStepNs > maxStepPeriodNs) {
+            // the walk has ended
+            peakAverage = 0;
+            periodAverage = minStepPeriodNs;
+            lastStepNs = Long.MIN_VALUE;
+        }
+
+        // the previous sample is a peak if the signal rose into it and does not rise further
+        if (rising && smoothed <= previousSmoothed) {
+            double threshold = Math.max(MIN_THRESHOLD, THRESHOLD_FRACTION * peakAverage);
+            long sinceStep = lastStepNs == Long.MIN_VALUE ? Long.MAX_VALUE : previousTimestampNs - lastStepNs;
+            if (previousSmoothed >= threshold && sinceStep >= REFRACTORY_FRACTION * periodAverage) {
+                peakAverage = peakAverage == 0 ? previousSmoothed
+                        : peakAverage + AVERAGE_WEIGHT * (previousSmoothed - peakAverage);
+                if (sinceStep != Long.MAX_VALUE) {
+                    double period = Math.min(maxStepPeriodNs, Math.max(minStepPeriodNs, sinceStep));
+                    periodAverage += AVERAGE_WEIGHT * (period - periodAverage);
+                }
+                lastStepNs = previousTimestampNs;
+                onStepDetected(previousTimestampNs / Constants.TIMESTAMPS.NANOSECONDS_PER_MILLISECOND, previousValues);
+            }
+        }
+        rising = smoothed > previousSmoothed;
+        previousSmoothed = smoothed;
+        remember(timestampNs, x, y, z);
+    }
+
+    private void remember(long timestampNs, float x, float y, float z) {
+        previousTimestampNs = timestampNs;
+        previousValues[0] = x;
+        previousValues[1] = y;
+        previousValues[2] = z;
+    }
+}
@@ -0,0 +1,318 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+/**
+ * Runs several step detection algorithms side by side on the same sample stream, so
+ * they can be compared under real conditions from a single sensor subscription. Every
+ * sample is passed to each detector in turn, and for each detector the comparison keeps
+ * <ul>
+ *     <li>its step count;</li>
+ *     <li>the time spent in it, measured around each call. Steps reported during a call
+ *     are queued and handled after all detectors have seen the sample, so the time
+ *     excludes the matching and the listeners of the comparison;</li>
+ *     <li>its agreement with the reference detector, the first one: a step matches a
+ *     reference step if they are at most a tolerance apart, and the agreement is the
+ *     share of matched steps among the steps of both, {@code 2 * matched / (steps +
+ *     reference steps)};</li>
+ *     <li>its lag, the mean time by which its matched steps follow the reference steps.</li>
+ * </ul>
+ * The comparison is itself a {@link StepDetectorCore} that reports the steps of the
+ * reference detector, so it can replace that detector transparently. Steps are matched
+ * as they are reported, through small fixed queues of unmatched steps, so the comparison
+ * does not allocate once created.
+ */
+public class StepDetectorComparison extends StepDetectorCore {
+
+    /** Default tolerance between matching steps, in milliseconds. */
+    public static final long DEFAULT_TOLERANCE_MS = 250;
+
+    /** Most unmatched steps kept per detector; older ones count as disagreements. */
+    private static final int PENDING_CAPACITY = 32;
+
+    /**
+     * Unmatched step timestamps of one detector, oldest first.
+     */
+    private static class PendingSteps {
+        private final long[] timestamps = new long[PENDING_CAPACITY];
+        private int first = 0, size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(int k) {
+            int index = first + k;
+            return timestamps[index >= PENDING_CAPACITY ? index - PENDING_CAPACITY : index];
+        }
+
+        void clear() {
+            first = size = 0;
+        }
+
+        long peek() {
+            return timestamps[first];
+        }
+
+        void poll() {
+            first = first + 1 == PENDING_CAPACITY ? 0 : first + 1;
+            size--;
+        }
+
+        /**
+         * Adds a timestamp.
+         * @return true if the oldest timestamp had to be dropped to make room
+         */
+        boolean add(long timestamp) {
+            boolean dropped = false;
+            if (size == PENDING_CAPACITY) {
+                poll();
+                dropped = true;
+            }
+            int index = first + size;
+            timestamps[index >= PENDING_CAPACITY ? index - PENDING_CAPACITY : index] = timestamp;
+            size++;
+            return dropped;
+        }
+    }
+
+    private final String[] names;
+    private final StepDetectorCore[] detectors;
+    private final long toleranceMs;
+
+    private final long[] processingNs;
+    private long samples = 0;
+
+    /**
+     * Per detector other than the reference: the unmatched steps on both sides and the
+     * match counts. Entry 0 is unused.
+     */
+    private final PendingSteps[] pendingReference, pendingSteps;
+    private final long[] matched, unmatchedReference, unmatchedSteps, lagMs;
+
+    /**
+     * Per detector: the steps reported while processing the current sample, and for the
+     * reference, their values, reused.
+     */
+    private final PendingSteps[] reportedSteps;
+    private final float[][] reportedValues = new float[PENDING_CAPACITY][];
+
+    /**
+     * Creates a comparison with the default tolerance.
+     * @param names the names of the detectors, used in reports
+     * @param detectors the detectors; the first one is the reference
+     */
+    public StepDetectorComparison(String[] names, StepDetectorCore[] detectors) {
+        this(names, detectors, DEFAULT_TOLERANCE_MS);
+    }
+
+    /**
+     * Creates a comparison.
+     * @param names the names of the detectors, used in reports
+     * @param detectors the detectors; the first one is the reference
+     * @param toleranceMs the largest distance between matching steps, in milliseconds
+     */
+    public StepDetectorComparison(String[] names, StepDetectorCore[] detectors, long toleranceMs) {
+        if (detectors.length == 0 || names.length != detectors.length) {
+            throw new IllegalArgumentException("Every detector needs a name, and there must be at least one");
+        }
+        this.names = names.clone();
+        this.detectors = detectors.clone();
+        this.toleranceMs = toleranceMs;
+        int count = detectors.length;
+        processingNs = new long[count];
+        pendingReference = new PendingSteps[count];
+        pendingSteps = new PendingSteps[count];
+        matched = new long[count];
+        unmatchedReference = new long[count];
+        unmatchedSteps = new long[count];
+        lagMs = new long[count];
+        reportedSteps = new PendingSteps[count];
+        for (int i = 0; i < count; i++) {
+            reportedSteps[i] = new PendingSteps();
+        }
+        for (int i = 1; i < count; i++) {
+            pendingReference[i] = new PendingSteps();
+            pendingSteps[i] = new PendingSteps();
+        }
+
+        this.detectors[0].registerOnStepListener(new OnStepListener() {
+            @Override
+            public void onStepCountUpdated(int stepCount) {
+                // the comparison keeps its own count
+            }
+
+            @Override
+            public void onStepDetected(long timestamp, float[] values) {
+                int slot = reportedSteps[0].size();
+                if (slot < PENDING_CAPACITY) {
+                    float[] copy = reportedValues[slot];
+                    if (copy == null || copy.length != values.length) {
+                        reportedValues[slot] = values.clone();
+                    } else {
+                        System.arraycopy(values, 0, copy, 0, values.length);
+                    }
+                    reportedSteps[0].add(timestamp);
+                }
+            }
+        });
+        for (int i = 1; i < count; i++) {
+            final int index = i;
+            this.detectors[i].registerOnStepListener(new OnStepListener() {
+                @Override
+                public void onStepCountUpdated(int stepCount) {
+                    // only the timestamps are needed
+                }
+
+                @Override
+                public void onStepDetected(long timestamp, float[] values) {
+                    reportedSteps[index].add(timestamp);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void process(long timestampNs, float x, float y, float z) {
+        samples++;
+        long start = System.nanoTime();
+        for (int i = 0; i < detectors.length; i++) {
+            detectors[i].process(timestampNs, x, y, z);
+            long end = System.nanoTime();
+            processingNs[i] += end - start;
+            start = end;
+        }
+        dispatchReportedSteps();
+    }
+
+    /**
+     * Matches the steps reported for the current sample and passes the reference steps
+     * on to the listeners of the comparison, in the order the detectors reported them.
+     */
+    private void dispatchReportedSteps() {
+        PendingSteps reference = reportedSteps[0];
+        for (int k = 0; k < reference.size(); k++) {
+            long timestamp = reference.get(k);
+            for (int i = 1; i < detectors.length; i++) {
+                onReferenceStep(i, timestamp);
+            }
+            onStepDetected(timestamp, reportedValues[k]);
+        }
+        reference.clear();
+        for (int i = 1; i < detectors.length; i++) {
+            PendingSteps steps = reportedSteps[i];
+            for (int k = 0; k < steps.size(); k++) {
+                onComparedStep(i, steps.get(k));
+            }
+            steps.clear();
+        }
+    }
+
+    /*
+     * Steps of each detector arrive in time order, so once one side reports a step at t,
+     * unmatched steps of the other side before t - tolerance can never be matched.
+     * Matching every step to the earliest unmatched step within the tolerance then gives
+     * the largest number of matches.
+     */
+
+    private void onReferenceStep(int i, long timestamp) {
+        PendingSteps other = pendingSteps[i];
+        while (!other.isEmpty() && other.peek() < timestamp - toleranceMs) {
+            other.poll();
+            unmatchedSteps[i]++;
+        }
+        if (!other.isEmpty() && other.peek() <= timestamp + toleranceMs) {
+            lagMs[i] += other.peek() - timestamp;
+            other.poll();
+            matched[i]++;
+        } else if (pendingReference[i].add(timestamp)) {
+            unmatchedReference[i]++;
+        }
+    }
+
+    private void onComparedStep(int i, long timestamp) {
+        PendingSteps reference = pendingReference[i];
+        while (!reference.isEmpty() && reference.peek() < timestamp - toleranceMs) {
+            reference.poll();
+            unmatchedReference[i]++;
+        }
+        if (!reference.isEmpty() && reference.peek() <= timestamp + toleranceMs) {
+            lagMs[i] += timestamp - reference.peek();
+            reference.poll();
+            matched[i]++;
+        } else if (pendingSteps[i].add(timestamp)) {
+            unmatchedSteps[i]++;
+        }
+    }
+
+    /**
+     * Returns the number of detectors compared.
+     * @return the detector count
+     */
+    public int getDetectorCount() {
+        return detectors.length;
+    }
+
+    /**
+     * Returns the name of a detector.
+     * @param i the index of the detector, 0 for the reference
+     * @return the name
+     */
+    public String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * Returns the names of all detectors.
+     * @return a copy of the names, the reference first
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * Returns the number of steps a detector found.
+     * @param i the index of the detector, 0 for the reference
+     * @return the step count
+     */
+    public int getStepCount(int i) {
+        return detectors[i].getStepCount();
+    }
+
+    /**
+     * Returns the mean time a detector spends on a sample.
+     * @param i the index of the detector, 0 for the reference
+     * @return the time in nanoseconds, or NaN before the first sample
+     */
+    public double getNanosPerSample(int i) {
+        return processingNs[i] / (double) samples;
+    }
+
+    /**
+     * Returns the agreement of a detector with the reference.
+     * @param i the index of the detector, 0 for the reference
+     * @return the share of matched steps among the resolved steps of both detectors, 1
+     * for the reference itself, or NaN before any step was resolved
+     */
+    public double getAgreement(int i) {
+        if (i == 0) {
+            return 1;
+        }
+        return 2.0 * matched[i] / (2 * matched[i] + unmatchedReference[i] + unmatchedSteps[i]);
+    }
+
+    /**
+     * Returns the mean lag of a detector behind the reference.
+     * @param i the index of the detector, 0 for the reference
+     * @return the lag in milliseconds, negative if the detector is ahead of the reference,
+     * or NaN before any step matched
+     */
+    public double getMeanLagMs(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        return lagMs[i] / (double) matched[i];
+    }
+}
@@ -0,0 +1,80 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+import java.util.ArrayList;
+
+/**
+ * Platform-independent base class of the step detection algorithms. An algorithm
+ * receives accelerometer samples through {@link #process(long, float, float, float)}
+ * and reports steps to the registered {@link OnStepListener step listeners}.
+ * <br><br>
+ * Implementations depend on nothing but the JDK, so they run unchanged inside
+ * {@link StepDetector}, which adapts them to Android sensor events, and on a desktop
+ * JVM, e.g. through {@code TraceReplay} in the unit test sources.
+ */
+public abstract class StepDetectorCore {
+
+    /** Maintains the set of listeners registered to handle step events. **/
+    private final ArrayList<OnStepListener> mStepListeners = new ArrayList<>();
+
+    /**
+     * The number of steps taken.
+     */
+    private int stepCount = 0;
+
+    /**
+     * Processes a single accelerometer sample. Samples must be passed in timestamp order.
+     * @param timestampNs the time of the sample in nanoseconds, e.g. {@code SensorEvent.timestamp}
+     * @param x the acceleration along the x axis, in m/s^2
+     * @param y the acceleration along the y axis, in m/s^2
+     * @param z the acceleration along the z axis, in m/s^2
+     */
+    public abstract void process(long timestampNs, float x, float y, float z);
+
+    /**
+     * Registers a step listener for handling step events.
+     * @param stepListener defines how step events are handled.
+     */
+    public void registerOnStepListener(final OnStepListener stepListener){
+        mStepListeners.add(stepListener);
+    }
+
+    /**
+     * Unregisters the specified step listener.
+     * @param stepListener the listener to be unregistered. It must already be registered.
+     */
+    public void unregisterOnStepListener(final OnStepListener stepListener){
+        mStepListeners.remove(stepListener);
+    }
+
+    /**
+     * Unregisters all step listeners.
+     */
+    public void unregisterOnStepListeners(){
+        mStepListeners.clear();
+    }
+
+    /**
+     * Returns the number of steps detected so far.
+     * @return the step count
+     */
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * This method is called when a step is detected. It updates the current step count,
+     * notifies all listeners that a step has occurred and also notifies all listeners
+     * of the current step count. Implementations may reuse the values array for every
+     * step, so listeners must copy it if they keep it beyond the call.
+     * @param timestamp the time of the step in milliseconds
+     * @param values the acceleration at the step
+     */
+    protected void onStepDetected(long timestamp, float[] values){
+        stepCount++;
+        for (int i = 0; i < mStepListeners.size(); i++){
+            OnStepListener stepListener = mStepListeners.get(i);
+            stepListener.onStepDetected(timestamp, values);
+            stepListener.onStepCountUpdated(stepCount);
+        }
+    }
+}
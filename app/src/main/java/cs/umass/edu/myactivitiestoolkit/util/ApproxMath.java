@@ -0,0 +1,223 @@
+package cs.umass.edu.myactivitiestoolkit.util;
+
+/**
+ * Table-driven approximations of {@link Math#log(double)}, {@link Math#cos(double)},
+ * {@link Math#sin(double)} and {@link Math#atan2(double, double)} for hot loops,
+ * e.g. the distances of the clustering code, where the platform implementations are
+ * not intrinsified on older Android runtimes. Each function looks up the nearest entry
+ * of a small precomputed table and corrects it with a short polynomial in the
+ * remaining offset, so the result stays close to full double precision:
+ * <ul>
+ *     <li>{@link #log(double)}: relative error below 5e-16, also for x close to 1,
+ *     where log(x) is close to 0. Zero, negative, subnormal, infinite and NaN inputs
+ *     are passed on to {@link Math#log}.</li>
+ *     <li>{@link #cos(double)} and {@link #sin(double)}: absolute error below 5e-16
+ *     for |x| up to 1e4; the argument is reduced modulo 2 pi in three parts, so
+ *     the error grows only slowly beyond that.
+ *     Near zero the cosine is exact to the last bit, so {@code 1 - cos(x)} keeps its
+ *     relative accuracy for tiny angles.</li>
+ *     <li>{@link #atan2(double, double)}: absolute error below 1e-15.</li>
+ * </ul>
+ * The bounds are checked by {@code ApproxMathTest}, and {@code ApproxMathBenchmark}
+ * compares the speed with {@link Math}; where the runtime has an intrinsic, as for log
+ * on a desktop JVM, {@link Math} can be faster. The approximations are opt-in: each
+ * call site decides whether it may use them, see e.g.
+ * {@link cs.umass.edu.myactivitiestoolkit.location.GPSLocation#APPROXIMATE_DISTANCE}.
+ */
+public final class ApproxMath {
+
+    /** Number of mantissa bits used to index the log table. */
+    private static final int LOG_TABLE_BITS = 10;
+
+    private static final int LOG_TABLE_SIZE = 1 << LOG_TABLE_BITS;
+
+    /**
+     * First table index whose mantissa lies above sqrt(2). From there on the mantissa
+     * is halved, so that it lies in [sqrt(1/2), sqrt(2)) and the table values do not
+     * cancel against the power of two.
+     */
+    private static final int LOG_HALVING_INDEX = (int) Math.ceil((Math.sqrt(2) - 1) * LOG_TABLE_SIZE);
+
+    /**
+     * log(m_i) and 1/m_i for m_i = 1 + i / LOG_TABLE_SIZE; the logarithm is that of
+     * m_i / 2 from {@link #LOG_HALVING_INDEX} on.
+     */
+    private static final double[] LOG_TABLE = new double[LOG_TABLE_SIZE];
+    private static final double[] LOG_INVERSE = new double[LOG_TABLE_SIZE];
+
+    /** Inputs within this distance of 1 skip the table, see {@link #log(double)}. */
+    private static final double LOG_NEAR_ONE = 1.0 / LOG_TABLE_SIZE;
+
+    /** log(2) split into a head with its low 32 mantissa bits cleared, so that e * LN2_HI is exact, and the remainder. */
+    private static final double LN2_HI = Double.longBitsToDouble(
+            Double.doubleToRawLongBits(Math.log(2)) & 0xffffffff00000000L);
+    private static final double LN2_LO = Math.log(2) - LN2_HI;
+
+    /** Number of steps per full turn in the sine/cosine tables. */
+    private static final int TRIG_TABLE_SIZE = 1024;
+
+    private static final double[] COS_TABLE = new double[TRIG_TABLE_SIZE];
+    private static final double[] SIN_TABLE = new double[TRIG_TABLE_SIZE];
+
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private static final double STEPS_PER_RADIAN = TRIG_TABLE_SIZE / TWO_PI;
+
+    /**
+     * The table step 2 pi / 1024 in three parts: a head with its low 32 mantissa bits
+     * cleared, so that k * STEP_HI is exact for any realistic k, the rest of the double
+     * closest to 2 pi / 1024, and the difference between that double and 2 pi / 1024
+     * (2 pi exceeds {@code 2 * Math.PI} by 2.4492935982947064e-16).
+     */
+    private static final double STEP_HI = Double.longBitsToDouble(
+            Double.doubleToRawLongBits(TWO_PI / TRIG_TABLE_SIZE) & 0xffffffff00000000L);
+    private static final double STEP_MID = TWO_PI / TRIG_TABLE_SIZE - STEP_HI;
+    private static final double STEP_LO = 2.4492935982947064e-16 / TRIG_TABLE_SIZE;
+
+    /** Spacing of the atan table on [0, 1]. */
+    private static final int ATAN_TABLE_SIZE = 64;
+
+    private static final double[] ATAN_TABLE = new double[ATAN_TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i < LOG_TABLE_SIZE; i++) {
+            double m = 1.0 + (double) i / LOG_TABLE_SIZE;
+            LOG_TABLE[i] = Math.log(i >= LOG_HALVING_INDEX ? m * 0.5 : m);
+            LOG_INVERSE[i] = 1.0 / m;
+        }
+        // only the angles of the first octant are evaluated, where they are small and
+        // accurate; the rest of the turn follows by symmetry
+        int quarter = TRIG_TABLE_SIZE / 4;
+        for (int j = 0; j <= quarter / 2; j++) {
+            double angle = j * (Math.PI / 2 / quarter);
+            double c = Math.cos(angle), s = Math.sin(angle);
+            setTrigTable(j, c, s);
+            setTrigTable(quarter - j, s, c);
+        }
+        for (int i = 0; i <= ATAN_TABLE_SIZE; i++) {
+            ATAN_TABLE[i] = Math.atan((double) i / ATAN_TABLE_SIZE);
+        }
+    }
+
+    private ApproxMath() {
+        // static methods only
+    }
+
+    /** Stores cos and sin of table angle j, for j in the first quadrant, and the other three quadrants. */
+    private static void setTrigTable(int j, double c, double s) {
+        int quarter = TRIG_TABLE_SIZE / 4;
+        for (int q = 0; q < 4; q++) {
+            int i = (j + q * quarter) & (TRIG_TABLE_SIZE - 1);
+            COS_TABLE[i] = c;
+            SIN_TABLE[i] = s;
+            // rotate by a quarter turn: (c, s) -> (-s, c)
+            double t = c;
+            c = -s;
+            s = t;
+        }
+    }
+
+    /**
+     * Approximates the natural logarithm. The input is split into a power of two and
+     * a mantissa m in [sqrt(1/2), sqrt(2)); m is rounded down to the nearest table entry
+     * m_i and log(m / m_i) is evaluated as a short series in r = m / m_i - 1,
+     * |r| &lt; 2^-10. Within 2^-10 of 1, where the table value and the power of two would
+     * cancel, the series is evaluated directly in r = x - 1, which is then exact.
+     * @param x the argument
+     * @return an approximation of ln(x)
+     */
+    public static double log(double x) {
+        if (!(x > 0) || x == Double.POSITIVE_INFINITY || x < Double.MIN_NORMAL) {
+            return Math.log(x);
+        }
+        if (Math.abs(x - 1) < LOG_NEAR_ONE) {
+            return log1pSeries(x - 1);
+        }
+        long bits = Double.doubleToRawLongBits(x);
+        int exponent = (int) ((bits >>> 52) & 0x7ff) - 1023;
+        long mantissaBits = bits & 0xfffffffffffffL;
+        double m = Double.longBitsToDouble(mantissaBits | 0x3ff0000000000000L);
+        int i = (int) (mantissaBits >>> (52 - LOG_TABLE_BITS));
+        double r = (m - (1.0 + (double) i / LOG_TABLE_SIZE)) * LOG_INVERSE[i];
+        if (i >= LOG_HALVING_INDEX) {
+            exponent++;
+        }
+        return (exponent * LN2_HI + LOG_TABLE[i]) + (log1pSeries(r) + exponent * LN2_LO);
+    }
+
+    /**
+     * Evaluates log(1 + r) = r - r^2/2 + r^3/3 - ... + r^7/7 for |r| &lt; 2^-10, where
+     * the first omitted term is below 2^-73 |r|.
+     */
+    private static double log1pSeries(double r) {
+        return r - r * r * (0.5 - r * (1.0 / 3 - r * (0.25 - r * (0.2 - r * (1.0 / 6 - r * (1.0 / 7))))));
+    }
+
+    /**
+     * Approximates the cosine. The argument is rounded to the nearest of 1024 table
+     * angles a and cos(a + d) is expanded with short Taylor series in |d| &lt;= pi/1024.
+     * The table angle is subtracted in three parts, so that d is accurate even when x
+     * is many turns away from zero.
+     * @param x the angle in radians
+     * @return an approximation of cos(x)
+     */
+    public static double cos(double x) {
+        double steps = x * STEPS_PER_RADIAN;
+        long k = Math.round(steps);
+        double d = ((x - k * STEP_HI) - k * STEP_MID) - k * STEP_LO;
+        int i = (int) (k & (TRIG_TABLE_SIZE - 1));
+        double d2 = d * d;
+        double cosD = 1 - d2 * (0.5 - d2 * (1.0 / 24 - d2 * (1.0 / 720)));
+        double sinD = d * (1 - d2 * (1.0 / 6 - d2 * (1.0 / 120)));
+        return COS_TABLE[i] * cosD - SIN_TABLE[i] * sinD;
+    }
+
+    /**
+     * Approximates the sine, see {@link #cos(double)}.
+     * @param x the angle in radians
+     * @return an approximation of sin(x)
+     */
+    public static double sin(double x) {
+        double steps = x * STEPS_PER_RADIAN;
+        long k = Math.round(steps);
+        double d = ((x - k * STEP_HI) - k * STEP_MID) - k * STEP_LO;
+        int i = (int) (k & (TRIG_TABLE_SIZE - 1));
+        double d2 = d * d;
+        double cosD = 1 - d2 * (0.5 - d2 * (1.0 / 24 - d2 * (1.0 / 720)));
+        double sinD = d * (1 - d2 * (1.0 / 6 - d2 * (1.0 / 120)));
+        return SIN_TABLE[i] * cosD + COS_TABLE[i] * sinD;
+    }
+
+    /**
+     * Approximates the four-quadrant arctangent. After folding the ratio into [0, 1],
+     * atan(z) = atan(c) + atan((z - c) / (1 + z c)) where c is the nearest table point,
+     * leaving an argument below 1/128 for a short odd series.
+     * @param y the ordinate
+     * @param x the abscissa
+     * @return an approximation of atan2(y, x), in [-pi, pi]
+     */
+    public static double atan2(double y, double x) {
+        if (Double.isNaN(x) || Double.isNaN(y) || Double.isInfinite(x) || Double.isInfinite(y)) {
+            return Math.atan2(y, x);
+        }
+        double ax = Math.abs(x), ay = Math.abs(y);
+        if (ax == 0 && ay == 0) {
+            return Math.atan2(y, x);
+        }
+        boolean swapped = ay > ax;
+        double z = swapped ? ax / ay : ay / ax;
+        int i = (int) (z * ATAN_TABLE_SIZE + 0.5);
+        double c = (double) i / ATAN_TABLE_SIZE;
+        double t = (z - c) / (1 + z * c);
+        double t2 = t * t;
+        // atan(t) = t - t^3/3 + t^5/5 - t^7/7
+        double angle = ATAN_TABLE[i] + t * (1 - t2 * (1.0 / 3 - t2 * (0.2 - t2 * (1.0 / 7))));
+        if (swapped) {
+            angle = Math.PI / 2 - angle;
+        }
+        if (x < 0) {
+            angle = Math.PI - angle;
+        }
+        return (y < 0 || (y == 0 && 1 / y < 0)) ? -angle : angle;
+    }
+}
@@ -15,7 +15,10 @@ public class Interpolator {
      * @param data the list of data points.
      * @param nResampled the length of the interpolated series.
      * @return the interpolated data series, an array of doubles of length nResampled
+     * @deprecated requires the whole series up front and truncates timestamps to int;
+     * use {@link Resampler} to resample streams online.
      */
+    @Deprecated
     public static double[] linearInterpolate(long[] timestamps, double[] data, int nResampled){
         int n = data.length;
         int k = 1;
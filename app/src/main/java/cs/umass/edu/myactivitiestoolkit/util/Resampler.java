@@ -0,0 +1,254 @@
+package cs.umass.edu.myactivitiestoolkit.util;
+
+/**
+ * Streaming resampler that turns irregularly timestamped samples, such as Android
+ * sensor events, into a uniformly spaced series. Samples are pushed one at a time
+ * (or in blocks) and every output sample is handed to a {@link OnResampledListener}
+ * as soon as it can be computed, so whole windows never have to be buffered.
+ * <br><br>
+ * Two interpolation modes are supported:
+ * <ul>
+ *     <li>{@link Mode#LINEAR} interpolates between the two samples surrounding each
+ *     output time and emits output without delay.</li>
+ *     <li>{@link Mode#CUBIC} uses a cubic Hermite spline whose tangents are the
+ *     three-point derivatives at the neighbouring samples, so quadratics are
+ *     reproduced exactly even on an irregular grid (the Catmull-Rom tangent is only
+ *     exact for evenly spaced samples). It needs one sample of look-ahead, so output
+ *     lags the input by one sample.</li>
+ * </ul>
+ * Only the last four input samples are kept, so the state is constant in size and
+ * nothing is allocated after construction. Timestamps may be in any unit (e.g.
+ * milliseconds or nanoseconds) as long as the output period uses the same unit; they
+ * are kept as {@code long}s throughout. Samples whose timestamp does not advance are
+ * dropped.
+ *
+ * @see Interpolator
+ */
+public class Resampler {
+
+    /** The interpolation method. */
+    public enum Mode {
+        LINEAR,
+        CUBIC
+    }
+
+    /**
+     * Receives the uniformly spaced output of a {@link Resampler}.
+     */
+    public interface OnResampledListener {
+        /**
+         * Called for each output sample.
+         * @param timestamp the output time, in the unit of the input timestamps
+         * @param values one value per channel. The array is reused by the resampler,
+         *               so copy it if it must outlive the call.
+         */
+        void onResampled(long timestamp, double[] values);
+    }
+
+    private static final int HISTORY = 4;
+
+    private final Mode mode;
+
+    private final double period;
+
+    private final int numChannels;
+
+    private final OnResampledListener listener;
+
+    /** The last four input timestamps, oldest first. */
+    private final long[] times = new long[HISTORY];
+
+    /** The last four input samples, [history][channel], oldest first. */
+    private final double[][] values;
+
+    /** Reused output buffer. */
+    private final double[] output;
+
+    /** Number of input samples received, saturating at {@link #HISTORY}. */
+    private int received = 0;
+
+    private long startTime;
+
+    private long outputIndex;
+
+    /**
+     * Creates a resampler.
+     * @param period the spacing of the output samples, in the unit of the input timestamps
+     * @param mode the interpolation mode
+     * @param numChannels the number of values per sample
+     * @param listener receives the output samples
+     */
+    public Resampler(double period, Mode mode, int numChannels, OnResampledListener listener) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Output period must be positive");
+        }
+        this.period = period;
+        this.mode = mode;
+        this.numChannels = numChannels;
+        this.listener = listener;
+        this.values = new double[HISTORY][numChannels];
+        this.output = new double[numChannels];
+    }
+
+    public int getNumChannels() {
+        return numChannels;
+    }
+
+    public double getPeriod() {
+        return period;
+    }
+
+    /**
+     * Pushes a single-channel sample.
+     * @param timestamp the sample time
+     * @param value the sample value
+     */
+    public void push(long timestamp, double value) {
+        if (!accept(timestamp)) {
+            return;
+        }
+        values[HISTORY - 1][0] = value;
+        advance();
+    }
+
+    /**
+     * Pushes a multi-channel sample.
+     * @param timestamp the sample time
+     * @param sample one value per channel
+     */
+    public void push(long timestamp, float[] sample) {
+        if (!accept(timestamp)) {
+            return;
+        }
+        double[] latest = values[HISTORY - 1];
+        for (int c = 0; c < numChannels; c++) {
+            latest[c] = sample[c];
+        }
+        advance();
+    }
+
+    /**
+     * Pushes a block of single-channel samples.
+     * @param timestamps the sample times
+     * @param samples the sample values
+     * @param offset index of the first sample
+     * @param length number of samples
+     */
+    public void push(long[] timestamps, double[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            push(timestamps[i], samples[i]);
+        }
+    }
+
+    /**
+     * Forgets all input, e.g. after a gap in the stream. The next sample starts a new
+     * output grid.
+     */
+    public void reset() {
+        received = 0;
+    }
+
+    /**
+     * Shifts the history by one and stores the new timestamp. The caller fills in the
+     * newest values afterwards.
+     */
+    private boolean accept(long timestamp) {
+        if (received > 0 && timestamp <= times[HISTORY - 1]) {
+            return false;
+        }
+        double[] oldest = values[0];
+        for (int i = 0; i < HISTORY - 1; i++) {
+            times[i] = times[i + 1];
+            values[i] = values[i + 1];
+        }
+        values[HISTORY - 1] = oldest;
+        times[HISTORY - 1] = timestamp;
+        return true;
+    }
+
+    private void advance() {
+        if (received == 0) {
+            startTime = times[HISTORY - 1];
+            outputIndex = 0;
+            // Pad the history with copies of the first sample
+            for (int i = 0; i < HISTORY - 1; i++) {
+                times[i] = startTime;
+                System.arraycopy(values[HISTORY - 1], 0, values[i], 0, numChannels);
+            }
+        }
+        if (received < HISTORY) {
+            received++;
+        }
+
+        if (mode == Mode.LINEAR) {
+            if (received >= 2) {
+                emitBetween(2, 3);
+            } else {
+                emitAt(3);
+            }
+        } else {
+            // The interval between the 2nd and 3rd newest samples now has both neighbours
+            if (received >= 3) {
+                emitBetween(1, 2);
+            } else if (received == 1) {
+                emitAt(3);
+            }
+        }
+    }
+
+    /** Emits the output sample that coincides with the given history entry, if due. */
+    private void emitAt(int i) {
+        long t = nextOutputTime();
+        if (t <= times[i]) {
+            System.arraycopy(values[i], 0, output, 0, numChannels);
+            listener.onResampled(t, output);
+            outputIndex++;
+        }
+    }
+
+    /** Emits every output sample falling in the interval (times[a], times[b]]. */
+    private void emitBetween(int a, int b) {
+        long t1 = times[a], t2 = times[b];
+        double h = t2 - t1;
+        long t = nextOutputTime();
+        while (t <= t2) {
+            if (t >= t1) {
+                double s = (t - t1) / h;
+                if (mode == Mode.LINEAR) {
+                    double[] p1 = values[a], p2 = values[b];
+                    for (int c = 0; c < numChannels; c++) {
+                        output[c] = p1[c] + s * (p2[c] - p1[c]);
+                    }
+                } else {
+                    interpolateCubic(s, h);
+                }
+                listener.onResampled(t, output);
+            }
+            outputIndex++;
+            t = nextOutputTime();
+        }
+    }
+
+    private void interpolateCubic(double s, double h) {
+        long t0 = times[0], t1 = times[1], t2 = times[2], t3 = times[3];
+        double[] p0 = values[0], p1 = values[1], p2 = values[2], p3 = values[3];
+        double s2 = s * s, s3 = s2 * s;
+        double h00 = 2 * s3 - 3 * s2 + 1;
+        double h10 = s3 - 2 * s2 + s;
+        double h01 = -2 * s3 + 3 * s2;
+        double h11 = s3 - s2;
+        double h0 = t1 - t0, h2 = t3 - t2;
+        for (int c = 0; c < numChannels; c++) {
+            // Three-point derivatives: the slopes on either side weighted by the opposite
+            // interval, which are exact for quadratics however the samples are spaced
+            double d1 = (p2[c] - p1[c]) / h;
+            double m1 = h0 > 0 ? (h * (p1[c] - p0[c]) / h0 + h0 * d1) / (h0 + h) : d1;
+            double m2 = h2 > 0 ? (h2 * d1 + h * (p3[c] - p2[c]) / h2) / (h + h2) : d1;
+            output[c] = h00 * p1[c] + h10 * h * m1 + h01 * p2[c] + h11 * h * m2;
+        }
+    }
+
+    private long nextOutputTime() {
+        return startTime + Math.round(outputIndex * period);
+    }
+}
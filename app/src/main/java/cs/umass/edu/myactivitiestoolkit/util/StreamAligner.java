@@ -0,0 +1,288 @@
+package cs.umass.edu.myactivitiestoolkit.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Aligns several sensor streams that are timestamped by different clocks and emits
+ * synchronized multi-channel frames at a fixed rate.
+ * <br><br>
+ * The streams in this application each use their own time base: the phone
+ * accelerometer reports nanoseconds since boot, the PPG sensor and the Band report
+ * wall-clock milliseconds, and GPS fixes carry satellite UTC time. Each stream is
+ * registered with the unit of its timestamps, and every sample is pushed together with
+ * the time it arrived on a common monotonic clock (e.g.
+ * {@code SystemClock.elapsedRealtime()}). For each stream the aligner tracks the offset
+ * between the source clock and the common clock as the smallest observed
+ * {@code arrival - source} difference, which is the sample with the least delivery
+ * latency. A slow upward creep lets the estimate follow clock drift. Sample times are
+ * therefore mapped onto the common timeline without any cooperation from the sources.
+ * <br><br>
+ * Frames lie on a grid of multiples of the frame period. A frame is emitted as soon as
+ * every stream has delivered a sample at or after the frame time, so its value can be
+ * interpolated. A stream that is slower or sparser than that, such as GPS, does not stall
+ * the output: once the newest arrival is more than the lateness tolerance past the frame
+ * time, the frame is emitted with the last known value of the late stream. Streams that
+ * have not delivered anything yet contribute {@link Double#NaN}.
+ * <br><br>
+ * Each stream keeps its samples in a fixed-capacity ring buffer; when a stream outpaces
+ * the frame rate by more than the capacity, its oldest samples are dropped. Nothing is
+ * allocated per sample or per frame.
+ */
+public class StreamAligner {
+
+    /**
+     * Receives the aligned frames.
+     */
+    public interface OnFrameListener {
+        /**
+         * Called for each aligned frame.
+         * @param timestamp the frame time on the common clock, in milliseconds
+         * @param values the channels of all streams, concatenated in registration order.
+         *               The array is reused, so copy it if it must outlive the call.
+         */
+        void onFrame(long timestamp, double[] values);
+    }
+
+    /** Fraction by which an offset estimate creeps towards larger observations. */
+    private static final double OFFSET_CREEP = 0.001;
+
+    private final long framePeriod;
+
+    private final long latenessTolerance;
+
+    private final int capacity;
+
+    private final OnFrameListener listener;
+
+    private final ArrayList<Stream> streams = new ArrayList<>();
+
+    private double[] frame = new double[0];
+
+    /** Time of the next frame to emit, or Long.MIN_VALUE before the first sample. */
+    private long nextFrameTime = Long.MIN_VALUE;
+
+    /** The latest arrival time seen, on the common clock. */
+    private long latestArrival = Long.MIN_VALUE;
+
+    /**
+     * Creates an aligner.
+     * @param framePeriod the spacing of the output frames, in milliseconds
+     * @param latenessTolerance how long, in milliseconds, to wait for a late stream
+     *                          before emitting a frame with its last known value
+     * @param capacity the number of samples buffered per stream
+     * @param listener receives the aligned frames
+     */
+    public StreamAligner(long framePeriod, long latenessTolerance, int capacity, OnFrameListener listener) {
+        if (framePeriod <= 0 || capacity < 2) {
+            throw new IllegalArgumentException("Frame period must be positive and capacity at least 2");
+        }
+        this.framePeriod = framePeriod;
+        this.latenessTolerance = latenessTolerance;
+        this.capacity = capacity;
+        this.listener = listener;
+    }
+
+    /**
+     * Registers a stream. All streams should be registered before the first sample.
+     * @param numChannels the number of values per sample
+     * @param unitsPerMillisecond the number of source timestamp units per millisecond,
+     *                            e.g. 1 for milliseconds and 1000000 for nanoseconds
+     * @return the identifier used to push samples of this stream
+     */
+    public int addStream(int numChannels, double unitsPerMillisecond) {
+        Stream stream = new Stream(numChannels, unitsPerMillisecond, capacity);
+        stream.frameOffset = frame.length;
+        streams.add(stream);
+        frame = new double[frame.length + numChannels];
+        return streams.size() - 1;
+    }
+
+    /**
+     * Returns the total number of channels in each frame.
+     * @return the frame width
+     */
+    public int getFrameSize() {
+        return frame.length;
+    }
+
+    /**
+     * Returns the current estimate of a stream's clock offset, i.e. the value added to
+     * its timestamps (converted to milliseconds) to obtain common-clock time.
+     * @param streamId the stream identifier
+     * @return the offset in milliseconds
+     */
+    public double getClockOffset(int streamId) {
+        return streams.get(streamId).offset;
+    }
+
+    /**
+     * Pushes a sample and emits every frame that has become ready.
+     * @param streamId the stream identifier returned by {@link #addStream(int, double)}
+     * @param sourceTimestamp the timestamp assigned by the source, in the stream's unit
+     * @param arrivalTime the time the sample was received on the common clock, in ms
+     * @param values one value per channel of the stream
+     */
+    public void push(int streamId, long sourceTimestamp, long arrivalTime, float[] values) {
+        Stream stream = streams.get(streamId);
+        long time = stream.toCommonTime(sourceTimestamp, arrivalTime);
+        stream.add(time, values);
+        if (arrivalTime > latestArrival) {
+            latestArrival = arrivalTime;
+        }
+        if (nextFrameTime == Long.MIN_VALUE) {
+            nextFrameTime = ceilToGrid(time);
+        }
+        emitReadyFrames();
+    }
+
+    /**
+     * Emits frames that are overdue because of a late stream, without waiting for the
+     * next sample. Call this periodically if the streams may fall silent.
+     * @param now the current time on the common clock, in ms
+     */
+    public void flush(long now) {
+        if (now > latestArrival) {
+            latestArrival = now;
+        }
+        emitReadyFrames();
+    }
+
+    /**
+     * Clears all buffered samples and clock estimates.
+     */
+    public void reset() {
+        for (Stream stream : streams) {
+            stream.clear();
+        }
+        nextFrameTime = Long.MIN_VALUE;
+        latestArrival = Long.MIN_VALUE;
+    }
+
+    private long ceilToGrid(long time) {
+        long q = time / framePeriod;
+        if (q * framePeriod < time) {
+            q++;
+        }
+        return q * framePeriod;
+    }
+
+    private void emitReadyFrames() {
+        if (nextFrameTime == Long.MIN_VALUE) {
+            return;
+        }
+        while (true) {
+            boolean forced = latestArrival - nextFrameTime >= latenessTolerance;
+            if (!forced) {
+                for (int i = 0; i < streams.size(); i++) {
+                    if (streams.get(i).latestTime() < nextFrameTime) {
+                        return;
+                    }
+                }
+            }
+            boolean any = false;
+            for (int i = 0; i < streams.size(); i++) {
+                any |= streams.get(i).sample(nextFrameTime, frame);
+            }
+            if (!any) {
+                return;
+            }
+            listener.onFrame(nextFrameTime, frame);
+            nextFrameTime += framePeriod;
+        }
+    }
+
+    /**
+     * Per-stream clock mapping and sample ring buffer.
+     */
+    private static class Stream {
+        final int numChannels;
+        final double unitsPerMillisecond;
+        final long[] times;
+        final float[] values;
+        int frameOffset;
+
+        /** Index of the oldest buffered sample and number of buffered samples. */
+        int head = 0, size = 0;
+
+        double offset;
+        boolean hasOffset = false;
+
+        Stream(int numChannels, double unitsPerMillisecond, int capacity) {
+            this.numChannels = numChannels;
+            this.unitsPerMillisecond = unitsPerMillisecond;
+            this.times = new long[capacity];
+            this.values = new float[capacity * numChannels];
+        }
+
+        long toCommonTime(long sourceTimestamp, long arrivalTime) {
+            double source = sourceTimestamp / unitsPerMillisecond;
+            double candidate = arrivalTime - source;
+            if (!hasOffset || candidate < offset) {
+                offset = candidate;
+                hasOffset = true;
+            } else {
+                offset += (candidate - offset) * OFFSET_CREEP;
+            }
+            return Math.round(source + offset);
+        }
+
+        void add(long time, float[] sample) {
+            // keep the buffer monotonic; a sample mapped before the newest one is dropped
+            if (size > 0 && time <= latestTime()) {
+                return;
+            }
+            if (size == times.length) {
+                head = (head + 1) % times.length;
+                size--;
+            }
+            int index = (head + size) % times.length;
+            times[index] = time;
+            System.arraycopy(sample, 0, values, index * numChannels, numChannels);
+            size++;
+        }
+
+        long latestTime() {
+            return size == 0 ? Long.MIN_VALUE : times[(head + size - 1) % times.length];
+        }
+
+        /**
+         * Writes the value at the given time into the frame, interpolating between the
+         * surrounding samples or holding the nearest one. Samples that can no longer be
+         * needed are discarded.
+         * @return true if the stream has any data
+         */
+        boolean sample(long time, double[] frame) {
+            if (size == 0) {
+                Arrays.fill(frame, frameOffset, frameOffset + numChannels, Double.NaN);
+                return false;
+            }
+            // drop samples while the next one is still at or before the frame time
+            while (size > 1 && times[(head + 1) % times.length] <= time) {
+                head = (head + 1) % times.length;
+                size--;
+            }
+            int a = head;
+            long ta = times[a];
+            if (size == 1 || time <= ta) {
+                for (int c = 0; c < numChannels; c++) {
+                    frame[frameOffset + c] = values[a * numChannels + c];
+                }
+                return true;
+            }
+            int b = (head + 1) % times.length;
+            double s = (double) (time - ta) / (times[b] - ta);
+            for (int c = 0; c < numChannels; c++) {
+                float va = values[a * numChannels + c], vb = values[b * numChannels + c];
+                frame[frameOffset + c] = va + s * (vb - va);
+            }
+            return true;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+            hasOffset = false;
+        }
+    }
+}
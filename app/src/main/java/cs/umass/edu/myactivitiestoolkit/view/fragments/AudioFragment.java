@@ -240,7 +240,7 @@ public class AudioFragment extends Fragment {
             }
         }
         int counter = 0;
-        for (int j = 0; j < height/2; j++) {
+        for (int j = 0; j < height; j++) {
             for (double[] row : spectrogram) {
                 rgbValues[counter++] = heatMap(min, max, row[j]);
             }
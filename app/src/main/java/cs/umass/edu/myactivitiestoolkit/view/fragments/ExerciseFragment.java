@@ -97,6 +97,12 @@ public class ExerciseFragment extends Fragment {
     /** Displays the step count computed by your server-side step detection algorithm. **/
     private TextView txtServerStepCount;
 
+    /** Displays how the local step detection algorithms compare, in evaluation mode. **/
+    private TextView txtStepDetectorComparison;
+
+    /** Displays the cadence, stride time variability and symmetry of the current walk. **/
+    private TextView txtGaitMetrics;
+
     /** Displays the activity identified by your server-side activity classification algorithm. **/
     private TextView txtActivity;
 
@@ -182,32 +188,39 @@ public class ExerciseFragment extends Fragment {
                         switchAccelerometer.setChecked(false);
                     }
                 } else if (intent.getAction().equals(Constants.ACTION.BROADCAST_ACCELEROMETER_DATA)) {
-                    long timestamp = intent.getLongExtra(Constants.KEY.TIMESTAMP, -1);
-                    float[] accelerometerValues = intent.getFloatArrayExtra(Constants.KEY.ACCELEROMETER_DATA);
-                    displayAccelerometerReading(accelerometerValues[0], accelerometerValues[1], accelerometerValues[2]);
-
-                    mTimestamps.add(timestamp);
-                    mXValues.add(accelerometerValues[0]);
-                    mYValues.add(accelerometerValues[1]);
-                    mZValues.add(accelerometerValues[2]);
+                    // the readings arrive in batches, see BroadcastCoalescer; redraw once per batch
+                    long[] timestamps = intent.getLongArrayExtra(Constants.KEY.TIMESTAMPS);
+                    float[] xValues = intent.getFloatArrayExtra(Constants.KEY.ACCELEROMETER_X);
+                    float[] yValues = intent.getFloatArrayExtra(Constants.KEY.ACCELEROMETER_Y);
+                    float[] zValues = intent.getFloatArrayExtra(Constants.KEY.ACCELEROMETER_Z);
+                    int last = timestamps.length - 1;
+                    displayAccelerometerReading(xValues[last], yValues[last], zValues[last]);
+
                     //Group 7
                     label_activity.put(1000, "Sitting");
                     label_activity.put(1001, "Walking");
                     label_activity.put(1002, "Running");
                     label_activity.put(1003, "Jumping");
 
-                    if (mNumberOfPoints >= GRAPH_CAPACITY) {
-                        mTimestamps.poll();
-                        mXValues.poll();
-                        mYValues.poll();
-                        mZValues.poll();
-                        while (mPeakTimestamps.size() > 0 && (mPeakTimestamps.peek().longValue() < mTimestamps.peek().longValue())){
-                            mPeakTimestamps.poll();
-                            mPeakValues.poll();
+                    for (int i = 0; i < timestamps.length; i++) {
+                        mTimestamps.add(timestamps[i]);
+                        mXValues.add(xValues[i]);
+                        mYValues.add(yValues[i]);
+                        mZValues.add(zValues[i]);
+
+                        if (mNumberOfPoints >= GRAPH_CAPACITY) {
+                            mTimestamps.poll();
+                            mXValues.poll();
+                            mYValues.poll();
+                            mZValues.poll();
+                            while (mPeakTimestamps.size() > 0 && (mPeakTimestamps.peek().longValue() < mTimestamps.peek().longValue())){
+                                mPeakTimestamps.poll();
+                                mPeakValues.poll();
+                            }
                         }
+                        else
+                            mNumberOfPoints++;
                     }
-                    else
-                        mNumberOfPoints++;
 
                     updatePlot();
                 } else if (intent.getAction().equals(Constants.ACTION.BROADCAST_ANDROID_STEP_COUNT)) {
@@ -225,6 +238,22 @@ public class ExerciseFragment extends Fragment {
                     int label = intent.getIntExtra(Constants.KEY.ACTIVITY, 0);
                     displayClassifierActivity(label);
                 }
+                else if (intent.getAction().equals(Constants.ACTION.BROADCAST_STEP_DETECTOR_COMPARISON)) {
+                    String[] names = intent.getStringArrayExtra(Constants.KEY.STEP_DETECTOR_NAMES);
+                    int[] stepCounts = intent.getIntArrayExtra(Constants.KEY.STEP_DETECTOR_COUNTS);
+                    double[] agreement = intent.getDoubleArrayExtra(Constants.KEY.STEP_DETECTOR_AGREEMENT);
+                    double[] lag = intent.getDoubleArrayExtra(Constants.KEY.STEP_DETECTOR_LAG);
+                    double[] processingTime = intent.getDoubleArrayExtra(Constants.KEY.STEP_DETECTOR_PROCESSING_TIME);
+                    displayStepDetectorComparison(names, stepCounts, agreement, lag, processingTime);
+                }
+                else if (intent.getAction().equals(Constants.ACTION.BROADCAST_GAIT_METRICS)) {
+                    double cadence = intent.getDoubleExtra(Constants.KEY.CADENCE, Double.NaN);
+                    double strideTimeMean = intent.getDoubleExtra(Constants.KEY.STRIDE_TIME_MEAN, Double.NaN);
+                    double strideTimeSd = intent.getDoubleExtra(Constants.KEY.STRIDE_TIME_SD, Double.NaN);
+                    double strideTimeCv = intent.getDoubleExtra(Constants.KEY.STRIDE_TIME_CV, Double.NaN);
+                    double symmetry = intent.getDoubleExtra(Constants.KEY.GAIT_SYMMETRY, Double.NaN);
+                    displayGaitMetrics(cadence, strideTimeMean, strideTimeSd, strideTimeCv, symmetry);
+                }
                 else if (intent.getAction().equals(Constants.ACTION.BROADCAST_ACCELEROMETER_PEAK)){
                     long timestamp = intent.getLongExtra(Constants.KEY.ACCELEROMETER_PEAK_TIMESTAMP, -1);
                     float[] values = intent.getFloatArrayExtra(Constants.KEY.ACCELEROMETER_PEAK_VALUE);
@@ -255,6 +284,8 @@ public class ExerciseFragment extends Fragment {
         txtAndroidStepCount = (TextView) view.findViewById(R.id.txtAndroidStepCount);
         txtLocalStepCount = (TextView) view.findViewById(R.id.txtLocalStepCount);
         txtServerStepCount = (TextView) view.findViewById(R.id.txtServerStepCount);
+        txtStepDetectorComparison = (TextView) view.findViewById(R.id.txtStepDetectorComparison);
+        txtGaitMetrics = (TextView) view.findViewById(R.id.txtGaitMetrics);
 
         //obtain reference to the activity text field
         txtActivity = (TextView) view.findViewById(R.id.txtActivity);
@@ -352,6 +383,8 @@ public class ExerciseFragment extends Fragment {
         filter.addAction(Constants.ACTION.BROADCAST_LOCAL_STEP_COUNT);
         filter.addAction(Constants.ACTION.BROADCAST_SERVER_STEP_COUNT);
         filter.addAction(Constants.ACTION.BROADCAST_ACTIVITY);
+        filter.addAction(Constants.ACTION.BROADCAST_STEP_DETECTOR_COMPARISON);
+        filter.addAction(Constants.ACTION.BROADCAST_GAIT_METRICS);
         broadcastManager.registerReceiver(receiver, filter);
     }
 
@@ -423,6 +456,54 @@ public class ExerciseFragment extends Fragment {
             }
         });
     }
+
+    /**
+     * Displays how the local step detection algorithms compare in evaluation mode: the step
+     * count and processing time per sample of each, and for all but the reference detector,
+     * its agreement with and lag behind the reference.
+     */
+    private void displayStepDetectorComparison(final String[] names, final int[] stepCounts, final double[] agreement,
+                                               final double[] lag, final double[] processingTime){
+        getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < names.length; i++) {
+                    if (i == 0) {
+                        text.append(String.format(Locale.getDefault(), getString(R.string.step_detector_comparison_reference),
+                                names[i], stepCounts[i], processingTime[i]));
+                    } else {
+                        text.append('\n').append(String.format(Locale.getDefault(), getString(R.string.step_detector_comparison),
+                                names[i], stepCounts[i], 100 * agreement[i], lag[i], processingTime[i]));
+                    }
+                }
+                txtStepDetectorComparison.setText(text);
+                txtStepDetectorComparison.setVisibility(View.VISIBLE);
+            }
+        });
+    }
+
+    /**
+     * Displays the gait metrics of the current walk: the cadence, and once two strides are
+     * known, the stride time, its coefficient of variation and the left-right symmetry.
+     */
+    private void displayGaitMetrics(final double cadence, final double strideTimeMean, final double strideTimeSd,
+                                    final double strideTimeCv, final double symmetry){
+        getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                StringBuilder text = new StringBuilder(String.format(Locale.getDefault(),
+                        getString(R.string.gait_cadence), cadence));
+                if (!Double.isNaN(strideTimeSd)) {
+                    text.append('\n').append(String.format(Locale.getDefault(), getString(R.string.gait_stride),
+                            strideTimeMean, strideTimeSd, 100 * strideTimeCv, symmetry));
+                }
+                txtGaitMetrics.setText(text);
+                txtGaitMetrics.setVisibility(View.VISIBLE);
+            }
+        });
+    }
+
     /** Group 7
      * Displays the activity generated by the classifier
      */
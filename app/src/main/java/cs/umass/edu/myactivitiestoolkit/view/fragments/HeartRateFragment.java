@@ -155,21 +155,24 @@ public class HeartRateFragment extends Fragment {
                     if (heartRate != -1)
                         displayHeartRate(heartRate);
                 } else if (intent.getAction().equals(Constants.ACTION.BROADCAST_PPG)){
-                    long timestamp = intent.getLongExtra(Constants.KEY.TIMESTAMP, -1);
-                    double ppg = intent.getDoubleExtra(Constants.KEY.PPG_DATA, -1);
-
-                    ppgTimestamps.add(timestamp);
-                    ppgValues.add(ppg);
-                    if (numberOfPoints >= GRAPH_CAPACITY) {
-                        ppgTimestamps.poll();
-                        ppgValues.poll();
-                        while (peakTimestamps.size() > 0 && (peakTimestamps.peek().longValue() < ppgTimestamps.peek().longValue())){
-                            peakTimestamps.poll();
-                            peakValues.poll();
+                    // the readings arrive in batches, see BroadcastCoalescer; redraw once per batch
+                    long[] timestamps = intent.getLongArrayExtra(Constants.KEY.TIMESTAMPS);
+                    float[] ppg = intent.getFloatArrayExtra(Constants.KEY.PPG_DATA);
+
+                    for (int i = 0; i < timestamps.length; i++) {
+                        ppgTimestamps.add(timestamps[i]);
+                        ppgValues.add(ppg[i]);
+                        if (numberOfPoints >= GRAPH_CAPACITY) {
+                            ppgTimestamps.poll();
+                            ppgValues.poll();
+                            while (peakTimestamps.size() > 0 && (peakTimestamps.peek().longValue() < ppgTimestamps.peek().longValue())){
+                                peakTimestamps.poll();
+                                peakValues.poll();
+                            }
                         }
+                        else
+                            numberOfPoints++;
                     }
-                    else
-                        numberOfPoints++;
 
                     updatePlot();
 
@@ -401,7 +401,8 @@ public class LocationsFragment extends Fragment {
      */
     private void runDBScan(GPSLocation[] locations, float eps, int minPts){
         //TODO: Cluster the locations by calling DBScan.
-        DBScan clustering = new DBScan(eps, minPts);
+        // the approximate distance is accurate to well below a meter, and cheaper to compute
+        DBScan<GPSLocation> clustering = new DBScan<>(eps, minPts, GPSLocation.APPROXIMATE_DISTANCE);
         List<GPSLocation> location_list = new ArrayList<GPSLocation>();
         for(GPSLocation loc: locations){
             location_list.add(loc);
@@ -0,0 +1,59 @@
+package cs.umass.edu.myactivitiestoolkit.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import cs.umass.edu.myactivitiestoolkit.processing.FFT;
+import cs.umass.edu.myactivitiestoolkit.processing.SpectralPlan;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link MFCC#cepstrum(float[], float[])} against the double-precision
+ * {@link MFCC#cepstrum(double[], double[])}, on frames prepared as in
+ * {@link MFCCFeatureExtractor}: 8000 samples of 16-bit audio, Hamming-windowed and
+ * zero-padded to an 8192-point FFT.
+ */
+public class MFCCTest {
+
+    private static final int FFT_SIZE = 8192;
+    private static final int SAMPLE_RATE = 8000;
+
+    /** Largest difference of a cepstral coefficient between the float and double paths. */
+    private static final double TOLERANCE = 1e-4;
+
+    @Test
+    public void floatCepstrumMatchesDouble() {
+        MFCC mfcc = new MFCC(FFT_SIZE, 12, 20, SAMPLE_RATE);
+        SpectralPlan plan = SpectralPlan.getInstance(FFT_SIZE, SAMPLE_RATE, SpectralPlan.Window.HAMMING);
+        FFT fft = plan.getFFT();
+        Random random = new Random(12);
+        int bins = FFT_SIZE / 2 + 1;
+        for (int trial = 0; trial < 5; trial++) {
+            double[] frame = new double[FFT_SIZE];
+            float[] frameF = new float[FFT_SIZE];
+            double f0 = 100 + 300 * random.nextDouble();
+            for (int i = 0; i < SAMPLE_RATE; i++) {
+                double t = (double) i / SAMPLE_RATE;
+                double sample = 6000 * Math.sin(2 * Math.PI * f0 * t) + 3000 * Math.sin(2 * Math.PI * 3 * f0 * t)
+                        + 500 * random.nextGaussian();
+                frameF[i] = (float) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample)));
+                frame[i] = frameF[i];
+            }
+            plan.applyWindow(frame);
+            plan.applyWindow(frameF);
+            double[] re = new double[bins], im = new double[bins];
+            float[] reF = new float[bins], imF = new float[bins];
+            fft.realFft(frame, re, im);
+            fft.realFft(frameF, reF, imF);
+
+            double[] expected = mfcc.cepstrum(re, im);
+            float[] actual = mfcc.cepstrum(reF, imF);
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("coefficient " + i, expected[i], actual[i], TOLERANCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package cs.umass.edu.myactivitiestoolkit.classification;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ActivityClassifier} takes samples at the rate it was created with,
+ * whatever the rate of the stream, and so labels a fast stream as it labels one at that
+ * rate.
+ */
+public class ActivityClassifierTest {
+
+    private static final int SITTING = 1000, WALKING = 1001;
+
+    private final Random random = new Random(24);
+
+    /** Records the classifications. */
+    private static class Recorder implements OnActivityListener {
+        final List<Long> times = new ArrayList<>();
+        final List<Integer> labels = new ArrayList<>();
+
+        @Override
+        public void onActivityClassified(long timestamp, int label) {
+            times.add(timestamp);
+            labels.add(label);
+        }
+    }
+
+    /** Still on the variance of the magnitude, as the bundled model starts. */
+    private static DecisionForest model() throws IOException {
+        String model = "features 35\ntree\nsplit 22 0.64 1 2\nleaf 1000\nleaf 1001\n";
+        return DecisionForest.load(new ByteArrayInputStream(model.getBytes("US-ASCII")));
+    }
+
+    /** A phone lying still for 10 seconds, then carried while walking at 2 steps a second. */
+    private float[] sample(long t) {
+        double bounce = t < 10000 ? 0 : 3 * Math.sin(2 * Math.PI * 2 * t / 1000.0);
+        return new float[]{(float) (0.05 * random.nextGaussian()), (float) (0.05 * random.nextGaussian()),
+                (float) (9.81 + bounce + 0.05 * random.nextGaussian())};
+    }
+
+    /** A classifier that classifies every sample it takes once its window is full. */
+    private static ActivityClassifier everySample() throws IOException {
+        return new ActivityClassifier(model(), ActivityClassifier.DEFAULT_SAMPLE_RATE, ActivityClassifier.DEFAULT_WINDOW_SIZE, 1);
+    }
+
+    private Recorder run(ActivityClassifier classifier, long period, long end) {
+        Recorder recorder = new Recorder();
+        classifier.registerOnActivityListener(recorder);
+        for (long t = 0; t < end; t += period) {
+            float[] a = sample(t);
+            classifier.process(t, a[0], a[1], a[2]);
+        }
+        return recorder;
+    }
+
+    @Test
+    public void fastStreamIsLabelledAsAtTheModelRate() throws IOException {
+        Recorder normal = run(new ActivityClassifier(model()), 200, 20000);
+        Recorder fast = run(new ActivityClassifier(model()), 20, 20000);
+        // 100 samples at 5 Hz: the first window of 10, then one every 2 samples
+        assertEquals(46, normal.labels.size());
+        assertEquals(normal.labels.size(), fast.labels.size());
+        for (int i = 0; i < normal.labels.size(); i++) {
+            long t = normal.times.get(i);
+            // the windows cover the same time, so only those across the change can differ
+            if (t < 10000 || t >= 12000) {
+                int expected = t < 10000 ? SITTING : WALKING;
+                assertEquals("at " + t, expected, (int) normal.labels.get(i));
+                assertEquals("at " + fast.times.get(i), expected, (int) fast.labels.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void samplesAreTakenAtTheSampleRate() throws IOException {
+        for (long period : new long[]{5, 20, 66, 100}) {
+            Recorder recorder = run(everySample(), period, 20000);
+            // every 3rd sample at 66 ms is taken, 198 ms apart, which makes a few more
+            assertEquals("period " + period, 91, recorder.times.size(), 2);
+            for (int i = 1; i < recorder.times.size(); i++) {
+                long interval = recorder.times.get(i) - recorder.times.get(i - 1);
+                assertTrue("interval " + interval + " at period " + period, interval >= 180 && interval <= 220);
+            }
+        }
+    }
+
+    @Test
+    public void jitteredStreamAtTheSampleRateIsTakenWhole() throws IOException {
+        ActivityClassifier classifier = everySample();
+        Recorder recorder = new Recorder();
+        classifier.registerOnActivityListener(recorder);
+        long t = 0;
+        for (int n = 0; n < 500; n++) {
+            t += 180 + random.nextInt(41);
+            classifier.process(t, 0, 0, 9.81f);
+        }
+        // 500 samples, the first 9 of which fill the window
+        assertEquals(491, recorder.times.size());
+    }
+
+    @Test
+    public void slowStreamIsTakenWhole() throws IOException {
+        Recorder recorder = run(everySample(), 250, 25000);
+        assertEquals(91, recorder.times.size());
+    }
+
+    @Test
+    public void resetForgetsTheSampleTimes() throws IOException {
+        ActivityClassifier classifier = everySample();
+        Recorder recorder = new Recorder();
+        classifier.registerOnActivityListener(recorder);
+        for (long t = 10000; t < 12000; t += 200) {
+            classifier.process(t, 0, 0, 9.81f);
+        }
+        assertEquals(1, recorder.times.size());
+        // after a reset, e.g. when the sensor restarts with a new time base, earlier times are taken
+        classifier.reset();
+        for (long t = 0; t < 2000; t += 200) {
+            classifier.process(t, 0, 0, 9.81f);
+        }
+        assertEquals(2, recorder.times.size());
+        assertEquals(1800L, (long) recorder.times.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void modelWithTooManyFeatures() throws IOException {
+        String model = "features 36\ntree\nleaf 1000\n";
+        new ActivityClassifier(DecisionForest.load(new ByteArrayInputStream(model.getBytes("US-ASCII"))));
+    }
+}
@@ -0,0 +1,177 @@
+package cs.umass.edu.myactivitiestoolkit.classification;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link DecisionForest#load(java.io.InputStream)} rejects malformed models
+ * with the line at fault, and the predictions of single trees and of votes.
+ */
+public class DecisionForestTest {
+
+    private static DecisionForest load(String... lines) throws IOException {
+        StringBuilder model = new StringBuilder();
+        for (String line : lines) {
+            model.append(line).append('\n');
+        }
+        return DecisionForest.load(new ByteArrayInputStream(model.toString().getBytes("US-ASCII")));
+    }
+
+    /** Loads a malformed model and checks the message of the error. */
+    private static void assertRejected(String message, String... lines) {
+        try {
+            load(lines);
+            fail("accepted a model where " + message);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void singleTree() throws IOException {
+        DecisionForest forest = load(
+                "# a comment",
+                "features 3",
+                "",
+                "tree",
+                "split 0 1.5 1 2",
+                "leaf 7",
+                "split 2 -0.5 3 4",
+                "leaf 8",
+                "leaf 9");
+        assertEquals(3, forest.getFeatureCount());
+        assertEquals(1, forest.getTreeCount());
+        assertEquals(7, forest.classify(new double[]{1.0, 0, 0}));
+        // a feature equal to the threshold goes left
+        assertEquals(7, forest.classify(new double[]{1.5, 0, 0}));
+        assertEquals(8, forest.classify(new double[]{2, 100, -0.5}));
+        assertEquals(9, forest.classify(new double[]{2, 100, 0}));
+    }
+
+    @Test
+    public void singleLeaf() throws IOException {
+        DecisionForest forest = load("features 1", "tree", "leaf 1000");
+        assertEquals(1000, forest.classify(new double[]{42}));
+    }
+
+    @Test
+    public void majorityVote() throws IOException {
+        DecisionForest forest = load(
+                "features 2",
+                "tree", "split 0 0 1 2", "leaf 1", "leaf 2",
+                "tree", "split 1 0 1 2", "leaf 1", "leaf 2",
+                "tree", "leaf 2");
+        assertEquals(3, forest.getTreeCount());
+        assertEquals(1, forest.classify(new double[]{-1, -1}));
+        assertEquals(2, forest.classify(new double[]{-1, 1}));
+        assertEquals(2, forest.classify(new double[]{1, -1}));
+        assertEquals(2, forest.classify(new double[]{1, 1}));
+    }
+
+    @Test
+    public void tieGoesToTheFirstLabel() throws IOException {
+        // 5 is listed before 3, so it wins a tie; the counts are reset between predictions
+        DecisionForest forest = load(
+                "features 1",
+                "tree", "leaf 5",
+                "tree", "split 0 0 1 2", "leaf 3", "leaf 5");
+        assertEquals(5, forest.classify(new double[]{-1}));
+        assertEquals(5, forest.classify(new double[]{1}));
+        assertEquals(5, forest.classify(new double[]{-1}));
+    }
+
+    @Test
+    public void manyNodesAndTrees() throws IOException {
+        // more trees, nodes and labels than the initial capacities of the parser
+        List<String> lines = new ArrayList<>();
+        lines.add("features 1");
+        for (int t = 0; t < 20; t++) {
+            lines.add("tree");
+            // a chain of splits at 0, 1, ..., 98, each with a leaf on its left
+            for (int k = 0; k < 99; k++) {
+                lines.add("split 0 " + k + " " + (2 * k + 1) + " " + (2 * k + 2));
+                lines.add("leaf " + k);
+            }
+            lines.add("leaf 99");
+        }
+        DecisionForest forest = load(lines.toArray(new String[lines.size()]));
+        assertEquals(20, forest.getTreeCount());
+        assertEquals(0, forest.classify(new double[]{-5}));
+        assertEquals(37, forest.classify(new double[]{36.5}));
+        assertEquals(99, forest.classify(new double[]{1000}));
+    }
+
+    @Test
+    public void missingFeatureCount() {
+        assertRejected("Line 1 of the model: the model must start with the feature count", "tree", "leaf 1");
+    }
+
+    @Test
+    public void featureCountMustBePositive() {
+        assertRejected("Line 2 of the model: the feature count must be positive", "# model", "features 0", "tree", "leaf 1");
+    }
+
+    @Test
+    public void nodeBeforeTree() {
+        assertRejected("Line 2 of the model: a node must belong to a tree", "features 2", "leaf 1");
+    }
+
+    @Test
+    public void featureOutOfRange() {
+        assertRejected("Line 3 of the model: feature 2 is out of range", "features 2", "tree", "split 2 0 1 2", "leaf 1", "leaf 2");
+        assertRejected("Line 3 of the model: feature -1 is out of range", "features 2", "tree", "split -1 0 1 2", "leaf 1", "leaf 2");
+    }
+
+    @Test
+    public void childBeforeParent() {
+        assertRejected("Line 5 of the model: children must come after their parent",
+                "features 1", "tree", "split 0 0 1 2", "leaf 1", "split 0 0 0 3", "leaf 2");
+        assertRejected("Line 3 of the model: children must come after their parent",
+                "features 1", "tree", "split 0 0 0 1", "leaf 1");
+    }
+
+    @Test
+    public void missingChild() {
+        assertRejected("Node 0 of tree 0 has a missing child", "features 1", "tree", "split 0 0 1 2", "leaf 1");
+        // a child number beyond its own tree does not reach into the next one
+        assertRejected("Node 0 of tree 0 has a missing child",
+                "features 1", "tree", "split 0 0 1 2", "leaf 1", "tree", "leaf 2");
+    }
+
+    @Test
+    public void emptyTree() {
+        assertRejected("Tree 0 is empty", "features 1", "tree", "tree", "leaf 1");
+        assertRejected("Tree 1 is empty", "features 1", "tree", "leaf 1", "tree");
+    }
+
+    @Test
+    public void malformedNumber() {
+        assertRejected("Line 1 of the model: malformed number in 'features two'", "features two", "tree", "leaf 1");
+        assertRejected("Line 3 of the model: malformed number in 'split 0 high 1 2'",
+                "features 1", "tree", "split 0 high 1 2", "leaf 1", "leaf 2");
+        assertRejected("Line 3 of the model: malformed number in 'leaf walking'", "features 1", "tree", "leaf walking");
+    }
+
+    @Test
+    public void unknownEntry() {
+        assertRejected("Line 3 of the model: unknown entry 'branch 0 1 2'", "features 1", "tree", "branch 0 1 2");
+        assertRejected("Line 2 of the model: unknown entry 'branch 0 1 2'", "features 1", "branch 0 1 2");
+        // entries with the wrong number of fields are unknown too
+        assertRejected("Line 3 of the model: unknown entry 'leaf 1 2'", "features 1", "tree", "leaf 1 2");
+        assertRejected("Line 2 of the model: unknown entry 'features 2'", "features 1", "features 2", "tree", "leaf 1");
+    }
+
+    @Test
+    public void noTrees() {
+        assertRejected("The model holds no trees", "features 4");
+        assertRejected("The model holds no trees", "# nothing but a comment");
+    }
+}
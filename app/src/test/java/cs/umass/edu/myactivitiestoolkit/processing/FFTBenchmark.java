@@ -0,0 +1,142 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import java.util.Random;
+
+/**
+ * Compares the speed of {@link FFT} with the radix-2 kernel it replaced, at 256, 1024
+ * and 8192 points, reporting the fastest of several timed rounds per transform,
+ * including the copy of the input that each in-place transform needs. Each size first
+ * checks that both kernels produce the same spectrum; {@link FFTTest} checks the
+ * results themselves. The benchmark is a JVM tool, not a unit test; from the command
+ * line, with the unit test classes on the class path:
+ * <pre>
+ *     java cs.umass.edu.myactivitiestoolkit.processing.FFTBenchmark
+ * </pre>
+ */
+public class FFTBenchmark {
+
+    private static final int[] SIZES = {256, 1024, 8192};
+
+    /** Transforms per timed round, so that each round takes a few milliseconds. */
+    private static final int TRANSFORMS_PER_ROUND = 1 << 16;
+
+    private static final int ROUNDS = 10;
+
+    private FFTBenchmark() {
+        // static methods only
+    }
+
+    /**
+     * Command-line entry point, see the class documentation.
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        Random random = new Random(4);
+        for (int n : SIZES) {
+            double[] signalRe = new double[n], signalIm = new double[n];
+            for (int i = 0; i < n; i++) {
+                signalRe[i] = random.nextGaussian();
+                signalIm[i] = random.nextGaussian();
+            }
+            FFT fft = new FFT(n);
+            Radix2FFT reference = new Radix2FFT(n);
+
+            double[] re = signalRe.clone(), im = signalIm.clone();
+            double[] expectedRe = signalRe.clone(), expectedIm = signalIm.clone();
+            fft.fft(re, im);
+            reference.fft(expectedRe, expectedIm);
+            for (int k = 0; k < n; k++) {
+                if (Math.abs(expectedRe[k] - re[k]) > 1e-9 * n || Math.abs(expectedIm[k] - im[k]) > 1e-9 * n) {
+                    throw new IllegalStateException("The kernels differ at bin " + k + " of " + n);
+                }
+            }
+
+            int transforms = Math.max(TRANSFORMS_PER_ROUND / n, 1) * 16;
+            double radix2 = Double.MAX_VALUE, radix4 = Double.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                // both kernels transform a fresh copy of the signal each time, so the
+                // values stay bounded and the copy costs the same for both
+                long start = System.nanoTime();
+                for (int t = 0; t < transforms; t++) {
+                    System.arraycopy(signalRe, 0, re, 0, n);
+                    System.arraycopy(signalIm, 0, im, 0, n);
+                    reference.fft(re, im);
+                }
+                radix2 = Math.min(radix2, (double) (System.nanoTime() - start) / transforms);
+                start = System.nanoTime();
+                for (int t = 0; t < transforms; t++) {
+                    System.arraycopy(signalRe, 0, re, 0, n);
+                    System.arraycopy(signalIm, 0, im, 0, n);
+                    fft.fft(re, im);
+                }
+                radix4 = Math.min(radix4, (double) (System.nanoTime() - start) / transforms);
+            }
+            System.out.println(String.format("FFT %5d points: radix-2 %9.1f us, radix-4 %9.1f us (%.2fx)",
+                    n, radix2 / 1000, radix4 / 1000, radix2 / radix4));
+        }
+    }
+
+    /**
+     * The in-place radix-2 decimation-in-time kernel {@link FFT} used before: the
+     * bit-reversal permutation is recomputed on every call and the twiddle factors are
+     * read with a power-of-two stride.
+     */
+    private static class Radix2FFT {
+
+        private final int n, m;
+
+        private final double[] cos, sin;
+
+        Radix2FFT(int n) {
+            this.n = n;
+            this.m = Integer.numberOfTrailingZeros(n);
+            cos = new double[n / 2];
+            sin = new double[n / 2];
+            for (int i = 0; i < n / 2; i++) {
+                cos[i] = Math.cos(-2 * Math.PI * i / n);
+                sin[i] = Math.sin(-2 * Math.PI * i / n);
+            }
+        }
+
+        void fft(double[] re, double[] im) {
+            int j = 0;
+            int n2 = n / 2;
+            for (int i = 1; i < n - 1; i++) {
+                int n1 = n2;
+                while (j >= n1) {
+                    j = j - n1;
+                    n1 = n1 / 2;
+                }
+                j = j + n1;
+                if (i < j) {
+                    double t = re[i];
+                    re[i] = re[j];
+                    re[j] = t;
+                    t = im[i];
+                    im[i] = im[j];
+                    im[j] = t;
+                }
+            }
+
+            n2 = 1;
+            for (int i = 0; i < m; i++) {
+                int n1 = n2;
+                n2 = n2 + n2;
+                int a = 0;
+                for (j = 0; j < n1; j++) {
+                    double c = cos[a];
+                    double s = sin[a];
+                    a += 1 << (m - i - 1);
+                    for (int k = j; k < n; k = k + n2) {
+                        double t1 = c * re[k + n1] - s * im[k + n1];
+                        double t2 = s * re[k + n1] + c * im[k + n1];
+                        re[k + n1] = re[k] - t1;
+                        im[k + n1] = im[k] - t2;
+                        re[k] = re[k] + t1;
+                        im[k] = im[k] + t2;
+                    }
+                }
+            }
+        }
+    }
+}
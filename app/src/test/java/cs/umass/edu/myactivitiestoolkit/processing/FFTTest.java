@@ -0,0 +1,74 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link FFT} against a direct evaluation of the DFT, for sizes made only of
+ * radix-4 stages and for sizes with a final radix-2 stage.
+ */
+public class FFTTest {
+
+    private static final int[] SIZES = {2, 4, 8, 32, 256, 1024, 8192};
+
+    private final Random random = new Random(4);
+
+    @Test
+    public void fftMatchesDirectDft() {
+        for (int n : SIZES) {
+            double[] re = new double[n], im = new double[n];
+            for (int i = 0; i < n; i++) {
+                re[i] = random.nextGaussian();
+                im[i] = random.nextGaussian();
+            }
+            double[] expectedRe = new double[n], expectedIm = new double[n];
+            dft(re, im, expectedRe, expectedIm);
+            new FFT(n).fft(re, im);
+            for (int k = 0; k < n; k++) {
+                assertEquals("bin " + k + " of " + n, expectedRe[k], re[k], 1e-9 * n);
+                assertEquals("bin " + k + " of " + n, expectedIm[k], im[k], 1e-9 * n);
+            }
+        }
+    }
+
+    @Test
+    public void realFftMatchesDirectDft() {
+        for (int n : SIZES) {
+            double[] x = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextGaussian();
+            }
+            double[] expectedRe = new double[n], expectedIm = new double[n];
+            dft(x, new double[n], expectedRe, expectedIm);
+            double[] re = new double[n / 2 + 1], im = new double[n / 2 + 1];
+            new FFT(n).realFft(x, re, im);
+            for (int k = 0; k <= n / 2; k++) {
+                assertEquals("bin " + k + " of " + n, expectedRe[k], re[k], 1e-9 * n);
+                assertEquals("bin " + k + " of " + n, expectedIm[k], im[k], 1e-9 * n);
+            }
+        }
+    }
+
+    /** Evaluates the forward DFT directly, with exact twiddle indices. */
+    private static void dft(double[] re, double[] im, double[] outRe, double[] outIm) {
+        int n = re.length;
+        double[] cos = new double[n], sin = new double[n];
+        for (int i = 0; i < n; i++) {
+            cos[i] = Math.cos(2 * Math.PI * i / n);
+            sin[i] = Math.sin(2 * Math.PI * i / n);
+        }
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0, sumIm = 0;
+            for (int j = 0; j < n; j++) {
+                int t = (int) ((long) k * j % n);
+                sumRe += re[j] * cos[t] + im[j] * sin[t];
+                sumIm += im[j] * cos[t] - re[j] * sin[t];
+            }
+            outRe[k] = sumRe;
+            outIm[k] = sumIm;
+        }
+    }
+}
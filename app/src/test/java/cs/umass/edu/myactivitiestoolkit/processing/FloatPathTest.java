@@ -0,0 +1,126 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the single-precision paths of {@link FFT}, {@link SpectralPlan} and
+ * {@link Filter} against their double-precision versions. A float carries about 7
+ * significant digits, so the tolerances are a few units of 1e-7 relative to the
+ * largest value, with headroom for the rounding that builds up over the FFT stages.
+ */
+public class FloatPathTest {
+
+    /** Largest error of the float FFT, relative to the largest bin. */
+    private static final double FFT_TOLERANCE = 2e-6;
+
+    /** Largest error of the float window, relative to the largest sample. */
+    private static final double WINDOW_TOLERANCE = 1e-7;
+
+    /** Largest error of the float filter output, relative to the input amplitude. */
+    private static final double FILTER_TOLERANCE = 1e-6;
+
+    private final Random random = new Random(8);
+
+    @Test
+    public void fftMatchesDouble() {
+        for (int n : new int[]{256, 1024, 8192}) {
+            double[] re = new double[n], im = new double[n];
+            float[] reF = new float[n], imF = new float[n];
+            for (int i = 0; i < n; i++) {
+                reF[i] = (float) random.nextGaussian();
+                imF[i] = (float) random.nextGaussian();
+                re[i] = reF[i];
+                im[i] = imF[i];
+            }
+            FFT fft = FFT.getInstance(n);
+            fft.fft(re, im);
+            fft.fft(reF, imF);
+            assertClose("fft " + n, re, im, reF, imF, n, FFT_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void realFftMatchesDouble() {
+        int n = 8192;
+        // 16-bit PCM, as recorded by the microphone
+        double[] x = new double[n];
+        float[] xF = new float[n];
+        for (int i = 0; i < n; i++) {
+            xF[i] = (float) Math.round(8000 * Math.sin(2 * Math.PI * 440 * i / 8000.0) + 2000 * random.nextGaussian());
+            x[i] = xF[i];
+        }
+        FFT fft = FFT.getInstance(n);
+        int bins = n / 2 + 1;
+        double[] re = new double[bins], im = new double[bins];
+        float[] reF = new float[bins], imF = new float[bins];
+        fft.realFft(x, re, im);
+        fft.realFft(xF, reF, imF);
+        assertClose("realFft", re, im, reF, imF, bins, FFT_TOLERANCE);
+    }
+
+    @Test
+    public void windowMatchesDouble() {
+        for (SpectralPlan.Window type : SpectralPlan.Window.values()) {
+            SpectralPlan plan = SpectralPlan.getInstance(1024, 1000, type);
+            double[] x = new double[1024];
+            float[] xF = new float[1024];
+            for (int i = 0; i < x.length; i++) {
+                xF[i] = (float) random.nextGaussian();
+                x[i] = xF[i];
+            }
+            plan.applyWindow(x);
+            plan.applyWindow(xF);
+            double error = 0, scale = 0;
+            for (int i = 0; i < x.length; i++) {
+                error = Math.max(error, Math.abs(x[i] - xF[i]));
+                scale = Math.max(scale, Math.abs(x[i]));
+            }
+            assertTrue(type + " window error " + error / scale, error <= WINDOW_TOLERANCE * scale);
+        }
+    }
+
+    @Test
+    public void filterMatchesDouble() {
+        Filter[] doubles = {new Filter(1.0), new Filter(2.0, 50.0, 3)};
+        Filter[] floats = {new Filter(1.0), new Filter(2.0, 50.0, 3)};
+        Filter[] blocks = {new Filter(1.0), new Filter(2.0, 50.0, 3)};
+        int frames = 5000;
+        double amplitude = 20;
+        float[] interleaved = new float[frames * 3];
+        for (int i = 0; i < interleaved.length; i++) {
+            interleaved[i] = (float) (amplitude / 2 * Math.sin(i * 0.01) + random.nextGaussian());
+        }
+        for (int f = 0; f < doubles.length; f++) {
+            double[] out = new double[3];
+            float[] outF = new float[3];
+            float[] outBlock = new float[interleaved.length];
+            blocks[f].filterBlock(interleaved, frames, 3, outBlock);
+            double error = 0;
+            float[] frame = new float[3];
+            for (int i = 0; i < frames; i++) {
+                System.arraycopy(interleaved, i * 3, frame, 0, 3);
+                doubles[f].filter(frame, out);
+                floats[f].filter(frame, outF);
+                for (int c = 0; c < 3; c++) {
+                    error = Math.max(error, Math.abs(out[c] - outF[c]));
+                    error = Math.max(error, Math.abs(out[c] - outBlock[i * 3 + c]));
+                }
+            }
+            assertTrue("filter " + f + " error " + error, error <= FILTER_TOLERANCE * amplitude);
+        }
+    }
+
+    private static void assertClose(String name, double[] re, double[] im, float[] reF, float[] imF,
+                                    int length, double tolerance) {
+        double error = 0, scale = 0;
+        for (int k = 0; k < length; k++) {
+            error = Math.max(error, Math.hypot(re[k] - reF[k], im[k] - imF[k]));
+            scale = Math.max(scale, Math.hypot(re[k], im[k]));
+        }
+        assertTrue(name + " error " + error / scale, error <= tolerance * scale);
+    }
+}
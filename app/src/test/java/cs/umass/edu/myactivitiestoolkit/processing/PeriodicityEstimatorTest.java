@@ -0,0 +1,158 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the period, the preference for the fundamental over its multiples and the
+ * confidence of {@link PeriodicityEstimator} on synthetic periodic signals with harmonics.
+ */
+public class PeriodicityEstimatorTest {
+
+    private static final double SAMPLE_RATE = 50;
+
+    private static final int WINDOW = 256;
+
+    private static final int HOP = 25;
+
+    private final Random random = new Random(13);
+
+    private static PeriodicityEstimator estimator() {
+        return new PeriodicityEstimator(WINDOW, HOP, SAMPLE_RATE, 0.25, 2.5);
+    }
+
+    /** A walking step of the given frequency with harmonics at 2 and 3 times it. */
+    private static double steps(double frequency, int n) {
+        double phase = 2 * Math.PI * frequency * n / SAMPLE_RATE;
+        return 9.81 + 2 * Math.sin(phase) + 1.2 * Math.sin(2 * phase + 0.7) + 0.5 * Math.sin(3 * phase + 1.9);
+    }
+
+    @Test
+    public void periodOfAHarmonicSignal() {
+        for (double frequency : new double[]{0.8, 1.3, 1.8, 2.4}) {
+            PeriodicityEstimator estimator = estimator();
+            for (int n = 0; n < 4 * WINDOW; n++) {
+                if (estimator.push(steps(frequency, n))) {
+                    // the harmonics put peaks at half and a third of the period, which
+                    // must not be taken for the period
+                    assertEquals("period at " + frequency + " Hz", 1 / frequency, estimator.getPeriod(), 0.01 / frequency);
+                    assertEquals(60 * frequency, estimator.getRatePerMinute(), 0.6 * frequency);
+                    assertTrue("confidence " + estimator.getConfidence(), estimator.getConfidence() > 0.9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void prefersTheStepOverTheStride() {
+        // a stride of two slightly different steps: the autocorrelation peaks at the
+        // stride, two steps, but the peak at one step comes close and is preferred
+        double step = 1.9;
+        PeriodicityEstimator estimator = estimator();
+        double[] window = new double[WINDOW];
+        for (int n = 0; n < 2 * WINDOW; n++) {
+            double asymmetry = 0.7 * Math.sin(2 * Math.PI * step / 2 * n / SAMPLE_RATE);
+            double x = steps(step, n) + asymmetry;
+            estimator.push(x);
+            window[n % WINDOW] = x;
+        }
+        double stepPeak = peakAutocorrelation(window, SAMPLE_RATE / step);
+        double stridePeak = peakAutocorrelation(window, 2 * SAMPLE_RATE / step);
+        assertTrue("step " + stepPeak + ", stride " + stridePeak,
+                stepPeak < stridePeak && stepPeak > 0.9 * stridePeak);
+        assertEquals(1 / step, estimator.getPeriod(), 0.01 / step);
+        // the asymmetry is in antiphase one step apart: of the step power 2.845 and the
+        // asymmetry power 0.245, the normalized autocorrelation is (2.845 - 0.245) / 3.09
+        assertEquals(2.6 / 3.09, estimator.getConfidence(), 0.03);
+    }
+
+    @Test
+    public void strideWhenTheStepsDiffer() {
+        // a limp: every other step is much weaker, so the stride is the period
+        double step = 1.9;
+        PeriodicityEstimator estimator = estimator();
+        double[] window = new double[WINDOW];
+        for (int n = 0; n < 2 * WINDOW; n++) {
+            double phase = 2 * Math.PI * step * n / SAMPLE_RATE;
+            double envelope = 1 + 0.8 * Math.sin(phase / 2);
+            double x = 9.81 + 2 * envelope * Math.sin(phase);
+            estimator.push(x);
+            window[n % WINDOW] = x;
+        }
+        double stepPeak = peakAutocorrelation(window, SAMPLE_RATE / step);
+        double stridePeak = peakAutocorrelation(window, 2 * SAMPLE_RATE / step);
+        assertTrue("step " + stepPeak + ", stride " + stridePeak, stepPeak < 0.9 * stridePeak);
+        assertEquals(2 / step, estimator.getPeriod(), 0.02 / step);
+    }
+
+    @Test
+    public void confidenceFallsWithNoise() {
+        double previous = 1;
+        for (double noise : new double[]{0, 1, 3, 100}) {
+            PeriodicityEstimator estimator = estimator();
+            for (int n = 0; n < WINDOW; n++) {
+                estimator.push(steps(1.8, n) + noise * random.nextGaussian());
+            }
+            double confidence = estimator.getConfidence();
+            assertTrue("confidence " + confidence + " with noise " + noise, confidence <= previous);
+            previous = confidence;
+        }
+        assertTrue("confidence " + previous + " for noise", previous < 0.3);
+    }
+
+    @Test
+    public void estimatesEveryHop() {
+        PeriodicityEstimator estimator = estimator();
+        for (int n = 0; n < 3 * WINDOW; n++) {
+            boolean updated = estimator.push(steps(1.8, n));
+            int sinceFull = n + 1 - WINDOW;
+            assertEquals("sample " + n, sinceFull >= 0 && sinceFull % HOP == 0, updated);
+            assertEquals(n + 1 >= WINDOW, estimator.isPrimed());
+        }
+    }
+
+    @Test
+    public void noEstimateWithoutEnergy() {
+        PeriodicityEstimator estimator = estimator();
+        for (int n = 0; n < WINDOW; n++) {
+            estimator.push(9.81);
+        }
+        assertTrue(Double.isNaN(estimator.getPeriod()));
+        assertEquals(0, estimator.getConfidence(), 0);
+        estimator.reset();
+        assertFalse(estimator.isPrimed());
+        double[] block = new double[WINDOW];
+        for (int n = 0; n < WINDOW; n++) {
+            block[n] = steps(1.8, n);
+        }
+        assertTrue(estimator.push(block, 0, WINDOW));
+        assertEquals(1 / 1.8, estimator.getPeriod(), 0.01 / 1.8);
+    }
+
+    /**
+     * Returns the largest biased autocorrelation of the mean-removed window, oldest
+     * sample first, within two samples of the given lag, evaluated directly. It checks
+     * that a test signal puts the peaks where the test needs them.
+     */
+    private static double peakAutocorrelation(double[] window, double lag) {
+        double mean = 0;
+        for (double x : window) {
+            mean += x;
+        }
+        mean /= window.length;
+        double peak = Double.NEGATIVE_INFINITY;
+        for (int m = (int) Math.round(lag) - 2; m <= (int) Math.round(lag) + 2; m++) {
+            double sum = 0;
+            for (int i = 0; i + m < window.length; i++) {
+                sum += (window[i] - mean) * (window[i + m] - mean);
+            }
+            peak = Math.max(peak, sum);
+        }
+        return peak;
+    }
+}
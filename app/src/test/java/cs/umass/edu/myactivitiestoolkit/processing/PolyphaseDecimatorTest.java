@@ -0,0 +1,111 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the gain of {@link PolyphaseDecimator} on sine waves for the Band's
+ * conversion from 62.5 Hz to 30 Hz, a factor of 12/25: flat well below the output
+ * Nyquist frequency of 15 Hz, and tones above it, which would alias, suppressed.
+ */
+public class PolyphaseDecimatorTest {
+
+    private static final double INPUT_RATE = 62.5;
+
+    private static final double OUTPUT_RATE = 30;
+
+    /** The input period, exactly 16 ms, in nanoseconds. */
+    private static final long INPUT_PERIOD = 16000000;
+
+    /** Number of input samples per measurement, about 33 seconds. */
+    private static final int SAMPLES = 2048;
+
+    /** Output samples skipped while the filter fills. */
+    private static final int SETTLE = 100;
+
+    /** Records the steady-state output of the first channel. */
+    private static class Measurement implements PolyphaseDecimator.OnOutputListener {
+        final double frequency;
+        int count = 0;
+        double sumSquares = 0, maxError = 0;
+
+        Measurement(double frequency) {
+            this.frequency = frequency;
+        }
+
+        @Override
+        public void onOutput(long timestamp, float[] values) {
+            if (count++ < SETTLE) {
+                return;
+            }
+            sumSquares += values[0] * values[0];
+            // the timestamps are corrected for the filter delay, so the output follows
+            // the input signal at the output time
+            double expected = Math.sin(2 * Math.PI * frequency * timestamp / 1e9);
+            maxError = Math.max(maxError, Math.abs(values[0] - expected));
+        }
+
+        double gain() {
+            return Math.sqrt(2 * sumSquares / (count - SETTLE));
+        }
+    }
+
+    private static Measurement measure(double frequency) {
+        Measurement measurement = new Measurement(frequency);
+        PolyphaseDecimator decimator = PolyphaseDecimator.forRates(INPUT_RATE, OUTPUT_RATE, 1, measurement);
+        float[] value = new float[1];
+        for (int n = 0; n < SAMPLES; n++) {
+            long timestamp = n * INPUT_PERIOD;
+            value[0] = (float) Math.sin(2 * Math.PI * frequency * timestamp / 1e9);
+            decimator.push(timestamp, value);
+        }
+        return measurement;
+    }
+
+    @Test
+    public void ratio() {
+        PolyphaseDecimator decimator = PolyphaseDecimator.forRates(INPUT_RATE, OUTPUT_RATE, 1, new Measurement(0));
+        assertEquals(12, decimator.getUpFactor());
+        assertEquals(25, decimator.getDownFactor());
+        Measurement measurement = measure(1);
+        // 2048 samples at 62.5 Hz make 983 at 30 Hz
+        assertEquals(SAMPLES * 12 / 25 + 1, measurement.count);
+    }
+
+    @Test
+    public void passband() {
+        for (double frequency : new double[]{0.5, 2, 5, 8}) {
+            Measurement measurement = measure(frequency);
+            assertEquals("gain at " + frequency + " Hz", 1, measurement.gain(), 0.01);
+            assertTrue("error " + measurement.maxError + " at " + frequency + " Hz", measurement.maxError < 0.02);
+        }
+    }
+
+    @Test
+    public void stopband() {
+        // above 17 Hz, tones would alias into the output band below 15 Hz
+        for (double frequency = 17; frequency <= INPUT_RATE / 2; frequency += 0.5) {
+            double gain = measure(frequency).gain();
+            assertTrue("gain " + gain + " at " + frequency + " Hz", gain < 1e-3);
+        }
+    }
+
+    @Test
+    public void dcIsPreserved() {
+        final float[] last = new float[2];
+        PolyphaseDecimator decimator = PolyphaseDecimator.forRates(INPUT_RATE, OUTPUT_RATE, 2,
+                new PolyphaseDecimator.OnOutputListener() {
+                    @Override
+                    public void onOutput(long timestamp, float[] values) {
+                        System.arraycopy(values, 0, last, 0, 2);
+                    }
+                });
+        for (int n = 0; n < 500; n++) {
+            decimator.push(n * INPUT_PERIOD, new float[]{9.81f, -3});
+        }
+        assertEquals(9.81, last[0], 1e-5);
+        assertEquals(-3, last[1], 1e-5);
+    }
+}
@@ -0,0 +1,135 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bins tracked by {@link SlidingDFT} against a direct DFT of the window.
+ * With damping r, the recurrence computes the window weighted by r, r^2, ..., r^N from
+ * the newest sample back, so that weighting is applied to the direct DFT as well.
+ */
+public class SlidingDFTTest {
+
+    private static final int N = 250;
+
+    private static final double SAMPLE_RATE = 50;
+
+    private final Random random = new Random(7);
+
+    /** A walking-cadence signal: 2 Hz, a weaker harmonic, an offset and noise. */
+    private double signal(long n) {
+        double t = n / SAMPLE_RATE;
+        return 9.81 + 3 * Math.sin(2 * Math.PI * 2 * t + 0.3) + Math.sin(2 * Math.PI * 4 * t) + 0.2 * random.nextGaussian();
+    }
+
+    @Test
+    public void binsMatchDirectDft() {
+        SlidingDFT dft = new SlidingDFT(N, SAMPLE_RATE, 0.5, 3.0);
+        double[] window = new double[N];
+        for (int n = 0; n < 3 * N; n++) {
+            double x = signal(n);
+            dft.update(x);
+            System.arraycopy(window, 1, window, 0, N - 1);
+            window[N - 1] = x;
+            assertEquals(n + 1 >= N, dft.isPrimed());
+            if (n % 37 == 0 || n == 3 * N - 1) {
+                assertBinsMatch(dft, window, SlidingDFT.DEFAULT_DAMPING, 1e-9);
+            }
+        }
+        // 2 Hz is bin 10 of a 250-point window at 50 Hz
+        assertEquals(2.0, dft.getDominantFrequency(), 1e-3);
+    }
+
+    @Test
+    public void undampedBinsMatchPlainDft() {
+        int[] bins = {5, 10, 20};
+        SlidingDFT dft = new SlidingDFT(N, SAMPLE_RATE, bins, 1);
+        double[] window = new double[N];
+        for (int n = 0; n < 2 * N; n++) {
+            double x = signal(n);
+            dft.update(x);
+            System.arraycopy(window, 1, window, 0, N - 1);
+            window[N - 1] = x;
+        }
+        assertBinsMatch(dft, window, 1, 1e-9);
+        // a pure tone of 3 amplitude at bin 10 has power (3 N / 2)^2
+        assertEquals(Math.pow(3 * N / 2.0, 2), dft.getPower(1), 0.05 * Math.pow(3 * N / 2.0, 2));
+    }
+
+    @Test
+    public void noDriftOverALongRun() {
+        SlidingDFT dft = new SlidingDFT(N, SAMPLE_RATE, 0.5, 3.0);
+        double[] window = new double[N];
+        // about 5.5 hours at 50 Hz
+        int samples = 1000000;
+        for (int n = 0; n < samples; n++) {
+            double x = signal(n);
+            dft.update(x);
+            window[n % N] = x;
+        }
+        double[] ordered = new double[N];
+        for (int i = 0; i < N; i++) {
+            ordered[i] = window[(samples + i) % N];
+        }
+        assertBinsMatch(dft, ordered, SlidingDFT.DEFAULT_DAMPING, 1e-9);
+    }
+
+    @Test
+    public void dominantFrequencyBetweenBins() {
+        SlidingDFT dft = new SlidingDFT(N, SAMPLE_RATE, 0.5, 3.0);
+        for (int n = 0; n < N; n++) {
+            dft.update(Math.sin(2 * Math.PI * 1.73 * n / SAMPLE_RATE));
+        }
+        // the bins are 0.2 Hz apart; the fit lands closer than the nearest bin, 1.8 Hz
+        double frequency = dft.getDominantFrequency();
+        assertTrue("dominant frequency " + frequency, Math.abs(frequency - 1.73) < Math.abs(1.8 - 1.73));
+    }
+
+    @Test
+    public void resetClearsTheWindow() {
+        SlidingDFT dft = new SlidingDFT(N, SAMPLE_RATE, 0.5, 3.0);
+        for (int n = 0; n < 2 * N; n++) {
+            dft.update(signal(n));
+        }
+        dft.reset();
+        assertFalse(dft.isPrimed());
+        assertEquals(0, dft.getBandPower(), 0);
+        double[] window = new double[N];
+        for (int n = 0; n < N; n++) {
+            window[n] = signal(n);
+            dft.update(window[n]);
+        }
+        assertTrue(dft.isPrimed());
+        assertBinsMatch(dft, window, SlidingDFT.DEFAULT_DAMPING, 1e-9);
+    }
+
+    /**
+     * Compares the power of every tracked bin with a direct DFT of the window, oldest
+     * sample first, relative to the largest power.
+     */
+    private static void assertBinsMatch(SlidingDFT dft, double[] window, double damping, double tolerance) {
+        double[] expected = new double[dft.getNumBins()];
+        double largest = 0;
+        for (int i = 0; i < expected.length; i++) {
+            int k = (int) Math.round(dft.getFrequency(i) * N / SAMPLE_RATE);
+            double re = 0, im = 0, weight = damping;
+            for (int m = 0; m < N; m++) {
+                double x = window[N - 1 - m] * weight;
+                double theta = 2 * Math.PI * ((long) k * m % N) / N;
+                re += x * Math.cos(theta);
+                im += x * Math.sin(theta);
+                weight *= damping;
+            }
+            expected[i] = re * re + im * im;
+            largest = Math.max(largest, expected[i]);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("bin at " + dft.getFrequency(i) + " Hz", expected[i], dft.getPower(i), tolerance * largest);
+        }
+    }
+}
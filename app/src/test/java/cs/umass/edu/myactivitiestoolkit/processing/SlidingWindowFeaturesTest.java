@@ -0,0 +1,245 @@
+package cs.umass.edu.myactivitiestoolkit.processing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares every window emitted by {@link SlidingWindowFeatures} with the features
+ * computed directly from the samples of that window: the minimum and maximum exactly,
+ * the other features to a relative error of 1e-9. The runs are long enough for the
+ * running sums to be recomputed several times.
+ */
+public class SlidingWindowFeaturesTest {
+
+    private static final double SAMPLE_RATE = 50;
+
+    private static final double TOLERANCE = 1e-9;
+
+    private final Random random = new Random(25);
+
+    /**
+     * Three accelerometer axes while walking: gravity mostly on z, a 2 Hz cadence, noise,
+     * and an axis quantized to 0.1 so that the window holds repeated minima and maxima.
+     */
+    private float[] sample(int n) {
+        double t = n / SAMPLE_RATE;
+        double cadence = Math.sin(2 * Math.PI * 2 * t);
+        float x = (float) (0.8 * cadence + 0.3 * random.nextGaussian());
+        float y = Math.round(10 * (1.5 * Math.sin(2 * Math.PI * t / 7) + 0.2 * random.nextGaussian())) / 10f;
+        float z = (float) (9.81 + 2 * cadence + Math.sin(4 * Math.PI * 2 * t) + 0.3 * random.nextGaussian());
+        return new float[]{x, y, z};
+    }
+
+    @Test
+    public void everyWindowMatchesDirectComputation() {
+        check(100, 25, new double[]{0, 1, 3, 5, 25}, 20000);
+    }
+
+    @Test
+    public void powerOfTwoWindowWithSingleSampleHop() {
+        check(64, 1, new double[]{0.5, 2.5, 10}, 8000);
+    }
+
+    @Test
+    public void withoutBands() {
+        SlidingWindowFeatures features = check(50, 10, new double[0], 8000);
+        assertEquals(0, features.getBandCount());
+        assertEquals(3 * SlidingWindowFeatures.BAND_ENERGY + 1 + 3, features.getFeatureCount());
+    }
+
+    @Test
+    public void bandsCoveringTheSpectrumSumToTheVariance() {
+        // the last edge lies above the Nyquist frequency, so it includes the last bin
+        double[][] edges = {{0, 25}, {0, 0.5, 2.5, 4, 10, 30}, {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 15, 20, 25}};
+        for (double[] bands : edges) {
+            for (int windowLength : new int[]{64, 100, 128}) {
+                SlidingWindowFeatures features = new SlidingWindowFeatures(3, windowLength, 7, SAMPLE_RATE, bands);
+                for (int n = 0; n < 10 * windowLength; n++) {
+                    if (features.update(sample(n))) {
+                        double[] f = features.getFeatures();
+                        for (int c = 0; c < 3; c++) {
+                            double total = 0;
+                            for (int b = 0; b < features.getBandCount(); b++) {
+                                total += f[features.getBandIndex(c, b)];
+                            }
+                            double variance = f[features.getIndex(c, SlidingWindowFeatures.VARIANCE)];
+                            assertEquals("channel " + c, variance, total, TOLERANCE * variance);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resetStartsAFreshWindow() {
+        SlidingWindowFeatures features = new SlidingWindowFeatures(3, 40, 10, SAMPLE_RATE, new double[]{0, 2, 25});
+        for (int n = 0; n < 1000; n++) {
+            features.update(sample(n));
+        }
+        features.reset();
+        List<float[]> window = new ArrayList<>();
+        for (int n = 0; n < 39; n++) {
+            float[] s = sample(n);
+            window.add(s);
+            assertFalse(features.update(s));
+        }
+        float[] s = sample(39);
+        window.add(s);
+        assertTrue(features.update(s));
+        assertMatches(features, new double[]{0, 2, 25}, window, 40);
+    }
+
+    @Test
+    public void indices() {
+        SlidingWindowFeatures features = new SlidingWindowFeatures(3, 64, 8, SAMPLE_RATE, new double[]{0, 3, 25});
+        // blocks of five features and two bands per channel
+        assertEquals(7 + 4, features.getIndex(1, SlidingWindowFeatures.ZERO_CROSSING_RATE));
+        assertEquals(7 + 5 + 1, features.getBandIndex(1, 1));
+        assertEquals(21, features.getSmaIndex());
+        assertEquals(22, features.getCorrelationIndex(1, 0));
+        assertEquals(23, features.getCorrelationIndex(0, 2));
+        assertEquals(24, features.getCorrelationIndex(2, 1));
+        assertEquals(25, features.getFeatureCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bandWithoutBins() {
+        // bins of a 64-point FFT at 50 Hz are 0.78 Hz apart
+        new SlidingWindowFeatures(1, 64, 1, SAMPLE_RATE, new double[]{1, 1.2});
+    }
+
+    /**
+     * Runs the engine over generated samples and compares each emitted window.
+     * @return the engine, for further checks
+     */
+    private SlidingWindowFeatures check(int windowLength, int hop, double[] bands, int samples) {
+        SlidingWindowFeatures features = new SlidingWindowFeatures(3, windowLength, hop, SAMPLE_RATE, bands);
+        List<float[]> all = new ArrayList<>();
+        int windows = 0;
+        for (int n = 0; n < samples; n++) {
+            float[] s = sample(n);
+            all.add(s);
+            boolean emitted = features.update(s);
+            boolean expected = n + 1 >= windowLength && (n + 1 - windowLength) % hop == 0;
+            assertEquals("sample " + n, expected, emitted);
+            if (emitted) {
+                assertMatches(features, bands, all, windowLength);
+                windows++;
+            }
+        }
+        assertEquals((samples - windowLength) / hop + 1, windows);
+        return features;
+    }
+
+    /**
+     * Computes the features of the last windowLength of the given samples, all of them
+     * since the first sample or the last reset, and compares them with the engine's.
+     */
+    private static void assertMatches(SlidingWindowFeatures features, double[] bands, List<float[]> all, int n) {
+        int channels = all.get(0).length;
+        int start = all.size() - n;
+        double[] f = features.getFeatures();
+
+        // the dynamic parts, following the baseline from the first sample on
+        double alpha = 2.0 / (n + 1);
+        float[][] window = new float[channels][n], dynamic = new float[channels][n];
+        for (int c = 0; c < channels; c++) {
+            double baseline = all.get(0)[c];
+            for (int i = 0; i < all.size(); i++) {
+                float value = all.get(i)[c];
+                if (i > 0) {
+                    baseline += alpha * (value - baseline);
+                }
+                if (i >= start) {
+                    window[c][i - start] = value;
+                    dynamic[c][i - start] = (float) (value - baseline);
+                }
+            }
+        }
+
+        double[] mean = new double[channels], variance = new double[channels];
+        double sma = 0;
+        for (int c = 0; c < channels; c++) {
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            double sum = 0;
+            int crossings = 0;
+            for (int i = 0; i < n; i++) {
+                float v = window[c][i];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                sum += v;
+                sma += Math.abs(dynamic[c][i]);
+                if (i > 0 && (dynamic[c][i - 1] < 0) != (dynamic[c][i] < 0)) {
+                    crossings++;
+                }
+            }
+            mean[c] = sum / n;
+            double squares = 0;
+            for (int i = 0; i < n; i++) {
+                double d = window[c][i] - mean[c];
+                squares += d * d;
+            }
+            variance[c] = squares / n;
+            assertEquals("min", min, f[features.getIndex(c, SlidingWindowFeatures.MIN)], 0);
+            assertEquals("max", max, f[features.getIndex(c, SlidingWindowFeatures.MAX)], 0);
+            assertRelative("mean", mean[c], f[features.getIndex(c, SlidingWindowFeatures.MEAN)], Math.abs(mean[c]));
+            assertRelative("variance", variance[c], f[features.getIndex(c, SlidingWindowFeatures.VARIANCE)], variance[c]);
+            assertEquals("zero-crossing rate", (double) crossings / (n - 1),
+                    f[features.getIndex(c, SlidingWindowFeatures.ZERO_CROSSING_RATE)], 1e-15);
+            double[] energies = bandEnergies(window[c], mean[c], bands);
+            for (int b = 0; b < energies.length; b++) {
+                assertRelative("band " + b, energies[b], f[features.getBandIndex(c, b)], variance[c]);
+            }
+        }
+        assertRelative("signal magnitude area", sma / n, f[features.getSmaIndex()], sma / n);
+
+        for (int i = 0; i < channels; i++) {
+            for (int j = i + 1; j < channels; j++) {
+                double covariance = 0;
+                for (int k = 0; k < n; k++) {
+                    covariance += (window[i][k] - mean[i]) * (window[j][k] - mean[j]);
+                }
+                double r = covariance / n / Math.sqrt(variance[i] * variance[j]);
+                assertRelative("correlation", r, f[features.getCorrelationIndex(i, j)], 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the part of the variance in each band, from a direct DFT of the
+     * mean-removed window zero-padded to a power of two.
+     */
+    private static double[] bandEnergies(float[] window, double mean, double[] edges) {
+        int n = window.length;
+        int size = Integer.highestOneBit(n) < n ? 2 * Integer.highestOneBit(n) : n;
+        double[] energies = new double[Math.max(edges.length - 1, 0)];
+        for (int k = 0; k <= size / 2; k++) {
+            double frequency = k * SAMPLE_RATE / size, re = 0, im = 0;
+            for (int i = 0; i < n; i++) {
+                double theta = 2 * Math.PI * ((long) k * i % size) / size;
+                re += (window[i] - mean) * Math.cos(theta);
+                im -= (window[i] - mean) * Math.sin(theta);
+            }
+            double power = (re * re + im * im) * (k == 0 || k == size / 2 ? 1 : 2) / ((double) size * n);
+            for (int b = 0; b < energies.length; b++) {
+                boolean last = edges[b + 1] >= SAMPLE_RATE / 2;
+                if (frequency >= edges[b] && (frequency < edges[b + 1] || last)) {
+                    energies[b] += power;
+                }
+            }
+        }
+        return energies;
+    }
+
+    private static void assertRelative(String feature, double expected, double actual, double scale) {
+        assertEquals(feature, expected, actual, TOLERANCE * scale);
+    }
+}
@@ -0,0 +1,186 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * An accelerometer trace held in memory together with its ground-truth steps, used to
+ * measure the accuracy and cost of a {@link StepDetectorCore}.
+ * <br><br>
+ * A labeled trace is a pair of files:
+ * <ul>
+ *     <li>the samples, in any format {@link TraceReplay} reads, e.g. {@code walk.csv};</li>
+ *     <li>the labels, a text file next to it with the extension replaced by
+ *     {@code .steps}, e.g. {@code walk.steps}. It holds the timestamp of every true step,
+ *     in nanoseconds on the same clock as the samples, one per line. Blank lines and
+ *     lines starting with {@code #} are skipped.</li>
+ * </ul>
+ * The samples are kept in primitive columns, so replaying them involves no I/O and no
+ * allocation and measures only the detector.
+ */
+public final class LabeledTrace {
+
+    /** Extension of the labels file. */
+    public static final String LABELS_EXTENSION = ".steps";
+
+    private final String name;
+
+    private final long[] timestamps;
+    private final float[] x, y, z;
+    private final int sampleCount;
+
+    private final long[] steps;
+
+    private LabeledTrace(String name, long[] timestamps, float[] x, float[] y, float[] z,
+                         int sampleCount, long[] steps) {
+        this.name = name;
+        this.timestamps = timestamps;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.sampleCount = sampleCount;
+        this.steps = steps;
+    }
+
+    /**
+     * Loads a trace and the labels file next to it.
+     * @param tracePath the samples file
+     * @return the labeled trace
+     * @throws IOException if either file cannot be read or is malformed
+     */
+    public static LabeledTrace load(String tracePath) throws IOException {
+        return load(tracePath, labelsPath(tracePath));
+    }
+
+    /**
+     * Loads a trace and its labels.
+     * @param tracePath the samples file
+     * @param labelsPath the labels file
+     * @return the labeled trace
+     * @throws IOException if either file cannot be read or is malformed
+     */
+    public static LabeledTrace load(String tracePath, String labelsPath) throws IOException {
+        Columns columns = new Columns();
+        TraceReplay.read(tracePath, columns);
+        return new LabeledTrace(tracePath, columns.timestamps, columns.x, columns.y, columns.z,
+                columns.size, readLabels(labelsPath));
+    }
+
+    /**
+     * Returns the path of the labels file belonging to a trace.
+     * @param tracePath the samples file
+     * @return the same path with its extension replaced by {@link #LABELS_EXTENSION}
+     */
+    public static String labelsPath(String tracePath) {
+        int dot = tracePath.lastIndexOf('.');
+        int separator = Math.max(tracePath.lastIndexOf('/'), tracePath.lastIndexOf('\\'));
+        String base = dot > separator ? tracePath.substring(0, dot) : tracePath;
+        return base + LABELS_EXTENSION;
+    }
+
+    private static long[] readLabels(String path) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "US-ASCII"));
+        try {
+            long[] steps = new long[256];
+            int count = 0;
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                long step;
+                try {
+                    step = Long.parseLong(line);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed step timestamp '" + line + "' on line " + lineNumber + " of " + path);
+                }
+                if (count > 0 && step < steps[count - 1]) {
+                    throw new IOException("Step timestamps are not sorted on line " + lineNumber + " of " + path);
+                }
+                if (count == steps.length) {
+                    steps = Arrays.copyOf(steps, count * 2);
+                }
+                steps[count++] = step;
+            }
+            return Arrays.copyOf(steps, count);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Passes every sample to a detector, in order.
+     * @param core the detector
+     */
+    public void replay(StepDetectorCore core) {
+        for (int i = 0; i < sampleCount; i++) {
+            core.process(timestamps[i], x[i], y[i], z[i]);
+        }
+    }
+
+    /**
+     * Returns the name of the trace, i.e. the path it was loaded from.
+     * @return the trace name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of samples.
+     * @return the sample count
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Returns the duration of the trace.
+     * @return the time between the first and the last sample, in nanoseconds
+     */
+    public long getDurationNs() {
+        return sampleCount == 0 ? 0 : timestamps[sampleCount - 1] - timestamps[0];
+    }
+
+    /**
+     * Returns the ground-truth steps. The array must not be modified.
+     * @return the step timestamps in nanoseconds, in ascending order
+     */
+    public long[] getStepTimestamps() {
+        return steps;
+    }
+
+    /**
+     * Collects samples into growing primitive columns.
+     */
+    private static class Columns implements TraceReplay.SampleSink {
+        long[] timestamps = new long[1024];
+        float[] x = new float[1024], y = new float[1024], z = new float[1024];
+        int size = 0;
+
+        @Override
+        public void onSample(long timestampNs, float x, float y, float z) throws IOException {
+            if (size > 0 && timestampNs <= timestamps[size - 1]) {
+                throw new IOException("Sample " + (size + 1) + " does not advance in time");
+            }
+            if (size == timestamps.length) {
+                int capacity = size * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                this.x = Arrays.copyOf(this.x, capacity);
+                this.y = Arrays.copyOf(this.y, capacity);
+                this.z = Arrays.copyOf(this.z, capacity);
+            }
+            timestamps[size] = timestampNs;
+            this.x[size] = x;
+            this.y[size] = y;
+            this.z[size] = z;
+            size++;
+        }
+    }
+}
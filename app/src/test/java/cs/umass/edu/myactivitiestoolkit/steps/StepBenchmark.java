@@ -0,0 +1,380 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Regression harness for the step detection algorithms. It replays {@link LabeledTrace
+ * labeled traces} through a detector on the JVM and reports
+ * <ul>
+ *     <li>accuracy: a detected step matches a true step if they are at most a tolerance
+ *     apart, and each true step matches at most one detection. Unmatched detections are
+ *     false positives, unmatched true steps false negatives;</li>
+ *     <li>cost: the nanoseconds and the heap bytes allocated per sample, measured over
+ *     several replays after a warm-up replay. The time is the fastest replay; the
+ *     allocations are read from the JVM's per-thread allocation counter, where
+ *     available.</li>
+ * </ul>
+ * Any {@link StepDetectorCore} can be evaluated through a {@link DetectorFactory}. The
+ * harness is a JVM tool and not part of the app; from the command line, with the unit
+ * test classes on the class path:
+ * <pre>
+ *     java cs.umass.edu.myactivitiestoolkit.steps.StepBenchmark [options] trace...
+ *         --detector axis|magnitude|all   the detector(s) to evaluate (default all)
+ *         --tolerance ms                  the matching tolerance (default 250)
+ *         --repetitions n                 the number of timed replays (default 5)
+ * </pre>
+ */
+public final class StepBenchmark {
+
+    /** Default tolerance between a detected and a true step, in milliseconds. */
+    public static final long DEFAULT_TOLERANCE_MS = 250;
+
+    /** Default number of timed replays. */
+    public static final int DEFAULT_REPETITIONS = 5;
+
+    private static final long NANOSECONDS_PER_MILLISECOND = 1000000;
+
+    /**
+     * Creates a fresh detector for every replay.
+     */
+    public interface DetectorFactory {
+        /**
+         * Returns the name used in reports.
+         * @return the detector name
+         */
+        String getName();
+
+        /**
+         * Creates a detector with no steps counted yet.
+         * @return a new detector
+         */
+        StepDetectorCore create();
+    }
+
+    /** Creates {@link AxisStepDetector axis detectors}. */
+    public static final DetectorFactory AXIS = new DetectorFactory() {
+        @Override
+        public String getName() {
+            return "axis";
+        }
+
+        @Override
+        public StepDetectorCore create() {
+            return new AxisStepDetector();
+        }
+    };
+
+    /** Creates {@link MagnitudeStepDetector magnitude detectors}. */
+    public static final DetectorFactory MAGNITUDE = new DetectorFactory() {
+        @Override
+        public String getName() {
+            return "magnitude";
+        }
+
+        @Override
+        public StepDetectorCore create() {
+            return new MagnitudeStepDetector();
+        }
+    };
+
+    /**
+     * The outcome of evaluating a detector on one or more traces. Results of several
+     * traces can be combined with {@link #add(Result)}.
+     */
+    public static class Result {
+        private long truePositives, falsePositives, falseNegatives;
+        private long timingErrorNs;
+        private long samples;
+        private double nanoseconds;
+        private double allocatedBytes;
+
+        /**
+         * Returns the number of detected steps that match a true step.
+         * @return the true positive count
+         */
+        public long getTruePositives() {
+            return truePositives;
+        }
+
+        /**
+         * Returns the number of detected steps that match no true step.
+         * @return the false positive count
+         */
+        public long getFalsePositives() {
+            return falsePositives;
+        }
+
+        /**
+         * Returns the number of true steps that no detection matches.
+         * @return the false negative count
+         */
+        public long getFalseNegatives() {
+            return falseNegatives;
+        }
+
+        /**
+         * Returns the fraction of detected steps that are true steps.
+         * @return the precision, or NaN if nothing was detected
+         */
+        public double getPrecision() {
+            return truePositives / (double) (truePositives + falsePositives);
+        }
+
+        /**
+         * Returns the fraction of true steps that were detected.
+         * @return the recall, or NaN if there are no true steps
+         */
+        public double getRecall() {
+            return truePositives / (double) (truePositives + falseNegatives);
+        }
+
+        /**
+         * Returns the harmonic mean of precision and recall.
+         * @return the F1 score
+         */
+        public double getF1() {
+            return 2.0 * truePositives / (2 * truePositives + falsePositives + falseNegatives);
+        }
+
+        /**
+         * Returns the mean distance between matched detected and true steps.
+         * @return the mean timing error in milliseconds, or NaN if nothing matched
+         */
+        public double getMeanTimingErrorMs() {
+            return timingErrorNs / (double) truePositives / NANOSECONDS_PER_MILLISECOND;
+        }
+
+        /**
+         * Returns the processing time per sample.
+         * @return the time in nanoseconds
+         */
+        public double getNanosPerSample() {
+            return nanoseconds / samples;
+        }
+
+        /**
+         * Returns the heap allocations per sample.
+         * @return the allocations in bytes, or NaN if the JVM cannot measure them
+         */
+        public double getBytesPerSample() {
+            return allocatedBytes / samples;
+        }
+
+        /**
+         * Adds the counts and costs of another result to this one.
+         * @param other the result of another trace
+         */
+        public void add(Result other) {
+            truePositives += other.truePositives;
+            falsePositives += other.falsePositives;
+            falseNegatives += other.falseNegatives;
+            timingErrorNs += other.timingErrorNs;
+            samples += other.samples;
+            nanoseconds += other.nanoseconds;
+            allocatedBytes += other.allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "TP %d  FP %d  FN %d  precision %.3f  recall %.3f  F1 %.3f  "
+                            + "timing error %.1f ms  %.1f ns/sample  %.3f bytes/sample",
+                    truePositives, falsePositives, falseNegatives, getPrecision(), getRecall(), getF1(),
+                    getMeanTimingErrorMs(), getNanosPerSample(), getBytesPerSample());
+        }
+    }
+
+    /**
+     * Records the timestamps of detected steps.
+     */
+    private static class StepRecorder implements OnStepListener {
+        long[] timestampsNs = new long[256];
+        int count = 0;
+
+        @Override
+        public void onStepCountUpdated(int stepCount) {
+            // only the timestamps are needed
+        }
+
+        @Override
+        public void onStepDetected(long timestamp, float[] values) {
+            if (count == timestampsNs.length) {
+                timestampsNs = Arrays.copyOf(timestampsNs, count * 2);
+            }
+            timestampsNs[count++] = timestamp * NANOSECONDS_PER_MILLISECOND;
+        }
+    }
+
+    /** {@code getThreadAllocatedBytes(long)} of the HotSpot thread bean, or null. */
+    private static final Method ALLOCATED_BYTES;
+    private static final Object THREAD_BEAN;
+
+    static {
+        Method method = null;
+        Object bean = null;
+        try {
+            // looked up reflectively, since the HotSpot bean is not available on every JVM
+            bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (beanClass.isInstance(bean)) {
+                method = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+                method.invoke(bean, Thread.currentThread().getId());
+            }
+        } catch (Exception e) {
+            method = null;
+        }
+        ALLOCATED_BYTES = method;
+        THREAD_BEAN = bean;
+    }
+
+    private StepBenchmark() {
+        // static methods only
+    }
+
+    /**
+     * Evaluates a detector on a trace.
+     * @param trace the labeled trace
+     * @param factory creates the detector
+     * @param toleranceMs the largest distance between a matching detected and true step
+     * @param repetitions the number of timed replays
+     * @return the accuracy and cost of the detector
+     */
+    public static Result evaluate(LabeledTrace trace, DetectorFactory factory, long toleranceMs, int repetitions) {
+        if (repetitions < 1) {
+            throw new IllegalArgumentException("At least one repetition is required");
+        }
+        Result result = new Result();
+
+        StepDetectorCore core = factory.create();
+        StepRecorder recorder = new StepRecorder();
+        core.registerOnStepListener(recorder);
+        trace.replay(core);
+        match(recorder.timestampsNs, recorder.count, trace.getStepTimestamps(),
+                toleranceMs * NANOSECONDS_PER_MILLISECOND, result);
+
+        // the detectors are created up front, so only the processing is measured
+        StepDetectorCore[] cores = new StepDetectorCore[repetitions];
+        for (int r = 0; r < repetitions; r++) {
+            cores[r] = factory.create();
+        }
+        long bestNs = Long.MAX_VALUE;
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+        long allocated = allocatedBytes();
+        for (int r = 0; r < repetitions; r++) {
+            long start = System.nanoTime();
+            trace.replay(cores[r]);
+            bestNs = Math.min(bestNs, System.nanoTime() - start);
+        }
+        allocated = allocatedBytes() - allocated - overhead;
+
+        result.samples = trace.getSampleCount();
+        result.nanoseconds = bestNs;
+        result.allocatedBytes = ALLOCATED_BYTES == null ? Double.NaN
+                : Math.max(0, allocated) / (double) repetitions;
+        return result;
+    }
+
+    /**
+     * Matches detected to true steps and adds the counts to a result. Both arrays are
+     * sorted, so matching every detection to the earliest unmatched true step within the
+     * tolerance yields the largest number of matches.
+     */
+    static void match(long[] detected, int detectedCount, long[] truth, long toleranceNs, Result result) {
+        int t = 0;
+        for (int d = 0; d < detectedCount; d++) {
+            long step = detected[d];
+            while (t < truth.length && truth[t] < step - toleranceNs) {
+                result.falseNegatives++;
+                t++;
+            }
+            if (t < truth.length && truth[t] <= step + toleranceNs) {
+                result.truePositives++;
+                result.timingErrorNs += Math.abs(truth[t] - step);
+                t++;
+            } else {
+                result.falsePositives++;
+            }
+        }
+        result.falseNegatives += truth.length - t;
+    }
+
+    private static long allocatedBytes() {
+        if (ALLOCATED_BYTES == null) {
+            return 0;
+        }
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Command-line entry point, see the class documentation.
+     * @param args the options followed by the trace files
+     * @throws IOException if a trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        long toleranceMs = DEFAULT_TOLERANCE_MS;
+        int repetitions = DEFAULT_REPETITIONS;
+        List<DetectorFactory> factories = new ArrayList<>();
+        List<String> traces = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--tolerance") && i + 1 < args.length) {
+                toleranceMs = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--repetitions") && i + 1 < args.length) {
+                repetitions = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--detector") && i + 1 < args.length) {
+                String name = args[++i];
+                if (name.equals("axis") || name.equals("all")) {
+                    factories.add(AXIS);
+                }
+                if (name.equals("magnitude") || name.equals("all")) {
+                    factories.add(MAGNITUDE);
+                }
+                if (!name.equals("axis") && !name.equals("magnitude") && !name.equals("all")) {
+                    usage();
+                }
+            } else if (args[i].startsWith("--")) {
+                usage();
+            } else {
+                traces.add(args[i]);
+            }
+        }
+        if (traces.isEmpty()) {
+            usage();
+        }
+        if (factories.isEmpty()) {
+            factories.add(AXIS);
+            factories.add(MAGNITUDE);
+        }
+
+        List<LabeledTrace> loaded = new ArrayList<>();
+        for (String path : traces) {
+            loaded.add(LabeledTrace.load(path));
+        }
+        for (DetectorFactory factory : factories) {
+            Result total = new Result();
+            for (LabeledTrace trace : loaded) {
+                Result result = evaluate(trace, factory, toleranceMs, repetitions);
+                System.out.println(factory.getName() + "  " + trace.getName() + "  " + result);
+                total.add(result);
+            }
+            if (loaded.size() > 1) {
+                System.out.println(factory.getName() + "  total  " + total);
+            }
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: StepBenchmark [--detector axis|magnitude|all] [--tolerance ms] "
+                + "[--repetitions n] trace...");
+        System.exit(1);
+    }
+}
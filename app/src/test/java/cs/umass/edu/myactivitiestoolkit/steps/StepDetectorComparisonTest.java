@@ -0,0 +1,133 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cs.umass.edu.myactivitiestoolkit.constants.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link StepDetectorComparison} matches the steps of two detectors that
+ * report scripted steps. The agreement {@code 2 * matched / (2 * matched + unmatched
+ * reference steps + unmatched steps)} identifies the match counts in each case.
+ */
+public class StepDetectorComparisonTest {
+
+    /** Time between two samples, in milliseconds. */
+    private static final long SAMPLE_PERIOD_MS = 10;
+
+    /**
+     * Reports each scripted step at the first sample at or after its time.
+     */
+    private static class ScriptedDetector extends StepDetectorCore {
+        private final long[] steps;
+        private final float[] values = new float[3];
+        private int next = 0;
+
+        ScriptedDetector(long... stepsMs) {
+            steps = stepsMs;
+        }
+
+        @Override
+        public void process(long timestampNs, float x, float y, float z) {
+            long timestampMs = timestampNs / Constants.TIMESTAMPS.NANOSECONDS_PER_MILLISECOND;
+            while (next < steps.length && steps[next] <= timestampMs) {
+                onStepDetected(steps[next++], values);
+            }
+        }
+    }
+
+    private static StepDetectorComparison compare(StepDetectorCore reference, StepDetectorCore other) {
+        return new StepDetectorComparison(new String[]{"reference", "other"}, new StepDetectorCore[]{reference, other});
+    }
+
+    /** Passes samples from startMs up to endMs, inclusive. */
+    private static void run(StepDetectorComparison comparison, long startMs, long endMs) {
+        for (long t = startMs; t <= endMs; t += SAMPLE_PERIOD_MS) {
+            comparison.process(t * Constants.TIMESTAMPS.NANOSECONDS_PER_MILLISECOND, 0, 0, 9.81f);
+        }
+    }
+
+    @Test
+    public void laggingStepsAllMatch() {
+        StepDetectorComparison comparison = compare(new ScriptedDetector(0, 500, 1000, 1500, 2000),
+                new ScriptedDetector(100, 600, 1100, 1600, 2100));
+        assertTrue(Double.isNaN(comparison.getAgreement(1)));
+        assertTrue(Double.isNaN(comparison.getMeanLagMs(1)));
+        run(comparison, 0, 3000);
+        assertEquals(1, comparison.getAgreement(1), 0);
+        assertEquals(100, comparison.getMeanLagMs(1), 1e-12);
+        assertEquals(5, comparison.getStepCount(0));
+        assertEquals(5, comparison.getStepCount(1));
+    }
+
+    @Test
+    public void leadingStepsHaveNegativeLag() {
+        StepDetectorComparison comparison = compare(new ScriptedDetector(500, 1000, 1500),
+                new ScriptedDetector(450, 950, 1450));
+        run(comparison, 0, 2000);
+        assertEquals(1, comparison.getAgreement(1), 0);
+        assertEquals(-50, comparison.getMeanLagMs(1), 1e-12);
+    }
+
+    @Test
+    public void unmatchedStepsOnBothSides() {
+        // 0-100 and 1000-1000 match; reference 500 and 1500 and steps 1900 and 2600 do not,
+        // the last two only once the reference step at 5000 shows they are too old to match
+        StepDetectorComparison comparison = compare(new ScriptedDetector(0, 500, 1000, 1500, 5000),
+                new ScriptedDetector(100, 1000, 1900, 2600));
+        run(comparison, 0, 3000);
+        // 2 matched, 2 unmatched reference steps, the other steps still pending
+        assertEquals(4.0 / 6, comparison.getAgreement(1), 1e-12);
+        run(comparison, 3010, 6000);
+        assertEquals(4.0 / 8, comparison.getAgreement(1), 1e-12);
+        assertEquals(50, comparison.getMeanLagMs(1), 1e-12);
+        assertEquals(5, comparison.getStepCount(0));
+        assertEquals(4, comparison.getStepCount(1));
+    }
+
+    @Test
+    public void tooManyPendingStepsCountAsUnmatched() {
+        // 40 reference steps before the other detector reports anything: the pending queue
+        // holds 32, so the 8 oldest are dropped as unmatched right away
+        long[] reference = new long[40];
+        for (int i = 0; i < reference.length; i++) {
+            reference[i] = 1000 * i;
+        }
+        StepDetectorComparison comparison = compare(new ScriptedDetector(reference), new ScriptedDetector(39000));
+        run(comparison, 0, 38000);
+        assertEquals(0, comparison.getAgreement(1), 0);
+        // the step matches the newest pending reference step, the 31 older ones are resolved as unmatched
+        run(comparison, 38010, 40000);
+        assertEquals(2.0 / (2 + 39), comparison.getAgreement(1), 1e-12);
+        assertEquals(0, comparison.getMeanLagMs(1), 0);
+    }
+
+    @Test
+    public void reportsTheReferenceSteps() {
+        StepDetectorComparison comparison = compare(new ScriptedDetector(200, 700, 1200),
+                new ScriptedDetector(250, 300, 750));
+        final List<Long> steps = new ArrayList<>();
+        comparison.registerOnStepListener(new OnStepListener() {
+            @Override
+            public void onStepCountUpdated(int stepCount) {
+                assertEquals(steps.size(), stepCount);
+            }
+
+            @Override
+            public void onStepDetected(long timestamp, float[] values) {
+                steps.add(timestamp);
+            }
+        });
+        run(comparison, 0, 2000);
+        assertEquals(3, steps.size());
+        assertEquals(200L, (long) steps.get(0));
+        assertEquals(1200L, (long) steps.get(2));
+        assertEquals(3, comparison.getStepCount());
+        assertTrue(comparison.getNanosPerSample(0) >= 0);
+    }
+}
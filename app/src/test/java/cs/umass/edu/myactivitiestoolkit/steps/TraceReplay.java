@@ -0,0 +1,389 @@
+package cs.umass.edu.myactivitiestoolkit.steps;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streams recorded accelerometer traces through a {@link StepDetectorCore} on any JVM,
+ * so step detection can be evaluated and tuned without a device. Two trace formats are
+ * supported:
+ * <ul>
+ *     <li>CSV, one sample per line: {@code timestampNs,x,y,z}. Blank lines, lines
+ *     starting with {@code #} and a non-numeric header line are skipped.</li>
+ *     <li>Binary, a sequence of 20-byte little-endian records: a 64-bit timestamp in
+ *     nanoseconds followed by x, y and z as 32-bit floats. {@link #convertCsvToBinary}
+ *     produces this format.</li>
+ * </ul>
+ * Both readers parse straight out of a reused byte buffer without creating strings or
+ * boxed numbers, so replay speed is bounded by the detector rather than by I/O. It is
+ * a JVM tool and not part of the app; from the command line, with the unit test classes
+ * on the class path:
+ * <pre>
+ *     java cs.umass.edu.myactivitiestoolkit.steps.TraceReplay trace.csv [repetitions]
+ *     java cs.umass.edu.myactivitiestoolkit.steps.TraceReplay --convert trace.csv trace.bin
+ * </pre>
+ */
+public final class TraceReplay {
+
+    /** Size in bytes of one binary record. */
+    public static final int RECORD_SIZE = 20;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Exactly representable powers of ten. */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Receives the samples of a trace.
+     */
+    interface SampleSink {
+        void onSample(long timestampNs, float x, float y, float z) throws IOException;
+    }
+
+    private TraceReplay() {
+        // static methods only
+    }
+
+    /**
+     * Replays a CSV trace.
+     * @param in the trace; it is read to the end but not closed
+     * @param core the detector receiving the samples
+     * @return the number of samples replayed
+     * @throws IOException if the trace cannot be read or a line is malformed
+     */
+    public static long replayCsv(InputStream in, final StepDetectorCore core) throws IOException {
+        return readCsv(in, new SampleSink() {
+            @Override
+            public void onSample(long timestampNs, float x, float y, float z) {
+                core.process(timestampNs, x, y, z);
+            }
+        });
+    }
+
+    /**
+     * Replays a binary trace.
+     * @param in the trace; it is read to the end but not closed
+     * @param core the detector receiving the samples
+     * @return the number of samples replayed
+     * @throws IOException if the trace cannot be read or ends in a partial record
+     */
+    public static long replayBinary(InputStream in, final StepDetectorCore core) throws IOException {
+        return readBinary(in, new SampleSink() {
+            @Override
+            public void onSample(long timestampNs, float x, float y, float z) {
+                core.process(timestampNs, x, y, z);
+            }
+        });
+    }
+
+    /**
+     * Replays a trace, choosing the format by file name: files ending in {@code .csv}
+     * or {@code .txt} are read as CSV, anything else as binary.
+     * @param path the trace file
+     * @param core the detector receiving the samples
+     * @return the number of samples replayed
+     * @throws IOException if the trace cannot be read
+     */
+    public static long replay(String path, StepDetectorCore core) throws IOException {
+        InputStream in = new FileInputStream(path);
+        try {
+            return isCsv(path) ? replayCsv(in, core) : replayBinary(in, core);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a trace into a sink, choosing the format as {@link #replay(String, StepDetectorCore)} does.
+     */
+    static long read(String path, SampleSink sink) throws IOException {
+        InputStream in = new FileInputStream(path);
+        try {
+            return isCsv(path) ? readCsv(in, sink) : readBinary(in, sink);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts a CSV trace to the binary format, which replays several times faster.
+     * @param csv the CSV trace; it is read to the end but not closed
+     * @param out receives the binary trace; it is flushed but not closed
+     * @return the number of samples converted
+     * @throws IOException if reading or writing fails
+     */
+    public static long convertCsvToBinary(InputStream csv, OutputStream out) throws IOException {
+        final OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long count = readCsv(csv, new SampleSink() {
+            @Override
+            public void onSample(long timestampNs, float x, float y, float z) throws IOException {
+                record.clear();
+                record.putLong(timestampNs).putFloat(x).putFloat(y).putFloat(z);
+                buffered.write(record.array(), 0, RECORD_SIZE);
+            }
+        });
+        buffered.flush();
+        return count;
+    }
+
+    static boolean isCsv(String path) {
+        String lower = path.toLowerCase();
+        return lower.endsWith(".csv") || lower.endsWith(".txt");
+    }
+
+    private static long readBinary(InputStream in, SampleSink sink) throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE - BUFFER_SIZE % RECORD_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        long count = 0;
+        int filled = 0;
+        int read;
+        while ((read = in.read(bytes, filled, bytes.length - filled)) != -1) {
+            filled += read;
+            int records = filled / RECORD_SIZE;
+            for (int r = 0; r < records; r++) {
+                int offset = r * RECORD_SIZE;
+                sink.onSample(buffer.getLong(offset), buffer.getFloat(offset + 8),
+                        buffer.getFloat(offset + 12), buffer.getFloat(offset + 16));
+            }
+            count += records;
+            int used = records * RECORD_SIZE;
+            System.arraycopy(bytes, used, bytes, 0, filled - used);
+            filled -= used;
+        }
+        if (filled != 0) {
+            throw new IOException("Trace ends in a partial record of " + filled + " bytes");
+        }
+        return count;
+    }
+
+    private static long readCsv(InputStream in, SampleSink sink) throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int[] fieldEnds = new int[4];
+        long count = 0, lineNumber = 0;
+        int filled = 0;
+        boolean eof = false;
+        while (!eof || filled > 0) {
+            if (!eof) {
+                int read = in.read(bytes, filled, bytes.length - filled);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    filled += read;
+                }
+            }
+            int start = 0;
+            while (start < filled) {
+                int end = start;
+                while (end < filled && bytes[end] != '\n') {
+                    end++;
+                }
+                if (end == filled && !eof) {
+                    if (start == 0 && filled == bytes.length) {
+                        throw new IOException("Line " + (lineNumber + 1) + " is longer than " + bytes.length + " bytes");
+                    }
+                    break;
+                }
+                lineNumber++;
+                int lineEnd = end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+                if (parseLine(bytes, start, lineEnd, fieldEnds, sink, lineNumber)) {
+                    count++;
+                }
+                start = end + 1;
+            }
+            int remaining = Math.max(0, filled - start);
+            System.arraycopy(bytes, Math.min(start, filled), bytes, 0, remaining);
+            filled = remaining;
+        }
+        return count;
+    }
+
+    /**
+     * Parses one CSV line and passes it on.
+     * @return true if the line held a sample, false if it was skipped
+     */
+    private static boolean parseLine(byte[] b, int start, int end, int[] fieldEnds, SampleSink sink,
+                                     long lineNumber) throws IOException {
+        while (start < end && isSpace(b[start])) {
+            start++;
+        }
+        if (start == end || b[start] == '#') {
+            return false;
+        }
+        int fields = 0;
+        for (int i = start; i < end && fields < 4; i++) {
+            if (b[i] == ',') {
+                fieldEnds[fields++] = i;
+            }
+        }
+        if (fields < 3) {
+            throw new IOException("Line " + lineNumber + " has fewer than 4 fields");
+        }
+        if (fields == 3) {
+            fieldEnds[3] = end;
+        }
+        if (!isNumeric(b[start])) {
+            // a header line
+            if (lineNumber == 1) {
+                return false;
+            }
+            throw new IOException("Line " + lineNumber + " does not start with a timestamp");
+        }
+        long timestamp = parseLong(b, start, fieldEnds[0], lineNumber);
+        float x = parseFloat(b, fieldEnds[0] + 1, fieldEnds[1], lineNumber);
+        float y = parseFloat(b, fieldEnds[1] + 1, fieldEnds[2], lineNumber);
+        float z = parseFloat(b, fieldEnds[2] + 1, fieldEnds[3], lineNumber);
+        sink.onSample(timestamp, x, y, z);
+        return true;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static boolean isNumeric(byte c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+
+    private static long parseLong(byte[] b, int start, int end, long lineNumber) throws IOException {
+        while (start < end && isSpace(b[start])) start++;
+        while (end > start && isSpace(b[end - 1])) end--;
+        boolean negative = start < end && b[start] == '-';
+        if (negative || (start < end && b[start] == '+')) {
+            start++;
+        }
+        if (start == end) {
+            throw new IOException("Empty timestamp on line " + lineNumber);
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Malformed timestamp on line " + lineNumber);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal number. Numbers with at most 18 significant digits and a decimal
+     * exponent within +-22 are converted with a single correctly rounded multiplication
+     * or division; anything else falls back to {@link Float#parseFloat(String)}.
+     */
+    private static float parseFloat(byte[] b, int start, int end, long lineNumber) throws IOException {
+        while (start < end && isSpace(b[start])) start++;
+        while (end > start && isSpace(b[end - 1])) end--;
+        int i = start;
+        boolean negative = i < end && b[i] == '-';
+        if (negative || (i < end && b[i] == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0, exponent = 0;
+        boolean any = false, dot = false;
+        for (; i < end; i++) {
+            byte c = b[i];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (dot) {
+                        exponent--;
+                    }
+                } else if (!dot) {
+                    exponent++;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExponent = i < end && b[i] == '-';
+            if (negativeExponent || (i < end && b[i] == '+')) {
+                i++;
+            }
+            int e = 0;
+            boolean anyExponent = false;
+            for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+                e = Math.min(e * 10 + (b[i] - '0'), 10000);
+                anyExponent = true;
+            }
+            if (!anyExponent) {
+                any = false;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (!any || i != end) {
+            String text = new String(b, start, end - start, "US-ASCII");
+            try {
+                return Float.parseFloat(text);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed number '" + text + "' on line " + lineNumber);
+            }
+        }
+        double value;
+        if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return Float.parseFloat(new String(b, start, end - start, "US-ASCII"));
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    /**
+     * Command-line entry point, see the class documentation.
+     * @param args the trace and an optional number of repetitions, or
+     *             {@code --convert input.csv output.bin}
+     * @throws IOException if a trace cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("--convert")) {
+            InputStream in = new FileInputStream(args[1]);
+            OutputStream out = new FileOutputStream(args[2]);
+            try {
+                long count = convertCsvToBinary(in, out);
+                System.out.println("Converted " + count + " samples");
+            } finally {
+                in.close();
+                out.close();
+            }
+            return;
+        }
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: TraceReplay <trace.csv|trace.bin> [repetitions]");
+            System.err.println("       TraceReplay --convert <input.csv> <output.bin>");
+            System.exit(1);
+        }
+        int repetitions = args.length == 2 ? Integer.parseInt(args[1]) : 1;
+        for (int r = 0; r < repetitions; r++) {
+            StepDetectorCore core = new AxisStepDetector();
+            long start = System.nanoTime();
+            long samples = replay(args[0], core);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d samples, %d steps, %.3f s, %.0f samples/s%n",
+                    samples, core.getStepCount(), seconds, samples / seconds);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package cs.umass.edu.myactivitiestoolkit.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import cs.umass.edu.myactivitiestoolkit.clustering.Cluster;
+import cs.umass.edu.myactivitiestoolkit.clustering.DBScan;
+import cs.umass.edu.myactivitiestoolkit.location.GPSLocation;
+
+/**
+ * Compares {@link ApproxMath} with {@link Math}, per call for each function and for
+ * the call site that uses it, DBScan over GPS locations with
+ * {@link GPSLocation#APPROXIMATE_DISTANCE}. Reports the fastest of several timed
+ * rounds. The JVM intrinsifies some of the {@link Math} functions, so the timings on
+ * a desktop say little about older Android runtimes; run it on the target to decide.
+ * {@code ApproxMathTest} checks the results. The benchmark is a JVM tool, not a unit
+ * test; from the command line, with the unit test classes on the class path:
+ * <pre>
+ *     java cs.umass.edu.myactivitiestoolkit.util.ApproxMathBenchmark
+ * </pre>
+ */
+public class ApproxMathBenchmark {
+
+    private static final int CALLS = 1 << 20;
+
+    private static final int ROUNDS = 10;
+
+    /** Accumulates the results, so that the timed loops cannot be optimized away. */
+    private double sink;
+
+    /**
+     * Command-line entry point, see the class documentation.
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        ApproxMathBenchmark benchmark = new ApproxMathBenchmark();
+        benchmark.functions();
+        benchmark.dbscan();
+    }
+
+    private void functions() {
+        Random random = new Random(12);
+        final double[] x = new double[CALLS], y = new double[CALLS];
+        for (int i = 0; i < CALLS; i++) {
+            x[i] = Math.exp(random.nextDouble() * 20 - 10);
+            y[i] = random.nextGaussian();
+        }
+        report("log", new Kernel() {
+            @Override
+            public double run(boolean approximate) {
+                double sum = 0;
+                for (int i = 0; i < CALLS; i++) {
+                    sum += approximate ? ApproxMath.log(x[i]) : Math.log(x[i]);
+                }
+                return sum;
+            }
+        }, CALLS);
+        report("cos", new Kernel() {
+            @Override
+            public double run(boolean approximate) {
+                double sum = 0;
+                for (int i = 0; i < CALLS; i++) {
+                    sum += approximate ? ApproxMath.cos(y[i]) : Math.cos(y[i]);
+                }
+                return sum;
+            }
+        }, CALLS);
+        report("atan2", new Kernel() {
+            @Override
+            public double run(boolean approximate) {
+                double sum = 0;
+                for (int i = 0; i < CALLS; i++) {
+                    sum += approximate ? ApproxMath.atan2(y[i], x[i]) : Math.atan2(y[i], x[i]);
+                }
+                return sum;
+            }
+        }, CALLS);
+    }
+
+    private void dbscan() {
+        Random random = new Random(12);
+        final List<GPSLocation> locations = new ArrayList<>();
+        // a few places visited repeatedly, plus noise, as in a day of location traces
+        for (int i = 0; i < 2000; i++) {
+            int place = random.nextInt(5);
+            locations.add(new GPSLocation(i, i, 42.39 + place * 0.01 + random.nextGaussian() * 2e-4,
+                    -72.53 + place * 0.01 + random.nextGaussian() * 2e-4, 10));
+        }
+        final DBScan<GPSLocation> exact = new DBScan<>(50, 10);
+        final DBScan<GPSLocation> approximate = new DBScan<>(50, 10, GPSLocation.APPROXIMATE_DISTANCE);
+        report("DBScan", new Kernel() {
+            @Override
+            public double run(boolean useApproximate) {
+                List<Cluster<GPSLocation>> clusters = (useApproximate ? approximate : exact).cluster(locations);
+                return clusters.size();
+            }
+        }, 1);
+    }
+
+    private interface Kernel {
+        double run(boolean approximate);
+    }
+
+    private void report(String name, Kernel kernel, int calls) {
+        double math = Double.MAX_VALUE, approx = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            sink += kernel.run(false);
+            math = Math.min(math, (double) (System.nanoTime() - start) / calls);
+            start = System.nanoTime();
+            sink += kernel.run(true);
+            approx = Math.min(approx, (double) (System.nanoTime() - start) / calls);
+        }
+        System.out.println(String.format("%-6s Math %12.1f ns, ApproxMath %12.1f ns (%.2fx)",
+                name, math, approx, math / approx));
+    }
+}
@@ -0,0 +1,155 @@
+package cs.umass.edu.myactivitiestoolkit.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import cs.umass.edu.myactivitiestoolkit.clustering.Cluster;
+import cs.umass.edu.myactivitiestoolkit.clustering.DBScan;
+import cs.umass.edu.myactivitiestoolkit.location.GPSLocation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the error bounds documented in {@link ApproxMath} against {@link StrictMath},
+ * on random arguments and on the ranges where the range reduction is hardest: log just
+ * below and above 1 and around the square root of 2, and angles many turns from zero.
+ */
+public class ApproxMathTest {
+
+    private static final double LOG_TOLERANCE = 5e-16;
+
+    private static final double TRIG_TOLERANCE = 5e-16;
+
+    private static final double ATAN2_TOLERANCE = 1e-15;
+
+    private static final int SAMPLES = 200000;
+
+    private final Random random = new Random(12);
+
+    @Test
+    public void logOverWideRange() {
+        for (int t = 0; t < SAMPLES; t++) {
+            assertLog(Math.exp(random.nextDouble() * 1400 - 700));
+        }
+    }
+
+    @Test
+    public void logNearOne() {
+        // log(x) is close to 0 here, so the power of two must not cancel against the table
+        assertLog(0.999999999999);
+        assertLog(1.000000000001);
+        assertLog(Math.nextUp(1.0));
+        assertLog(Math.nextAfter(1.0, 0));
+        for (int t = 0; t < SAMPLES; t++) {
+            double scale = Math.pow(10, -random.nextInt(15) - 1);
+            assertLog(1 + (random.nextDouble() * 2 - 1) * scale);
+        }
+        assertEquals(0.0, ApproxMath.log(1), 0);
+    }
+
+    @Test
+    public void logAroundSqrtTwo() {
+        for (int t = 0; t < SAMPLES; t++) {
+            double m = Math.sqrt(2) * (1 + (random.nextDouble() * 2 - 1) * 1e-3);
+            assertLog(Math.scalb(m, random.nextInt(41) - 20));
+        }
+    }
+
+    @Test
+    public void logSpecialValues() {
+        assertTrue(Double.isNaN(ApproxMath.log(-1)));
+        assertTrue(Double.isNaN(ApproxMath.log(Double.NaN)));
+        assertEquals(Double.NEGATIVE_INFINITY, ApproxMath.log(0), 0);
+        assertEquals(Double.POSITIVE_INFINITY, ApproxMath.log(Double.POSITIVE_INFINITY), 0);
+        assertEquals(Math.log(Double.MIN_VALUE), ApproxMath.log(Double.MIN_VALUE), 0);
+    }
+
+    @Test
+    public void cosAndSin() {
+        for (double range : new double[]{Math.PI, 100, 1e4}) {
+            for (int t = 0; t < SAMPLES; t++) {
+                double x = (random.nextDouble() * 2 - 1) * range;
+                assertEquals("cos " + x, StrictMath.cos(x), ApproxMath.cos(x), TRIG_TOLERANCE);
+                assertEquals("sin " + x, StrictMath.sin(x), ApproxMath.sin(x), TRIG_TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void cosNearZeroIsExact() {
+        for (int t = 0; t < SAMPLES; t++) {
+            double x = (random.nextDouble() * 2 - 1) * 1e-3;
+            double expected = 1 - StrictMath.cos(x), actual = 1 - ApproxMath.cos(x);
+            assertEquals("1 - cos " + x, expected, actual, Math.ulp(1.0));
+        }
+    }
+
+    @Test
+    public void atan2() {
+        for (int t = 0; t < SAMPLES; t++) {
+            double y = random.nextGaussian(), x = random.nextGaussian();
+            assertEquals("atan2 " + y + " " + x, StrictMath.atan2(y, x), ApproxMath.atan2(y, x), ATAN2_TOLERANCE);
+        }
+        assertEquals(StrictMath.atan2(0.0, -1), ApproxMath.atan2(0.0, -1), 0);
+        assertEquals(StrictMath.atan2(-0.0, -1), ApproxMath.atan2(-0.0, -1), 0);
+        assertEquals(StrictMath.atan2(1, 0), ApproxMath.atan2(1, 0), 0);
+    }
+
+    @Test
+    public void distanceOfKnownPoints() {
+        // one degree of latitude, and one degree of longitude at 60 degrees north
+        double degree = Math.toRadians(1) * GPSLocation.RADIUS_OF_EARTH_IN_METERS;
+        GPSLocation origin = new GPSLocation(0, 60, 10, 10);
+        assertEquals(degree, origin.distance(new GPSLocation(0, 61, 10, 10)), 1e-6);
+        assertEquals(degree * 0.5, origin.distance(new GPSLocation(0, 60, 11, 10)), degree * 1e-4);
+        assertEquals(origin.distance(new GPSLocation(0, 61, 11, 10)),
+                new GPSLocation(0, 61, 11, 10).distance(origin), 1e-6);
+    }
+
+    @Test
+    public void approximateDistanceMatchesExact() {
+        for (int t = 0; t < SAMPLES; t++) {
+            GPSLocation a = randomLocation(), b = nearby(a);
+            double exact = a.distance(b);
+            assertTrue("distance " + exact, exact >= 0 && exact < 1e5);
+            assertEquals(exact, GPSLocation.APPROXIMATE_DISTANCE.distance(a, b), 1e-6);
+        }
+    }
+
+    @Test
+    public void approximateClusteringMatchesExact() {
+        List<GPSLocation> locations = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int place = random.nextInt(3);
+            locations.add(new GPSLocation(i, i, 42.39 + place * 0.01 + random.nextGaussian() * 2e-4,
+                    -72.53 + place * 0.01 + random.nextGaussian() * 2e-4, 10));
+        }
+        List<Cluster<GPSLocation>> exact = new DBScan<GPSLocation>(50, 10).cluster(locations);
+        List<Cluster<GPSLocation>> approximate =
+                new DBScan<>(50, 10, GPSLocation.APPROXIMATE_DISTANCE).cluster(locations);
+        assertEquals(3, exact.size());
+        assertEquals(exact.size(), approximate.size());
+        for (int i = 0; i < exact.size(); i++) {
+            assertEquals(exact.get(i).getPoints(), approximate.get(i).getPoints());
+        }
+    }
+
+    private void assertLog(double x) {
+        double expected = StrictMath.log(x);
+        assertEquals("log " + x, expected, ApproxMath.log(x), Math.abs(expected) * LOG_TOLERANCE);
+    }
+
+    private GPSLocation randomLocation() {
+        return new GPSLocation(0, random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180, 10);
+    }
+
+    /** Returns a location within a few kilometers, the scale DBScan clusters at. */
+    private GPSLocation nearby(GPSLocation a) {
+        return new GPSLocation(0, a.latitude + random.nextGaussian() * 0.01,
+                a.longitude + random.nextGaussian() * 0.01, 10);
+    }
+}
@@ -0,0 +1,219 @@
+package cs.umass.edu.myactivitiestoolkit.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Resamples known functions from irregular timestamps with {@link Resampler} and checks
+ * the output grid and values. Both modes reproduce a linear function exactly and the
+ * spline a quadratic; a cubic function is reproduced closely by the spline and only
+ * coarsely by linear interpolation.
+ */
+public class ResamplerTest {
+
+    /** Output period, in milliseconds. */
+    private static final long PERIOD = 20;
+
+    private final Random random = new Random(9);
+
+    /** Records the output of a resampler. */
+    private static class Recorder implements Resampler.OnResampledListener {
+        final List<Long> times = new ArrayList<>();
+        final List<double[]> values = new ArrayList<>();
+
+        @Override
+        public void onResampled(long timestamp, double[] values) {
+            times.add(timestamp);
+            this.values.add(values.clone());
+        }
+    }
+
+    private static double linear(double t) {
+        return 3 + 0.01 * t;
+    }
+
+    private static double quadratic(double t) {
+        double x = t / 1000;
+        return 2 * x * x - x + 1;
+    }
+
+    private static double cubic(double t) {
+        double x = t / 1000;
+        return x * x * x - 2 * x * x + 0.5 * x + 1;
+    }
+
+    /** Returns about three seconds of timestamps, 15 to 25 ms apart, starting at start. */
+    private long[] irregularTimes(long start) {
+        long[] times = new long[150];
+        times[0] = start;
+        for (int i = 1; i < times.length; i++) {
+            times[i] = times[i - 1] + 15 + random.nextInt(11);
+        }
+        return times;
+    }
+
+    @Test
+    public void linearFunctionIsExactInBothModes() {
+        long[] times = irregularTimes(1000);
+        for (Resampler.Mode mode : Resampler.Mode.values()) {
+            Recorder recorder = new Recorder();
+            Resampler resampler = new Resampler(PERIOD, mode, 1, recorder);
+            for (long t : times) {
+                resampler.push(t, linear(t));
+            }
+            assertOnGrid(recorder, times[0]);
+            for (int i = 0; i < recorder.times.size(); i++) {
+                long t = recorder.times.get(i);
+                assertEquals(mode + " at " + t, linear(t), recorder.values.get(i)[0], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void linearModeEmitsWithoutDelay() {
+        long[] times = irregularTimes(0);
+        Recorder recorder = new Recorder();
+        Resampler resampler = new Resampler(PERIOD, Resampler.Mode.LINEAR, 1, recorder);
+        for (long t : times) {
+            resampler.push(t, linear(t));
+            // every output time up to the newest sample has been emitted
+            assertEquals(t / PERIOD + 1, recorder.times.size());
+        }
+    }
+
+    @Test
+    public void cubicModeLagsByOneSample() {
+        long[] times = irregularTimes(0);
+        Recorder recorder = new Recorder();
+        Resampler resampler = new Resampler(PERIOD, Resampler.Mode.CUBIC, 1, recorder);
+        resampler.push(times[0], cubic(times[0]));
+        assertEquals(1, recorder.times.size());
+        for (int i = 1; i < times.length; i++) {
+            resampler.push(times[i], cubic(times[i]));
+            // output reaches the sample before the newest
+            assertEquals(times[i - 1] / PERIOD + 1, recorder.times.size());
+        }
+    }
+
+    @Test
+    public void cubicFunctionFromIrregularTimes() {
+        long[] times = irregularTimes(0);
+        double linearError = maxError(Resampler.Mode.LINEAR, times);
+        double cubicError = maxError(Resampler.Mode.CUBIC, times);
+        // linear interpolation is off by up to h^2 |f''| / 8, about 1e-3 for 25 ms at the
+        // end of the series; the spline's tangents are off by about h^2 |f'''| / 6
+        assertTrue("linear error " + linearError, linearError > 5e-4);
+        assertTrue("cubic error " + cubicError, cubicError < 2e-5);
+    }
+
+    @Test
+    public void quadraticIsExactWithTheSpline() {
+        long[] times = irregularTimes(0);
+        Recorder recorder = new Recorder();
+        Resampler resampler = new Resampler(PERIOD, Resampler.Mode.CUBIC, 1, recorder);
+        for (long t : times) {
+            resampler.push(t, quadratic(t));
+        }
+        assertOnGrid(recorder, times[0]);
+        for (int i = 0; i < recorder.times.size(); i++) {
+            long t = recorder.times.get(i);
+            // the first interval has no older neighbour, so its tangent is one-sided
+            if (t > times[1]) {
+                assertEquals("at " + t, quadratic(t), recorder.values.get(i)[0], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void nanosecondTimestamps() {
+        // sensor timestamps are nanoseconds since boot, far beyond the range of an int
+        long[] times = irregularTimes(0);
+        long start = 3600L * 24 * 1000 * 1000000;
+        Recorder recorder = new Recorder();
+        Resampler resampler = new Resampler(PERIOD * 1000000, Resampler.Mode.CUBIC, 1, recorder);
+        for (long t : times) {
+            resampler.push(start + t * 1000000, cubic(t));
+        }
+        assertEquals(times[times.length - 2] / PERIOD + 1, recorder.times.size());
+        for (int i = 0; i < recorder.times.size(); i++) {
+            long t = recorder.times.get(i);
+            assertEquals(start + i * PERIOD * 1000000, t);
+            assertEquals(cubic((t - start) / 1e6), recorder.values.get(i)[0], 2e-5);
+        }
+    }
+
+    @Test
+    public void channelsAreResampledIndependently() {
+        long[] times = irregularTimes(0);
+        Recorder recorder = new Recorder();
+        Resampler resampler = new Resampler(PERIOD, Resampler.Mode.LINEAR, 3, recorder);
+        for (long t : times) {
+            resampler.push(t, new float[]{(float) t, -2f * t, 9.81f});
+        }
+        for (int i = 0; i < recorder.times.size(); i++) {
+            long t = recorder.times.get(i);
+            double[] values = recorder.values.get(i);
+            assertEquals(t, values[0], 1e-3);
+            assertEquals(-2 * t, values[1], 1e-3);
+            assertEquals(9.81, values[2], 1e-6);
+        }
+    }
+
+    @Test
+    public void repeatedTimestampsAreDropped() {
+        Recorder recorder = new Recorder();
+        Resampler resampler = new Resampler(PERIOD, Resampler.Mode.LINEAR, 1, recorder);
+        resampler.push(0, 0);
+        resampler.push(30, 3);
+        resampler.push(30, 100);
+        resampler.push(25, 100);
+        resampler.push(50, 5);
+        assertEquals(3, recorder.times.size());
+        assertEquals(2, recorder.values.get(1)[0], 1e-12);
+        assertEquals(4, recorder.values.get(2)[0], 1e-12);
+    }
+
+    @Test
+    public void resetStartsANewGrid() {
+        Recorder recorder = new Recorder();
+        Resampler resampler = new Resampler(PERIOD, Resampler.Mode.LINEAR, 1, recorder);
+        resampler.push(0, 0);
+        resampler.push(45, 45);
+        resampler.reset();
+        resampler.push(1007, 7);
+        resampler.push(1030, 30);
+        assertEquals(5, recorder.times.size());
+        assertEquals(40L, (long) recorder.times.get(2));
+        assertEquals(1007L, (long) recorder.times.get(3));
+        assertEquals(1027L, (long) recorder.times.get(4));
+        assertEquals(27, recorder.values.get(4)[0], 1e-12);
+    }
+
+    private double maxError(Resampler.Mode mode, long[] times) {
+        Recorder recorder = new Recorder();
+        Resampler resampler = new Resampler(PERIOD, mode, 1, recorder);
+        for (long t : times) {
+            resampler.push(t, cubic(t));
+        }
+        assertOnGrid(recorder, times[0]);
+        double error = 0;
+        for (int i = 0; i < recorder.times.size(); i++) {
+            long t = recorder.times.get(i);
+            error = Math.max(error, Math.abs(cubic(t) - recorder.values.get(i)[0]));
+        }
+        return error;
+    }
+
+    private static void assertOnGrid(Recorder recorder, long start) {
+        assertTrue(recorder.times.size() > 100);
+        for (int i = 0; i < recorder.times.size(); i++) {
+            assertEquals(start + i * PERIOD, (long) recorder.times.get(i));
+        }
+    }
+}
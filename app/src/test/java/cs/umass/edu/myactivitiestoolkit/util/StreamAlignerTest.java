@@ -0,0 +1,231 @@
+package cs.umass.edu.myactivitiestoolkit.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds {@link StreamAligner} streams whose source clocks differ from the common clock
+ * by known offsets and checks the clock offset estimates, the interpolated frame values
+ * and the frames emitted for a stream that falls behind or silent.
+ */
+public class StreamAlignerTest {
+
+    private static final long FRAME_PERIOD = 20;
+
+    private static final long LATENESS = 100;
+
+    /** Offset of a nanosecond clock that started 250 ms after the common clock. */
+    private static final long NANOS_OFFSET = 250;
+
+    /** Offset of a wall clock in milliseconds. */
+    private static final long WALL_CLOCK_OFFSET = -1476000000000L;
+
+    private final Random random = new Random(10);
+
+    /** Records the frames of an aligner. */
+    private static class Recorder implements StreamAligner.OnFrameListener {
+        final List<Long> times = new ArrayList<>();
+        final List<double[]> frames = new ArrayList<>();
+
+        @Override
+        public void onFrame(long timestamp, double[] values) {
+            times.add(timestamp);
+            frames.add(values.clone());
+        }
+    }
+
+    private static float accelerometer(long t) {
+        return 0.001f * t;
+    }
+
+    private static float heartRate(long t) {
+        return 60 + 0.002f * t;
+    }
+
+    /** Source timestamp of the nanosecond stream for common time t. */
+    private static long nanos(long t) {
+        return (t - NANOS_OFFSET) * 1000000;
+    }
+
+    /** Source timestamp of the wall clock stream for common time t. */
+    private static long wallClock(long t) {
+        return t - WALL_CLOCK_OFFSET;
+    }
+
+    @Test
+    public void clockOffsetsWithJitteredArrivals() {
+        StreamAligner aligner = new StreamAligner(FRAME_PERIOD, LATENESS, 16, new Recorder());
+        int accel = aligner.addStream(1, 1000000);
+        int ppg = aligner.addStream(1, 1);
+        for (long t = 0; t < 60000; t += 20) {
+            // delivery takes 2 to 40 ms, with an occasional stall
+            long latency = 2 + random.nextInt(39) + (random.nextInt(50) == 0 ? 300 : 0);
+            aligner.push(accel, nanos(t), t + latency, new float[]{accelerometer(t)});
+            if (t % 40 == 0) {
+                latency = 2 + random.nextInt(39);
+                aligner.push(ppg, wallClock(t), t + latency, new float[]{heartRate(t)});
+            }
+            if (t > 5000) {
+                // the estimate is the offset plus the least latency, 2 ms, and the creep
+                // towards later arrivals keeps it well inside the 38 ms of jitter
+                assertOffset(NANOS_OFFSET, aligner.getClockOffset(accel));
+                assertOffset(WALL_CLOCK_OFFSET, aligner.getClockOffset(ppg));
+            }
+        }
+    }
+
+    @Test
+    public void offsetFollowsClockDrift() {
+        StreamAligner aligner = new StreamAligner(FRAME_PERIOD, LATENESS, 16, new Recorder());
+        int accel = aligner.addStream(1, 1000000);
+        for (long t = 0; t < 600000; t += 20) {
+            // the source clock runs 100 ppm slow, so the offset grows by 60 ms in 10 minutes
+            long source = nanos(t) - t * 100;
+            long latency = 2 + random.nextInt(39);
+            aligner.push(accel, source, t + latency, new float[]{accelerometer(t)});
+            if (t > 5000) {
+                assertOffset(NANOS_OFFSET + t * 1e-4, aligner.getClockOffset(accel));
+            }
+        }
+    }
+
+    @Test
+    public void framesInterpolateTheStreams() {
+        Recorder recorder = new Recorder();
+        // a long tolerance, so that no frame is forced out before both streams reach it
+        StreamAligner aligner = new StreamAligner(FRAME_PERIOD, 1000, 16, recorder);
+        int accel = aligner.addStream(1, 1000000);
+        int ppg = aligner.addStream(2, 1);
+        assertEquals(3, aligner.getFrameSize());
+        // constant latencies, so that the offsets are exact: 7 ms and 3 ms
+        for (long t = 0; t <= 10000; t++) {
+            if (t % 20 == 13) {
+                aligner.push(accel, nanos(t - 7), t, new float[]{accelerometer(t - 7)});
+            }
+            if (t % 143 == 3) {
+                aligner.push(ppg, wallClock(t - 3), t, new float[]{heartRate(t - 3), 1});
+            }
+        }
+        assertEquals(NANOS_OFFSET + 7, aligner.getClockOffset(accel), 1e-6);
+        assertEquals(WALL_CLOCK_OFFSET + 3, aligner.getClockOffset(ppg), 1e-6);
+        // the samples are mapped onto the common clock 7 and 3 ms late, so a frame at
+        // time T interpolates the values sent at T - 7 and T - 3. The first sample maps
+        // to 13 and the last PPG sample to 9870, so the frames run from 20 to 9860.
+        assertEquals((9860 - 20) / FRAME_PERIOD + 1, recorder.times.size());
+        for (int i = 0; i < recorder.times.size(); i++) {
+            long t = recorder.times.get(i);
+            assertEquals(20 + i * FRAME_PERIOD, t);
+            double[] frame = recorder.frames.get(i);
+            assertEquals("accelerometer at " + t, accelerometer(t - 7), frame[0], 1e-4);
+            assertEquals("heart rate at " + t, heartRate(t - 3), frame[1], 1e-4);
+            assertEquals(1, frame[2], 0);
+        }
+    }
+
+    @Test
+    public void framesWaitForEveryStream() {
+        Recorder recorder = new Recorder();
+        StreamAligner aligner = new StreamAligner(FRAME_PERIOD, LATENESS, 16, recorder);
+        int accel = aligner.addStream(1, 1);
+        int ppg = aligner.addStream(1, 1);
+        aligner.push(accel, 0, 0, new float[]{0});
+        aligner.push(ppg, 0, 0, new float[]{0});
+        assertEquals(1, recorder.times.size());
+        for (long t = 10; t <= 60; t += 10) {
+            aligner.push(accel, t, t, new float[]{t});
+        }
+        // the PPG stream has no sample after time 0 and is not late yet
+        assertEquals(1, recorder.times.size());
+        // a PPG sample at 50 releases the frames at 20 and 40; the one at 60 waits again
+        aligner.push(ppg, 50, 60, new float[]{50});
+        assertEquals(3, recorder.times.size());
+        assertEquals(40, recorder.frames.get(2)[1], 1e-4);
+    }
+
+    @Test
+    public void lateStreamIsHeld() {
+        Recorder recorder = new Recorder();
+        StreamAligner aligner = new StreamAligner(FRAME_PERIOD, LATENESS, 16, recorder);
+        int accel = aligner.addStream(1, 1);
+        int gps = aligner.addStream(1, 1);
+        aligner.push(gps, 0, 0, new float[]{5});
+        for (long t = 0; t <= 1000; t += 10) {
+            aligner.push(accel, t, t, new float[]{t});
+            // the GPS stream has not delivered since time 0, so frames are forced out
+            // once they are the lateness tolerance behind the newest arrival
+            assertEquals(Math.max(0, t - LATENESS) / FRAME_PERIOD + 1, recorder.times.size());
+        }
+        for (int i = 0; i < recorder.times.size(); i++) {
+            double[] frame = recorder.frames.get(i);
+            assertEquals(i * FRAME_PERIOD, frame[0], 1e-4);
+            assertEquals(5, frame[1], 0);
+        }
+        // the next fix releases the frames after 900, interpolated between the two fixes
+        aligner.push(gps, 1000, 1000, new float[]{15});
+        assertEquals(1000 / FRAME_PERIOD + 1, recorder.times.size());
+        assertEquals(14.2, recorder.frames.get(920 / (int) FRAME_PERIOD)[1], 1e-4);
+        assertEquals(15, recorder.frames.get(1000 / (int) FRAME_PERIOD)[1], 1e-4);
+    }
+
+    @Test
+    public void flushEmitsFramesForSilentStreams() {
+        Recorder recorder = new Recorder();
+        StreamAligner aligner = new StreamAligner(FRAME_PERIOD, LATENESS, 16, recorder);
+        int accel = aligner.addStream(1, 1);
+        int ppg = aligner.addStream(1, 1);
+        int band = aligner.addStream(1, 1);
+        for (long t = 0; t <= 200; t += 10) {
+            aligner.push(accel, t, t, new float[]{t});
+            aligner.push(ppg, t, t, new float[]{-t});
+        }
+        // the band holds the frames back until they are the lateness tolerance old
+        assertEquals(100 / FRAME_PERIOD + 1, recorder.times.size());
+        // every stream falls silent; flushing emits the frames the tolerance has passed
+        aligner.flush(200);
+        assertEquals(100 / FRAME_PERIOD + 1, recorder.times.size());
+        aligner.flush(500);
+        assertEquals(21, recorder.times.size());
+        for (int i = 0; i < recorder.times.size(); i++) {
+            double[] frame = recorder.frames.get(i);
+            long t = Math.min(recorder.times.get(i), 200);
+            assertEquals(t, frame[0], 1e-4);
+            assertEquals(-t, frame[1], 1e-4);
+            // the band never delivered anything
+            assertTrue(Double.isNaN(frame[2]));
+        }
+        aligner.flush(500);
+        assertEquals(21, recorder.times.size());
+    }
+
+    @Test
+    public void resetStartsANewGrid() {
+        Recorder recorder = new Recorder();
+        StreamAligner aligner = new StreamAligner(FRAME_PERIOD, LATENESS, 16, recorder);
+        int accel = aligner.addStream(1, 1);
+        for (long t = 0; t <= 100; t += 10) {
+            aligner.push(accel, t, t, new float[]{t});
+        }
+        assertEquals(6, recorder.times.size());
+        aligner.reset();
+        aligner.push(accel, 5007, 5012, new float[]{1});
+        assertEquals(5, aligner.getClockOffset(accel), 0);
+        aligner.push(accel, 5027, 5032, new float[]{2});
+        assertEquals(7, recorder.times.size());
+        assertEquals(5020L, (long) recorder.times.get(6));
+    }
+
+    /**
+     * Checks an offset estimate against the true offset plus the least latency, 2 ms,
+     * less what a drifting clock has moved since the sample that set the estimate.
+     */
+    private static void assertOffset(double expected, double actual) {
+        double error = actual - expected;
+        assertTrue("offset error " + error, error > 1.9 && error < 8);
+    }
+}